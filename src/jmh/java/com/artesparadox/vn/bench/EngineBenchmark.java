@@ -0,0 +1,97 @@
+package com.artesparadox.vn.bench;
+
+import com.artesparadox.vn.vnEngine.compiler.ScriptCompiler;
+import com.artesparadox.vn.vnEngine.compiler.ScriptProgram;
+import com.artesparadox.vn.vnEngine.controller.VNEngine;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The interpreter: whole conversations from the first node to the end, with a fake player clicking through
+ * every line and picking choices round robin. This is what {@link VNEngine#runEngine()} does, minus the parking
+ * between clicks. The "steps" counter is the number that matters, in steps per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EngineBenchmark {
+
+    // Nothing real runs longer than this, a generator bug shouldn't hang the benchmark
+    private static final long MAX_STEPS = 10_000_000;
+
+    @Param({"linear", "branching", "labels"})
+    public String shape;
+
+    @Param({"1000", "20000"})
+    public int size;
+
+    private List<Map<String, Object>> nodes;
+    private ScriptProgram program;
+    private final String player = UUID.randomUUID().toString();
+    private int pick;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Steps {
+        public long steps;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            steps = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        nodes = ScriptGenerator.generate(shape, size);
+        program = ScriptCompiler.compile(nodes);
+    }
+
+    @Benchmark
+    public long conversation(Steps counter) {
+        VNEngine engine = new VNEngine(program, "bench", "npc", player, true, null, null, null);
+        engine.isEngineRunning.set(true);
+        long steps = 0;
+        while (steps < MAX_STEPS) {
+            VNEngine.StepResult result = engine.step();
+            steps++;
+            if (result == VNEngine.StepResult.FINISHED) break;
+            if (result == VNEngine.StepResult.WAITING) {
+                List<Map<String, Object>> choices = engine.getNext().getChoices();
+                if (choices != null && !choices.isEmpty()) {
+                    String label = String.valueOf(choices.get(pick++ % choices.size()).get("label"));
+                    // A refused choice would leave the engine waiting forever, that's a generator bug
+                    if (!engine.buttonPress(label)) throw new IllegalStateException("Choice refused: " + label);
+                } else {
+                    engine.advance();
+                }
+            }
+        }
+        counter.steps += steps;
+        return steps;
+    }
+
+    @Benchmark
+    public ScriptProgram compile() {
+        return ScriptCompiler.compile(nodes);
+    }
+}
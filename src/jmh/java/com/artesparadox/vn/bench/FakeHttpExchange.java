@@ -0,0 +1,146 @@
+package com.artesparadox.vn.bench;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An in-memory HttpExchange, so the router can be benchmarked without sockets.
+ * Reusable: {@link #reset} puts it back to a fresh request.
+ */
+public final class FakeHttpExchange extends HttpExchange {
+
+    private static final InetSocketAddress ADDRESS = new InetSocketAddress("127.0.0.1", 8080);
+
+    private final Headers requestHeaders = new Headers();
+    private final Headers responseHeaders = new Headers();
+    private final ByteArrayOutputStream responseBody = new ByteArrayOutputStream(4096);
+    private final Map<String, Object> attributes = new HashMap<>();
+    private String method;
+    private URI uri;
+    private InputStream requestBody;
+    private OutputStream out = responseBody;
+    private int responseCode = -1;
+
+    public FakeHttpExchange(String method, String uri) {
+        reset(method, uri);
+    }
+
+    public FakeHttpExchange reset(String method, String uri) {
+        this.method = method;
+        this.uri = URI.create(uri);
+        return reset();
+    }
+
+    /**
+     * Same request again, with fresh headers and an empty response.
+     */
+    public FakeHttpExchange reset() {
+        this.requestHeaders.clear();
+        this.responseHeaders.clear();
+        this.responseBody.reset();
+        this.requestBody = new ByteArrayInputStream(new byte[0]);
+        this.out = responseBody;
+        this.responseCode = -1;
+        return this;
+    }
+
+    public int responseSize() {
+        return responseBody.size();
+    }
+
+    @Override
+    public Headers getRequestHeaders() {
+        return requestHeaders;
+    }
+
+    @Override
+    public Headers getResponseHeaders() {
+        return responseHeaders;
+    }
+
+    @Override
+    public URI getRequestURI() {
+        return uri;
+    }
+
+    @Override
+    public String getRequestMethod() {
+        return method;
+    }
+
+    @Override
+    public HttpContext getHttpContext() {
+        return null;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public InputStream getRequestBody() {
+        return requestBody;
+    }
+
+    @Override
+    public OutputStream getResponseBody() {
+        return out;
+    }
+
+    @Override
+    public void sendResponseHeaders(int rCode, long responseLength) {
+        this.responseCode = rCode;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return ADDRESS;
+    }
+
+    @Override
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return ADDRESS;
+    }
+
+    @Override
+    public String getProtocol() {
+        return "HTTP/1.1";
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        attributes.put(name, value);
+    }
+
+    @Override
+    public void setStreams(InputStream i, OutputStream o) {
+        if (i != null) requestBody = i;
+        if (o != null) out = o;
+    }
+
+    @Override
+    public HttpPrincipal getPrincipal() {
+        return null;
+    }
+}
@@ -0,0 +1,101 @@
+package com.artesparadox.vn.bench;
+
+import com.artesparadox.vn.vnEngine.router.SimpleRouter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * {@link SimpleRouter#handle} with the same kind of routes VnWebServer registers, driven through a
+ * {@link FakeHttpExchange} so only routing, handler and response writing are measured, no sockets.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RouterBenchmark {
+
+    @Param({"literal", "param", "static", "miss"})
+    public String request;
+
+    private SimpleRouter router;
+    private Path webRoot;
+    private FakeHttpExchange exchange;
+    private String uri;
+    private String method;
+
+    @Setup
+    public void setUp() throws IOException {
+        webRoot = Files.createTempDirectory("vn-bench-web");
+        Files.writeString(webRoot.resolve("index.html"), "<!doctype html><title>VN</title>".repeat(64), StandardCharsets.UTF_8);
+
+        router = new SimpleRouter();
+        router.get("/api/server/stats", (exchange, params) -> SimpleRouter.sendJson(exchange, 200, Map.of("ok", true)));
+        router.get("/api/counter", (exchange, params) -> SimpleRouter.sendJson(exchange, 200, Map.of("count", 1)));
+        router.get("/api/session/{player}/state", (exchange, params) ->
+                SimpleRouter.sendJson(exchange, 200, Map.of("player", params.get("player"))));
+        router.post("/api/session/{player}/advance", (exchange, params) -> SimpleRouter.sendJson(exchange, 200, Map.of()));
+        router.post("/api/session/{player}/choose/{label}", (exchange, params) ->
+                SimpleRouter.sendJson(exchange, 200, Map.of("label", params.get("label"))));
+        router.serveStaticFilesFrom(webRoot);
+
+        String player = UUID.randomUUID().toString();
+        switch (request) {
+            case "literal":
+                method = "GET";
+                uri = "/api/server/stats";
+                break;
+            case "param":
+                method = "POST";
+                uri = "/api/session/" + player + "/choose/chapter_2";
+                break;
+            case "static":
+                method = "GET";
+                uri = "/index.html";
+                break;
+            default:
+                method = "DELETE";
+                uri = "/api/nothing/here";
+                break;
+        }
+        exchange = new FakeHttpExchange(method, uri);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> walk = Files.walk(webRoot)) {
+            for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public void handle(Blackhole blackhole) throws IOException {
+        router.handle(exchange.reset());
+        blackhole.consume(exchange.getResponseCode());
+        blackhole.consume(exchange.responseSize());
+    }
+}
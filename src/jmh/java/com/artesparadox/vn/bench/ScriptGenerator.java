@@ -0,0 +1,162 @@
+package com.artesparadox.vn.bench;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Synthetic FSMs in the same shape the JSON scripts have after Gson (numbers are Doubles), so the benchmarks
+ * exercise what real scripts exercise without shipping real scripts.
+ *
+ * <ul>
+ *   <li>{@code linear}: straight line of sprites, dialogue, backgrounds and variable updates, no jumps.</li>
+ *   <li>{@code branching}: blocks of label, counter, conditional, dialogue and a 3-way choice, looping until the
+ *       counter runs out. Mostly choice handling and label resolution.</li>
+ *   <li>{@code labels}: a large number of labels that jump to each other all over the place. Mostly jump cost.</li>
+ * </ul>
+ *
+ * Every shape ends on its own, a conversation takes roughly {@code size} steps.
+ */
+public final class ScriptGenerator {
+
+    public static final String COUNTER = "counter";
+
+    private static final Gson GSON = new GsonBuilder().create();
+
+    private ScriptGenerator() {}
+
+    /**
+     * @param shape "linear", "branching" or "labels".
+     * @param size  Roughly how many nodes (and steps) the script has.
+     */
+    public static List<Map<String, Object>> generate(String shape, int size) {
+        switch (shape) {
+            case "linear":
+                return linear(size);
+            case "branching":
+                return branching(size);
+            case "labels":
+                return labels(size);
+            default:
+                throw new IllegalArgumentException("Unknown script shape: " + shape);
+        }
+    }
+
+    public static List<Map<String, Object>> linear(int size) {
+        Builder fsm = new Builder();
+        fsm.add("meta", "action", "create_var", "var", COUNTER, "init", 0.0);
+        for (int i = 1; i < size; i++) {
+            switch (i % 4) {
+                case 0:
+                    fsm.add("modify_variable", "var", COUNTER, "action", "add", "value", 1.0);
+                    break;
+                case 1:
+                    fsm.add("show_sprite", "sprite", "character_" + (i % 5), "position", "LEFT");
+                    break;
+                case 2:
+                    fsm.add("dialogue", "label", "Alice", "content", "Line number " + i);
+                    break;
+                default:
+                    fsm.add("modify_background", "background", "background_" + (i % 3));
+                    break;
+            }
+        }
+        return fsm.nodes;
+    }
+
+    public static List<Map<String, Object>> branching(int size) {
+        final int blockSize = 6;
+        int blocks = Math.max(2, size / blockSize);
+        Builder fsm = new Builder();
+        fsm.add("meta", "action", "create_var", "var", COUNTER, "init", 0.0);
+        for (int k = 0; k < blocks; k++) {
+            long start = fsm.nextId();
+            fsm.add("label", "label", "b" + k);
+            fsm.add("modify_variable", "var", COUNTER, "action", "add", "value", 1.0);
+            // Still rounds to go: skip over the jump to the end
+            fsm.add("conditional", "var", COUNTER, "condition", "greater_than", "value", (double) blocks, "end", (double) (start + 4));
+            fsm.add("transition", "action", "jump", "label", "end");
+            fsm.add("dialogue", "label", "Bob", "content", "Block " + k);
+            List<Map<String, Object>> choices = new ArrayList<>();
+            choices.add(choice("b" + ((k + 1) % blocks)));
+            choices.add(choice("b" + ((k * 7 + 3) % blocks)));
+            choices.add(choice("b" + ((k * 13 + 5) % blocks)));
+            fsm.add("choice", "choice", choices);
+        }
+        fsm.add("label", "label", "end");
+        fsm.add("dialogue", "label", "Bob", "content", "The end.");
+        return fsm.nodes;
+    }
+
+    public static List<Map<String, Object>> labels(int size) {
+        final int blockSize = 5;
+        int blocks = Math.max(2, size / blockSize);
+        Builder fsm = new Builder();
+        fsm.add("meta", "action", "create_var", "var", COUNTER, "init", 0.0);
+        for (int k = 0; k < blocks; k++) {
+            long start = fsm.nextId();
+            fsm.add("label", "label", "l" + k);
+            fsm.add("modify_variable", "var", COUNTER, "action", "add", "value", 1.0);
+            fsm.add("conditional", "var", COUNTER, "condition", "greater_than", "value", (double) blocks, "end", (double) (start + 4));
+            fsm.add("transition", "action", "jump", "label", "end");
+            // Jump somewhere far away, a different block every time
+            fsm.add("transition", "action", "jump", "label", "l" + ((k * 7919L + 1) % blocks));
+        }
+        fsm.add("label", "label", "end");
+        fsm.add("dialogue", "label", "Carol", "content", "The end.");
+        return fsm.nodes;
+    }
+
+    /**
+     * Writes a complete script file (header and FSM) the way ScriptManager expects it.
+     */
+    public static void writeScript(Path file, String name, String uuid, String trigger, List<Map<String, Object>> nodes) throws IOException {
+        Map<String, Object> script = new LinkedHashMap<>();
+        script.put("name", name);
+        script.put("description", "Generated for benchmarks");
+        script.put("triggers", Map.of("on_npc_interact", trigger));
+        script.put("metadata", Map.of("uuid", uuid));
+        Map<String, Object> fsm = new LinkedHashMap<>();
+        for (Map<String, Object> node : nodes) {
+            fsm.put(Long.toString(((Number) node.get("id")).longValue()), node);
+        }
+        script.put("fsm", fsm);
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            GSON.toJson(script, out);
+        }
+    }
+
+    private static Map<String, Object> choice(String label) {
+        Map<String, Object> choice = new LinkedHashMap<>();
+        choice.put("label", label);
+        choice.put("text", "Go to " + label);
+        return choice;
+    }
+
+    private static final class Builder {
+        final List<Map<String, Object>> nodes = new ArrayList<>();
+
+        long nextId() {
+            return nodes.size();
+        }
+
+        void add(String type, Object... fields) {
+            Map<String, Object> node = new LinkedHashMap<>();
+            node.put("id", (double) nodes.size());
+            node.put("type", type);
+            for (int i = 0; i < fields.length; i += 2) {
+                node.put((String) fields[i], fields[i + 1]);
+            }
+            nodes.add(node);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.artesparadox.vn.bench;
+
+import com.artesparadox.vn.vnEngine.controller.ScriptManager;
+import com.artesparadox.vn.vnEngine.dataclass.Script;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The script loader, on a temp directory of generated scripts instead of a world.
+ *
+ * {@code load} is a full {@link ScriptManager#loadScripts()} with a fresh manager, either parsing every JSON file
+ * ("json") or taking everything from the binary cache ("cache"). {@code findByTrigger} is the lookup the
+ * interact and tick events do.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ScriptLoadBenchmark {
+
+    private static final int TRIGGER_VALUES = 16;
+
+    @Param({"50"})
+    public int files;
+
+    @Param({"linear", "branching", "labels"})
+    public String shape;
+
+    @Param({"500"})
+    public int size;
+
+    @Param({"json", "cache"})
+    public String source;
+
+    private Path root;
+    private Path scripts;
+    private Path warmCache;
+    private ScriptManager loaded;
+    private int lookup;
+
+    /**
+     * The manager of one load() call, closed after each call. Kept apart so findByTrigger doesn't
+     * pay for per-invocation fixtures.
+     */
+    @State(Scope.Thread)
+    public static class Load {
+        ScriptLoadBenchmark bench;
+        ScriptManager current;
+        Path cache;
+        int invocation;
+
+        @Setup(Level.Invocation)
+        public void pickCache(ScriptLoadBenchmark bench) {
+            this.bench = bench;
+            // A cache file that doesn't exist yet forces every file through JSON
+            cache = "json".equals(bench.source) ? bench.root.resolve("cold-" + (++invocation) + ".cache") : bench.warmCache;
+        }
+
+        @TearDown(Level.Invocation)
+        public void closeManager() throws IOException {
+            if (current == null) return;
+            // Waits for the cache write a JSON load kicks off, outside the measurement
+            current.shutdown();
+            current = null;
+            if (cache != bench.warmCache) {
+                deleteGenerations(cache);
+            }
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("vn-bench");
+        scripts = Files.createDirectories(root.resolve("script"));
+        for (int i = 0; i < files; i++) {
+            ScriptGenerator.writeScript(scripts.resolve("script_" + i + ".json"), "Script " + i,
+                    UUID.nameUUIDFromBytes(("script_" + i).getBytes()).toString(),
+                    "minecraft:villager_" + (i % TRIGGER_VALUES),
+                    ScriptGenerator.generate(shape, size));
+        }
+
+        // Primes the cache next to the directory, shutdown() waits for the write
+        warmCache = root.resolve("warm.cache");
+        ScriptManager primer = new ScriptManager(scripts, warmCache);
+        primer.loadScripts();
+        primer.shutdown();
+        // The manager findByTrigger uses, loaded from that cache
+        loaded = new ScriptManager(scripts, warmCache);
+        loaded.loadScripts();
+    }
+
+    /**
+     * The cache is written as generations next to the name it's given ("cold-3.cache.1"), never the name itself.
+     */
+    private static void deleteGenerations(Path cache) throws IOException {
+        String prefix = cache.getFileName() + ".";
+        try (Stream<Path> siblings = Files.list(cache.getParent())) {
+            for (Path path : siblings.filter(path -> path.getFileName().toString().startsWith(prefix)).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        loaded.shutdown();
+        try (Stream<Path> walk = Files.walk(root)) {
+            for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 20)
+    public ScriptManager load(Load load) {
+        load.current = new ScriptManager(scripts, load.cache);
+        load.current.loadScripts();
+        return load.current;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<Script> findByTrigger() {
+        return loaded.findByTrigger("on_npc_interact", "minecraft:villager_" + (lookup++ % TRIGGER_VALUES));
+    }
+}
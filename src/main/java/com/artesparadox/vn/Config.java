@@ -0,0 +1,122 @@
+package com.artesparadox.vn;
+
+import com.artesparadox.vn.vnEngine.controller.modules.CommandRequestHandler;
+import com.artesparadox.vn.vnEngine.dataclass.Const;
+import net.neoforged.fml.event.config.ModConfigEvent;
+import net.neoforged.neoforge.common.ModConfigSpec;
+
+import java.util.List;
+
+/**
+ * The server config (serverconfig/visualnovelframework-server.toml in the world).
+ * Defaults come from {@link Const}, so nothing changes until an admin edits the file.
+ *
+ * The command filter and rate limiter are rebuilt whenever the file is loaded or edited while the server runs.
+ * The web executor is picked when the web server starts, changing it needs a restart.
+ */
+public class Config {
+
+    private static final ModConfigSpec.Builder BUILDER = new ModConfigSpec.Builder();
+
+    private static final ModConfigSpec.ConfigValue<List<? extends String>> COMMAND_WHITELIST;
+    private static final ModConfigSpec.ConfigValue<List<? extends String>> COMMAND_BLACKLIST;
+    private static final ModConfigSpec.DoubleValue COMMAND_RATE_PER_SECOND;
+    private static final ModConfigSpec.IntValue COMMAND_BURST;
+
+    private static final ModConfigSpec.ConfigValue<String> WEB_PUBLIC_URL;
+    private static final ModConfigSpec.ConfigValue<String> WEB_EXECUTOR;
+    private static final ModConfigSpec.IntValue WEB_WORKER_THREADS;
+    private static final ModConfigSpec.IntValue WEB_QUEUE_CAPACITY;
+
+    static {
+        BUILDER.comment("Commands scripts run. Only checked on multiplayer servers, singleplayer runs everything.").push("commands");
+        COMMAND_WHITELIST = BUILDER
+                .comment("Commands scripts may run, as prefixes (\"gamerule\", \"time set\"). Empty allows everything that isn't blacklisted.")
+                .defineListAllowEmpty("whitelist", List.of(Const.COMMAND_WHITELIST), () -> "", Config::isCommandPrefix);
+        COMMAND_BLACKLIST = BUILDER
+                .comment("Commands scripts may never run, as prefixes. Wins over the whitelist.")
+                .defineListAllowEmpty("blacklist", List.of(Const.COMMAND_BLACKLIST), () -> "", Config::isCommandPrefix);
+        COMMAND_RATE_PER_SECOND = BUILDER
+                .comment("How many commands per second a player's scripts may run on average.")
+                .defineInRange("ratePerSecond", Const.COMMAND_RATE_PER_SECOND, 0.01, 1000.0);
+        COMMAND_BURST = BUILDER
+                .comment("How many commands a player's scripts may run back to back before the rate limit kicks in.")
+                .defineInRange("burst", Const.COMMAND_BURST, 1, 1000);
+        BUILDER.pop();
+
+        BUILDER.comment("The web UI and API server. Changes here take effect the next time the server starts.").push("web");
+        WEB_PUBLIC_URL = BUILDER
+                .comment("Where players reach the web UI (\"https://vn.example.org\"), for the link they get in chat. Empty for http://localhost:" + Const.WEB_PORT + ".")
+                .define("publicUrl", Const.WEB_PUBLIC_URL);
+        WEB_EXECUTOR = BUILDER
+                .comment("\"virtual\" for one virtual thread per request, \"bounded\" for a fixed pool with a bounded queue.")
+                .worldRestart()
+                .define("executor", Const.WEB_EXECUTOR, value -> "virtual".equals(value) || "bounded".equals(value));
+        WEB_WORKER_THREADS = BUILDER
+                .comment("Worker threads of the \"bounded\" executor.")
+                .worldRestart()
+                .defineInRange("workerThreads", Const.WEB_WORKER_THREADS, 1, 256);
+        WEB_QUEUE_CAPACITY = BUILDER
+                .comment("Requests the \"bounded\" executor queues before the dispatcher thread has to run them itself.")
+                .worldRestart()
+                .defineInRange("queueCapacity", Const.WEB_QUEUE_CAPACITY, 1, 65536);
+        BUILDER.pop();
+    }
+
+    static final ModConfigSpec SPEC = BUILDER.build();
+
+    // What the web server reads when it starts, the defaults until the config is loaded
+    private static volatile String webPublicUrl = Const.WEB_PUBLIC_URL;
+    private static volatile String webExecutor = Const.WEB_EXECUTOR;
+    private static volatile int webWorkerThreads = Const.WEB_WORKER_THREADS;
+    private static volatile int webQueueCapacity = Const.WEB_QUEUE_CAPACITY;
+
+    private static boolean isCommandPrefix(Object value) {
+        return value instanceof String prefix && !prefix.isBlank();
+    }
+
+    static void onLoad(ModConfigEvent.Loading event) {
+        apply(event);
+    }
+
+    static void onReload(ModConfigEvent.Reloading event) {
+        apply(event);
+    }
+
+    private static void apply(ModConfigEvent event) {
+        if (event.getConfig().getSpec() != SPEC) return;
+
+        String[] whitelist = COMMAND_WHITELIST.get().toArray(new String[0]);
+        String[] blacklist = COMMAND_BLACKLIST.get().toArray(new String[0]);
+        CommandRequestHandler.configure(whitelist, blacklist, COMMAND_RATE_PER_SECOND.get(), COMMAND_BURST.get());
+
+        webPublicUrl = WEB_PUBLIC_URL.get();
+        webExecutor = WEB_EXECUTOR.get();
+        webWorkerThreads = WEB_WORKER_THREADS.get();
+        webQueueCapacity = WEB_QUEUE_CAPACITY.get();
+
+        VisualNovelFramework.LOGGER.info("Config loaded: {} whitelisted and {} blacklisted command prefix(es), {} command(s)/s with a burst of {}, {} web executor.",
+                whitelist.length, blacklist.length, COMMAND_RATE_PER_SECOND.get(), COMMAND_BURST.get(), webExecutor);
+    }
+
+    /**
+     * @return The web UI's base URL, without a trailing slash.
+     */
+    public static String webPublicUrl() {
+        String url = webPublicUrl;
+        if (url == null || url.isBlank()) return "http://localhost:" + Const.WEB_PORT;
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    public static String webExecutor() {
+        return webExecutor;
+    }
+
+    public static int webWorkerThreads() {
+        return webWorkerThreads;
+    }
+
+    public static int webQueueCapacity() {
+        return webQueueCapacity;
+    }
+}
@@ -1,13 +1,23 @@
 package com.artesparadox.vn;
 
 import com.artesparadox.vn.vnEngine.VnWebServer;
+import com.artesparadox.vn.vnEngine.controller.InteractionManager;
+import com.artesparadox.vn.vnEngine.controller.InventoryTracker;
+import com.artesparadox.vn.vnEngine.controller.SaveHandler;
+import com.artesparadox.vn.vnEngine.controller.ScriptManager;
+import com.artesparadox.vn.vnEngine.controller.SessionManager;
+import com.artesparadox.vn.vnEngine.controller.TickScheduler;
+import com.artesparadox.vn.vnEngine.dataclass.Const;
 import org.slf4j.Logger;
 
 import com.mojang.logging.LogUtils;
 
 import net.minecraft.core.registries.BuiltInRegistries;
 import net.minecraft.core.registries.Registries;
+import net.minecraft.network.chat.ClickEvent;
 import net.minecraft.network.chat.Component;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.food.FoodProperties;
 import net.minecraft.world.item.BlockItem;
 import net.minecraft.world.item.CreativeModeTab;
@@ -27,6 +37,7 @@ import net.neoforged.fml.event.lifecycle.FMLCommonSetupEvent;
 import net.neoforged.neoforge.common.NeoForge;
 import net.neoforged.neoforge.event.BuildCreativeModeTabContentsEvent;
 import net.neoforged.neoforge.event.server.ServerStartingEvent;
+import net.neoforged.neoforge.event.server.ServerStoppingEvent;
 import net.neoforged.neoforge.registries.DeferredBlock;
 import net.neoforged.neoforge.registries.DeferredHolder;
 import net.neoforged.neoforge.registries.DeferredItem;
@@ -67,6 +78,20 @@ public class VisualNovelFramework {
                 output.accept(EXAMPLE_ITEM.get()); // Add the example item to the tab. For your own tabs, this method is preferred over the event
             }).build());
 
+    // Owns every running conversation, created when the server starts
+    private SessionManager sessionManager;
+    // Steps conversations and runs their side effects on the server thread
+    private TickScheduler tickScheduler;
+    // What scripts see of the players' inventories, and the items they give
+    private InventoryTracker inventoryTracker;
+    // Pushes dialogue to the players' browsers
+    private InteractionManager interactionManager;
+    private VnWebServer webServer;
+    // Writes the players' progress in the background
+    private SaveHandler saveHandler;
+    // The world's scripts, hot-reloaded while the server runs
+    private ScriptManager scriptManager;
+
     // The constructor for the mod class is the first code that is run when your mod is loaded.
     // FML will recognize some parameter types like IEventBus or ModContainer and pass them in automatically.
     public VisualNovelFramework(IEventBus modEventBus, ModContainer modContainer) {
@@ -89,7 +114,10 @@ public class VisualNovelFramework {
         modEventBus.addListener(this::addCreative);
 
         // Register our mod's ModConfigSpec so that FML can create and load the config file for us
-//        modContainer.registerConfig(ModConfig.Type.COMMON, Config.SPEC);
+        modContainer.registerConfig(ModConfig.Type.SERVER, Config.SPEC);
+        // Command filter and rate limit follow the file, also when it's edited while the server runs
+        modEventBus.addListener(Config::onLoad);
+        modEventBus.addListener(Config::onReload);
     }
 
     private void commonSetup(FMLCommonSetupEvent event) {
@@ -116,9 +144,67 @@ public class VisualNovelFramework {
     // You can use SubscribeEvent and let the Event Bus discover methods to call
     @SubscribeEvent
     public void onServerStarting(ServerStartingEvent event) throws IOException {
-        VnWebServer webServer;
         // Do something when the server starts
-        webServer = new VnWebServer(8080,event.getServer());
+        // Saves first, so the very first conversation already finds its progress
+        this.saveHandler = SaveHandler.open(event.getServer());
+        this.scriptManager = new ScriptManager(event.getServer());
+        this.scriptManager.loadScripts();
+        this.scriptManager.startWatching();
+        this.tickScheduler = new TickScheduler();
+        NeoForge.EVENT_BUS.register(this.tickScheduler);
+        this.inventoryTracker = new InventoryTracker();
+        NeoForge.EVENT_BUS.register(this.inventoryTracker);
+        this.interactionManager = new InteractionManager();
+        this.sessionManager = new SessionManager(this.tickScheduler, this.interactionManager, this.inventoryTracker);
+        this.webServer = new VnWebServer(Const.WEB_PORT, event.getServer(), this.sessionManager, this.interactionManager);
+        // The session token only ever reaches the player through this link, the web UI needs it for everything
+        MinecraftServer server = event.getServer();
+        this.sessionManager.setStartListener((player, token) -> server.execute(() -> {
+            ServerPlayer serverPlayer = server.getPlayerList().getPlayer(player);
+            if (serverPlayer == null) return;
+            String url = VnWebServer.sessionUrl(player, token);
+            serverPlayer.sendSystemMessage(Component.literal("[Open dialogue]").withStyle(style -> style
+                    .withClickEvent(new ClickEvent(ClickEvent.Action.OPEN_URL, url))
+                    .withUnderlined(true)));
+        }));
         LOGGER.info("HELLO from server starting");
     }
+
+    @SubscribeEvent
+    public void onServerStopping(ServerStoppingEvent event) {
+        // Close the dialogue streams first, they would otherwise hold the web server's threads open
+        if (this.interactionManager != null) {
+            this.interactionManager.shutdown();
+            this.interactionManager = null;
+        }
+        if (this.webServer != null) {
+            this.webServer.stop();
+            this.webServer = null;
+        }
+        // Wake up every parked conversation so its thread can exit
+        if (this.sessionManager != null) {
+            this.sessionManager.shutdown();
+            this.sessionManager = null;
+        }
+        // Stops hot reload and lets a pending cache write finish
+        if (this.scriptManager != null) {
+            this.scriptManager.shutdown();
+            this.scriptManager = null;
+        }
+        if (this.tickScheduler != null) {
+            NeoForge.EVENT_BUS.unregister(this.tickScheduler);
+            this.tickScheduler.shutdown();
+            this.tickScheduler = null;
+        }
+        if (this.inventoryTracker != null) {
+            NeoForge.EVENT_BUS.unregister(this.inventoryTracker);
+            this.inventoryTracker.shutdown();
+            this.inventoryTracker = null;
+        }
+        // Last, every conversation has handed in its progress by now
+        if (this.saveHandler != null) {
+            this.saveHandler.close();
+            this.saveHandler = null;
+        }
+    }
 }
@@ -1,26 +1,135 @@
 package com.artesparadox.vn.vnEngine;
 
+import com.artesparadox.vn.Config;
+import com.artesparadox.vn.VisualNovelFramework;
+import com.artesparadox.vn.vnEngine.controller.InteractionManager;
+import com.artesparadox.vn.vnEngine.controller.SessionManager;
+import com.artesparadox.vn.vnEngine.controller.modules.CommandRequestHandler;
 import com.artesparadox.vn.vnEngine.dataclass.Const;
+import com.artesparadox.vn.vnEngine.metrics.Metrics;
+import com.artesparadox.vn.vnEngine.router.MeteredExecutor;
 import com.artesparadox.vn.vnEngine.router.SimpleRouter;
+import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpServer;
 import net.minecraft.server.MinecraftServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map; // Make sure to import Map
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class VnWebServer {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(VisualNovelFramework.class);
+
     private final HttpServer server;
     private final int port;
-    private int counter = 0; // State for our simple counter
+    private final MeteredExecutor executor;
+    // State for our simple counter, atomic since requests run on many threads at once
+    private final AtomicInteger counter = new AtomicInteger();
+
+    public VnWebServer(int port, MinecraftServer minecraftServer, SessionManager sessions, InteractionManager interactions) throws IOException {
+        this(port, Const.WEB_BACKLOG, MeteredExecutor.fromConfig(), minecraftServer, sessions, interactions);
+    }
 
-    public VnWebServer(int port, MinecraftServer minecraftServer) throws IOException {
+    /**
+     * @param port            Port to listen on.
+     * @param backlog         Pending connections the OS may queue, 0 for the system default.
+     * @param executor        Runs the exchanges, see {@link MeteredExecutor#virtualThreads()} and {@link MeteredExecutor#bounded(int, int)}.
+     * @param minecraftServer The running server, used to find the web root.
+     * @param sessions        Running conversations, driven by the /api/session routes.
+     * @param interactions    Pushes dialogue state to the browser over /api/session/{player}/events.
+     */
+    public VnWebServer(int port, int backlog, MeteredExecutor executor, MinecraftServer minecraftServer,
+                       SessionManager sessions, InteractionManager interactions) throws IOException {
         this.port = port;
+        this.executor = executor;
 
         // 1. Create a new router instance.
         SimpleRouter router = new SimpleRouter();
 
+        // Request concurrency, queue depth and latency of the web server itself.
+        router.get("/api/server/stats", (exchange, params) -> {
+            Map<String, Object> stats = new LinkedHashMap<>(this.executor.stats());
+            stats.put("assetCache", router.getAssetCache().stats());
+            stats.put("streams", interactions.stats());
+            stats.put("commands", CommandRequestHandler.stats());
+            stats.put("commandQueue", sessions.commandStats());
+            SimpleRouter.sendJson(exchange, 200, stats);
+        });
+
+        // Engine, loader and router metrics. JSON by default, Prometheus text for ?format=prometheus
+        // or a scraper asking for text/plain / OpenMetrics.
+        router.get("/api/metrics", (exchange, params) -> {
+            if (wantsPrometheus(exchange)) {
+                byte[] body = Metrics.toPrometheus().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(body);
+                }
+                return;
+            }
+            SimpleRouter.sendJson(exchange, 200, Metrics.toJson());
+        });
+
+        // The conversation of one player. The browser keeps /events open and gets every new screen pushed,
+        // and answers through advance / choose. Every /api/session route needs the conversation's token
+        // (SessionManager#token), the player id alone is no proof of anything. EventSource can't set headers,
+        // so the token also works as ?token=.
+        router.get("/api/session/{player}/events", (exchange, params) -> {
+            // Only players in a conversation get this far, so channels can't be opened for made up ids
+            UUID player = authorize(exchange, params, sessions);
+            // Off the bounded pool, a stream holds its thread for as long as the tab is open
+            if (player != null) this.executor.stream(exchange, () -> interactions.stream(player, exchange));
+        });
+
+        // ?since=<version> gets only what changed since then, leave it out for the full state
+        router.get("/api/session/{player}/state", (exchange, params) -> {
+            UUID player = authorize(exchange, params, sessions);
+            if (player == null) return;
+            String json = interactions.stateSince(player, InteractionManager.parseVersion(queryParam(exchange, "since")));
+            if (json == null) {
+                SimpleRouter.sendJson(exchange, 404, Collections.singletonMap("error", "No conversation running."));
+                return;
+            }
+            byte[] body = json.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+
+        router.post("/api/session/{player}/advance", (exchange, params) -> {
+            UUID player = authorize(exchange, params, sessions);
+            if (player == null) return;
+            if (!sessions.advance(player, sessionToken(exchange))) {
+                SimpleRouter.sendJson(exchange, 409, Collections.singletonMap("error", "The conversation changed."));
+                return;
+            }
+            SimpleRouter.sendJson(exchange, 200, Map.of("ok", true));
+        });
+
+        router.post("/api/session/{player}/choose/{label}", (exchange, params) -> {
+            UUID player = authorize(exchange, params, sessions);
+            if (player == null) return;
+            if (!sessions.choose(player, sessionToken(exchange), params.get("label"))) {
+                SimpleRouter.sendJson(exchange, 409, Collections.singletonMap("error", "Not one of the choices on screen."));
+                return;
+            }
+            SimpleRouter.sendJson(exchange, 200, Map.of("ok", true));
+        });
+
         // 2. Tell the router to handle the entire static file setup and serving process.
         router.serveStaticFilesFrom(minecraftServer);
 
@@ -28,27 +137,90 @@ public class VnWebServer {
         // This endpoint returns the current value of the counter.
         router.get("/api/counter", (exchange, params) -> {
             // We'll send the count back in a simple JSON object.
-            SimpleRouter.sendJson(exchange, 200, Map.of("count", this.counter));
+            SimpleRouter.sendJson(exchange, 200, Map.of("count", this.counter.get()));
         });
 
         // This endpoint increments the counter and returns the new value.
         // We use POST because this action changes the state on the server.
         router.post("/api/counter/increment", (exchange, params) -> {
-            this.counter++; // Increment the counter
-            SimpleRouter.sendJson(exchange, 200, Map.of("count", this.counter));
+            int count = this.counter.incrementAndGet(); // Increment the counter
+            SimpleRouter.sendJson(exchange, 200, Map.of("count", count));
         });
 
         // 4. Create and start the server with the configured router.
-        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.server = HttpServer.create(new InetSocketAddress(port), backlog);
         this.server.createContext("/", router);
-        this.server.setExecutor(null);
+        // Never the dispatcher thread itself, one slow download would stall every client
+        this.server.setExecutor(executor);
         this.server.start();
 
-        System.out.println(Const.LOG_PREFIX + " SUCCESS: Web Server started on http://localhost:" + this.port + "/");
+        LOGGER.info("Web server started on http://localhost:{}/ ({} executor)", this.port, executor.getMode());
+    }
+
+    /**
+     * The web UI link for one conversation, what the player gets to click in chat.
+     */
+    public static String sessionUrl(UUID player, String token) {
+        return Config.webPublicUrl() + "/?player=" + player + "&token=" + URLEncoder.encode(token, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The player from the {player} path parameter, or null after answering 400.
+     */
+    private static UUID parsePlayer(HttpExchange exchange, Map<String, String> params) throws IOException {
+        try {
+            return UUID.fromString(params.get("player"));
+        } catch (IllegalArgumentException | NullPointerException e) {
+            SimpleRouter.sendJson(exchange, 400, Collections.singletonMap("error", "Bad player id."));
+            return null;
+        }
+    }
+
+    /**
+     * @return The player, if the request has the token of their current conversation. Otherwise null after answering 400 / 403.
+     */
+    private static UUID authorize(HttpExchange exchange, Map<String, String> params, SessionManager sessions) throws IOException {
+        UUID player = parsePlayer(exchange, params);
+        if (player == null) return null;
+        if (!sessions.isAuthorized(player, sessionToken(exchange))) {
+            SimpleRouter.sendJson(exchange, 403, Collections.singletonMap("error", "Missing or wrong session token."));
+            return null;
+        }
+        return player;
+    }
+
+    private static String sessionToken(HttpExchange exchange) {
+        String token = exchange.getRequestHeaders().getFirst(Const.WEB_SESSION_TOKEN_HEADER);
+        return token != null ? token : queryParam(exchange, "token");
+    }
+
+    private static boolean wantsPrometheus(HttpExchange exchange) {
+        String format = queryParam(exchange, "format");
+        if (format != null) return format.equalsIgnoreCase("prometheus");
+        String accept = exchange.getRequestHeaders().getFirst("Accept");
+        return accept != null && (accept.contains("text/plain") || accept.contains("application/openmetrics-text"));
+    }
+
+    private static String queryParam(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) return null;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            if (key.equals(name)) {
+                return eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    public MeteredExecutor getExecutor() {
+        return executor;
     }
 
     public void stop() {
         server.stop(0);
-        System.out.println(Const.LOG_PREFIX + " Web Server on port " + this.port + " stopped.");
+        executor.shutdown();
+        LOGGER.info("Web server on port {} stopped.", this.port);
     }
 }
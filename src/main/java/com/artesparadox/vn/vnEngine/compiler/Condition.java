@@ -0,0 +1,55 @@
+package com.artesparadox.vn.vnEngine.compiler;
+
+/**
+ * A compiled conditional / conditional_global, see {@link ConditionCompiler}.
+ * A tree of these (and numeric {@link Value}s) is built once per node when the script is compiled,
+ * evaluating it only reads primitives, it doesn't parse or box anything.
+ */
+@FunctionalInterface
+public interface Condition {
+
+    Condition TRUE = context -> true;
+    Condition FALSE = context -> false;
+
+    boolean test(Context context);
+
+    /**
+     * A numeric sub-expression: a number, a variable, item count, time of day or arithmetic on those.
+     */
+    @FunctionalInterface
+    interface Value {
+        double eval(Context context);
+    }
+
+    /**
+     * What a condition can look at. Implemented by the engine, so the compiler doesn't need to know about it.
+     * Variables are addressed by slot, {@code global} picks the global store over the script's own.
+     */
+    interface Context {
+
+        /**
+         * @return The variable as a number, NaN if unset or not a number.
+         */
+        double number(boolean global, int slot);
+
+        boolean truthy(boolean global, int slot);
+
+        /**
+         * @return The variable as an object, null if unset. Only used to compare against strings.
+         */
+        Object value(boolean global, int slot);
+
+        boolean isDay();
+
+        /**
+         * @return Ticks into the Minecraft day (0-23999), NaN if the engine doesn't know.
+         */
+        double timeOfDay();
+
+        /**
+         * @param item Slot of the item id (e.g. "minecraft:apple") in {@link SlotTable#ITEMS}.
+         * @return How many of it the player has.
+         */
+        int itemCount(int item);
+    }
+}
@@ -0,0 +1,442 @@
+package com.artesparadox.vn.vnEngine.compiler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns the "expr" of a conditional / conditional_global into a {@link Condition} tree, once, when the script is compiled.
+ * The old condition / var / value nodes go through {@link #legacy} and end up as the same kind of tree.
+ *
+ * Grammar, loosest first:
+ * <pre>
+ *   or         := and (("||" | "or") and)*
+ *   and        := not (("&&" | "and") not)*
+ *   not        := ("!" | "not") not | comparison
+ *   comparison := sum (("==" | "!=" | "<" | "<=" | ">" | ">=") sum)?
+ *   sum        := term (("+" | "-") term)*
+ *   term       := unary (("*" | "/" | "%") unary)*
+ *   unary      := "-" unary | atom
+ *   atom       := number | 'string' | "string" | true | false | day | night | time
+ *               | item("minecraft:apple") | name | global.name | local.name | "(" or ")"
+ * </pre>
+ * A bare name is a local variable in a conditional and a global one in a conditional_global,
+ * the prefixes reach the other one. A variable on its own is true if it's a true boolean, a number other than 0
+ * or a non-empty string / list. == between a variable and a string compares the text, everything else compares numbers.
+ * An unset variable is NaN as a number, so any comparison with it but != is false.
+ */
+public final class ConditionCompiler {
+
+    private ConditionCompiler() {}
+
+    /**
+     * @param global Whether bare names are globals (conditional_global) or locals (conditional).
+     * @param locals The script's local slots, new names get a slot like any other variable the script uses.
+     * @throws IllegalArgumentException If the expression doesn't parse, with what's wrong and where.
+     */
+    public static Condition compile(String expr, boolean global, SlotTable locals) {
+        Parser parser = new Parser(expr, global, locals);
+        Term term = parser.or();
+        if (parser.peek().kind != Kind.END) {
+            throw parser.error(parser.peek(), "unexpected '" + parser.peek().text + "'");
+        }
+        return parser.asCondition(term);
+    }
+
+    /**
+     * The old condition / var / value form, with the same meaning DialogueHandler always gave it.
+     * Unknown conditions are never true, the validator reports them.
+     */
+    public static Condition legacy(String condition, boolean global, int slot, Object value) {
+        if (condition == null) return Condition.FALSE;
+        switch (condition) {
+            case "equal":
+                return equalTo(global, slot, value);
+            case "not_equal": {
+                Condition equal = equalTo(global, slot, value);
+                return context -> !equal.test(context);
+            }
+            case "less_than": {
+                if (!(value instanceof Number)) return Condition.FALSE;
+                double operand = ((Number) value).doubleValue();
+                return context -> context.number(global, slot) < operand;
+            }
+            case "greater_than": {
+                if (!(value instanceof Number)) return Condition.FALSE;
+                double operand = ((Number) value).doubleValue();
+                return context -> context.number(global, slot) > operand;
+            }
+            case "day":
+                return Condition.Context::isDay;
+            case "night":
+                return context -> !context.isDay();
+            default:
+                return Condition.FALSE;
+        }
+    }
+
+    private static Condition equalTo(boolean global, int slot, Object value) {
+        if (value == null) return Condition.FALSE;
+        if (value instanceof Number) {
+            double operand = ((Number) value).doubleValue();
+            return context -> context.number(global, slot) == operand;
+        }
+        return context -> value.equals(context.value(global, slot));
+    }
+
+    // --- Lexer ---
+
+    private enum Kind { NUMBER, STRING, NAME, SYMBOL, END }
+
+    private record Token(Kind kind, String text, int pos) {}
+
+    private static List<Token> lex(String expr) {
+        List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        int length = expr.length();
+        while (i < length) {
+            char c = expr.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (Character.isDigit(c) || (c == '.' && i + 1 < length && Character.isDigit(expr.charAt(i + 1)))) {
+                int start = i;
+                while (i < length && (Character.isDigit(expr.charAt(i)) || expr.charAt(i) == '.')) i++;
+                tokens.add(new Token(Kind.NUMBER, expr.substring(start, i), start));
+            } else if (Character.isLetter(c) || c == '_') {
+                int start = i;
+                while (i < length && (Character.isLetterOrDigit(expr.charAt(i)) || expr.charAt(i) == '_')) i++;
+                tokens.add(new Token(Kind.NAME, expr.substring(start, i), start));
+            } else if (c == '\'' || c == '"') {
+                int start = i++;
+                StringBuilder text = new StringBuilder();
+                while (i < length && expr.charAt(i) != c) {
+                    // \' and \" inside a string
+                    if (expr.charAt(i) == '\\' && i + 1 < length) i++;
+                    text.append(expr.charAt(i++));
+                }
+                if (i >= length) throw new IllegalArgumentException("string at " + start + " is never closed");
+                i++;
+                tokens.add(new Token(Kind.STRING, text.toString(), start));
+            } else {
+                String two = i + 1 < length ? expr.substring(i, i + 2) : "";
+                switch (two) {
+                    case "==", "!=", "<=", ">=", "&&", "||" -> {
+                        tokens.add(new Token(Kind.SYMBOL, two, i));
+                        i += 2;
+                    }
+                    default -> {
+                        if ("()+-*/%<>!.,".indexOf(c) < 0) {
+                            throw new IllegalArgumentException(c == '='
+                                    ? "'=' at " + i + ", did you mean '=='?"
+                                    : "unexpected '" + c + "' at " + i);
+                        }
+                        tokens.add(new Token(Kind.SYMBOL, String.valueOf(c), i));
+                        i++;
+                    }
+                }
+            }
+        }
+        tokens.add(new Token(Kind.END, "end of expression", length));
+        return tokens;
+    }
+
+    // --- Parser ---
+
+    /**
+     * What a sub-expression turned out to be. Only the parser sees these, the tree it returns is plain Conditions and Values.
+     */
+    private sealed interface Term permits Num, Bool, Str, Var {}
+
+    // constant: the value if it's known at compile time, NaN otherwise
+    private record Num(Condition.Value value, double constant) implements Term {
+        Num(Condition.Value value) {
+            this(value, Double.NaN);
+        }
+
+        static Num of(double constant) {
+            return new Num(context -> constant, constant);
+        }
+
+        boolean isConstant() {
+            return !Double.isNaN(constant);
+        }
+    }
+
+    private record Bool(Condition condition) implements Term {}
+
+    private record Str(String text) implements Term {}
+
+    private record Var(boolean global, int slot, String name) implements Term {}
+
+    private static final class Parser {
+        private final String expr;
+        private final boolean global;
+        private final SlotTable locals;
+        private final List<Token> tokens;
+        private int next;
+
+        Parser(String expr, boolean global, SlotTable locals) {
+            this.expr = expr;
+            this.global = global;
+            this.locals = locals;
+            this.tokens = lex(expr);
+        }
+
+        Term or() {
+            Term left = and();
+            while (accept("||") || accept("or")) {
+                Condition a = asCondition(left);
+                Condition b = asCondition(and());
+                left = new Bool(context -> a.test(context) || b.test(context));
+            }
+            return left;
+        }
+
+        Term and() {
+            Term left = not();
+            while (accept("&&") || accept("and")) {
+                Condition a = asCondition(left);
+                Condition b = asCondition(not());
+                left = new Bool(context -> a.test(context) && b.test(context));
+            }
+            return left;
+        }
+
+        Term not() {
+            if (accept("!") || accept("not")) {
+                Condition inner = asCondition(not());
+                return new Bool(context -> !inner.test(context));
+            }
+            return comparison();
+        }
+
+        Term comparison() {
+            Term left = sum();
+            String op = peek().text;
+            if (peek().kind != Kind.SYMBOL) return left;
+            switch (op) {
+                case "==", "!=" -> {
+                    next++;
+                    Condition equal = equality(left, sum());
+                    return new Bool(op.equals("==") ? equal : context -> !equal.test(context));
+                }
+                case "<", "<=", ">", ">=" -> {
+                    next++;
+                    Condition.Value a = asValue(left);
+                    Condition.Value b = asValue(sum());
+                    // NaN (unset, not a number) makes all four false
+                    return new Bool(switch (op) {
+                        case "<" -> context -> a.eval(context) < b.eval(context);
+                        case "<=" -> context -> a.eval(context) <= b.eval(context);
+                        case ">" -> context -> a.eval(context) > b.eval(context);
+                        default -> context -> a.eval(context) >= b.eval(context);
+                    });
+                }
+                default -> {
+                    return left;
+                }
+            }
+        }
+
+        private Condition equality(Term left, Term right) {
+            if (left instanceof Str || right instanceof Str) {
+                if (left instanceof Str a && right instanceof Str b) {
+                    return a.text().equals(b.text()) ? Condition.TRUE : Condition.FALSE;
+                }
+                Term other = left instanceof Str ? right : left;
+                String text = ((Str) (left instanceof Str ? left : right)).text();
+                if (!(other instanceof Var var)) {
+                    throw error("can only compare text with a variable");
+                }
+                boolean g = var.global();
+                int slot = var.slot();
+                return context -> text.equals(context.value(g, slot));
+            }
+            if (left instanceof Bool || right instanceof Bool) {
+                Condition a = asCondition(left);
+                Condition b = asCondition(right);
+                return context -> a.test(context) == b.test(context);
+            }
+            if (left instanceof Var a && right instanceof Var b) {
+                // Numbers by value, anything else (text, lists) with equals, unset is never equal
+                return context -> {
+                    double x = context.number(a.global(), a.slot());
+                    double y = context.number(b.global(), b.slot());
+                    if (!Double.isNaN(x) && !Double.isNaN(y)) return x == y;
+                    Object value = context.value(a.global(), a.slot());
+                    return value != null && value.equals(context.value(b.global(), b.slot()));
+                };
+            }
+            Condition.Value a = asValue(left);
+            Condition.Value b = asValue(right);
+            return context -> a.eval(context) == b.eval(context);
+        }
+
+        Term sum() {
+            Term left = term();
+            while (peek().text.equals("+") || peek().text.equals("-")) {
+                char op = tokens.get(next++).text.charAt(0);
+                left = arithmetic(op, left, term());
+            }
+            return left;
+        }
+
+        Term term() {
+            Term left = unary();
+            while (peek().text.equals("*") || peek().text.equals("/") || peek().text.equals("%")) {
+                char op = tokens.get(next++).text.charAt(0);
+                left = arithmetic(op, left, unary());
+            }
+            return left;
+        }
+
+        Term unary() {
+            if (accept("-")) {
+                return arithmetic('-', Num.of(0), unary());
+            }
+            return atom();
+        }
+
+        private Num arithmetic(char op, Term left, Term right) {
+            Condition.Value a = asValue(left);
+            Condition.Value b = asValue(right);
+            if (left instanceof Num x && x.isConstant() && right instanceof Num y && y.isConstant()) {
+                double folded = apply(op, x.constant(), y.constant());
+                if (!Double.isNaN(folded)) return Num.of(folded);
+            }
+            return new Num(switch (op) {
+                case '+' -> context -> a.eval(context) + b.eval(context);
+                case '-' -> context -> a.eval(context) - b.eval(context);
+                case '*' -> context -> a.eval(context) * b.eval(context);
+                case '/' -> context -> a.eval(context) / b.eval(context);
+                default -> context -> a.eval(context) % b.eval(context);
+            });
+        }
+
+        private static double apply(char op, double a, double b) {
+            return switch (op) {
+                case '+' -> a + b;
+                case '-' -> a - b;
+                case '*' -> a * b;
+                case '/' -> a / b;
+                default -> a % b;
+            };
+        }
+
+        Term atom() {
+            Token token = tokens.get(next++);
+            switch (token.kind) {
+                case NUMBER:
+                    try {
+                        return Num.of(Double.parseDouble(token.text));
+                    } catch (NumberFormatException e) {
+                        throw error(token, "'" + token.text + "' is not a number");
+                    }
+                case STRING:
+                    return new Str(token.text);
+                case NAME:
+                    return name(token);
+                case SYMBOL:
+                    if (token.text.equals("(")) {
+                        Term inner = or();
+                        expect(")");
+                        return inner;
+                    }
+                    // fall through
+                default:
+                    throw error(token, "expected a value, got '" + token.text + "'");
+            }
+        }
+
+        private Term name(Token token) {
+            switch (token.text) {
+                case "true":
+                    return new Bool(Condition.TRUE);
+                case "false":
+                    return new Bool(Condition.FALSE);
+                case "day":
+                    return new Bool(Condition.Context::isDay);
+                case "night":
+                    return new Bool(context -> !context.isDay());
+                case "time":
+                    return new Num(Condition.Context::timeOfDay);
+                case "item": {
+                    expect("(");
+                    Token id = tokens.get(next++);
+                    if (id.kind != Kind.STRING) throw error(id, "item(...) wants the item id in quotes");
+                    expect(")");
+                    int item = SlotTable.ITEMS.slot(id.text);
+                    return new Num(context -> context.itemCount(item));
+                }
+                case "global":
+                case "local":
+                    if (accept(".")) {
+                        Token name = tokens.get(next++);
+                        if (name.kind != Kind.NAME) throw error(name, "expected a variable name after '" + token.text + ".'");
+                        return variable(token.text.equals("global"), name.text);
+                    }
+                    return variable(global, token.text);
+                default:
+                    return variable(global, token.text);
+            }
+        }
+
+        private Var variable(boolean global, String name) {
+            return new Var(global, global ? SlotTable.GLOBALS.slot(name) : locals.slot(name), name);
+        }
+
+        Condition asCondition(Term term) {
+            if (term instanceof Bool bool) return bool.condition();
+            if (term instanceof Var var) {
+                boolean g = var.global();
+                int slot = var.slot();
+                return context -> context.truthy(g, slot);
+            }
+            if (term instanceof Num num) {
+                if (num.isConstant()) return num.constant() != 0 ? Condition.TRUE : Condition.FALSE;
+                Condition.Value value = num.value();
+                return context -> {
+                    double d = value.eval(context);
+                    return d != 0 && !Double.isNaN(d);
+                };
+            }
+            throw error("'" + ((Str) term).text() + "' is text, not a condition");
+        }
+
+        Condition.Value asValue(Term term) {
+            if (term instanceof Num num) return num.value();
+            if (term instanceof Var var) {
+                boolean g = var.global();
+                int slot = var.slot();
+                return context -> context.number(g, slot);
+            }
+            if (term instanceof Bool bool) {
+                Condition condition = bool.condition();
+                return context -> condition.test(context) ? 1 : 0;
+            }
+            throw error("'" + ((Str) term).text() + "' is text, not a number");
+        }
+
+        Token peek() {
+            return tokens.get(next);
+        }
+
+        private boolean accept(String text) {
+            Token token = tokens.get(next);
+            if (token.kind == Kind.STRING || token.kind == Kind.NUMBER || !token.text.equals(text)) return false;
+            next++;
+            return true;
+        }
+
+        private void expect(String text) {
+            if (!accept(text)) throw error(peek(), "expected '" + text + "', got '" + peek().text + "'");
+        }
+
+        IllegalArgumentException error(String message) {
+            return error(tokens.get(Math.max(0, next - 1)), message);
+        }
+
+        IllegalArgumentException error(Token token, String message) {
+            return new IllegalArgumentException(message + " at " + token.pos + " in '" + expr + "'");
+        }
+    }
+}
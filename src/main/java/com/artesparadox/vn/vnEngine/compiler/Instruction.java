@@ -0,0 +1,175 @@
+package com.artesparadox.vn.vnEngine.compiler;
+
+import com.artesparadox.vn.vnEngine.dataclass.SpriteState;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One compiled FSM node.
+ * All operands are read out of the raw JSON map and cast exactly once, at compile time,
+ * so executing an instruction never has to touch the map or unbox a Gson Double again.
+ * Operands that don't apply to the opcode are simply left null / zero.
+ */
+public final class Instruction {
+
+    public final long id;
+    public final OpCode op;
+
+    // Text operands
+    public final String label;
+    public final String content;
+    public final String voice;
+    public final String sprite;
+    public final String location;
+    public final String position;
+    public final String background;
+    public final String music;
+    public final String sound;
+    public final String item;
+    public final String var;
+    public final String action;
+    public final String condition;
+    public final String command;
+
+    // Value operands
+    public final Object value;
+    public final Object init;
+    public final int amount;
+    public final long end;
+    public final boolean jump;
+    /** Resolved state id of the jump label, or {@link LabelIndex#MISSING}. */
+    public final long target;
+    /**
+     * Slot of {@link #var} in the local or global {@link SlotTable}, depending on the opcode,
+     * of {@link #item} in {@link SlotTable#ITEMS} for give_item and check_inventory, or {@link SlotTable#NONE}.
+     */
+    public final int slot;
+
+    /** What show_sprite puts on screen, built once since sprites are immutable. Null without a "sprite". */
+    public final SpriteState spriteState;
+
+    // Collection operands
+    public final List<Map<String, Object>> choices;
+    public final List<String> events;
+
+    /**
+     * Compiled test of a conditional / conditional_global (from its "expr" or the old condition / var / value)
+     * or check_inventory (has at least "amount", default 1, of "item").
+     * Null for every other opcode. An expression that doesn't parse compiles to false, see {@link #predicateError}.
+     */
+    public final Condition predicate;
+    /** Why "expr" didn't parse, or null. The validator turns this into a load error. */
+    public final String predicateError;
+
+    /**
+     * The raw node this was compiled from. Only the validator looks at it (which keys are present),
+     * executing uses the fields above.
+     */
+    public final Map<String, Object> node;
+
+    @SuppressWarnings("unchecked")
+    Instruction(long id, OpCode op, Map<String, Object> node, LabelIndex labels, SlotTable locals) {
+        this.id = id;
+        this.op = op;
+        this.node = node;
+
+        this.label = asString(node.get("label"));
+        this.content = asString(node.get("content"));
+        this.voice = asString(node.get("voice"));
+        this.sprite = asString(node.get("sprite"));
+        this.location = asString(node.get("location"));
+        this.position = asString(node.get("position"));
+        this.background = asString(node.get("background"));
+        this.music = asString(node.get("music"));
+        this.sound = asString(node.get("sound"));
+        this.item = asString(node.get("item"));
+        this.var = asString(node.get("var"));
+        this.action = asString(node.get("action"));
+        this.condition = asString(node.get("condition"));
+        this.command = asString(node.get("command"));
+        this.spriteState = op == OpCode.SHOW_SPRITE && this.sprite != null ? new SpriteState(this.sprite, this.location, this.position) : null;
+
+        this.value = node.get("value");
+        this.init = node.get("init");
+        this.amount = (int) asLong(node.get("amount"), 0);
+        this.end = asLong(node.get("end"), -1);
+        this.jump = op == OpCode.TRANSITION && "jump".equals(this.action);
+        this.target = this.jump ? labels.resolve(this.label) : LabelIndex.MISSING;
+        this.slot = resolveSlot(op, this.var, this.item, locals);
+
+        Object choice = node.get("choice");
+        this.choices = choice instanceof List ? (List<Map<String, Object>>) choice : null;
+        Object eventList = node.get("events");
+        this.events = eventList instanceof List ? (List<String>) eventList : null;
+
+        Condition compiled = null;
+        String error = null;
+        if (op == OpCode.CONDITIONAL || op == OpCode.CONDITIONAL_GLOBAL) {
+            boolean global = op == OpCode.CONDITIONAL_GLOBAL;
+            Object expr = node.get("expr");
+            if (expr == null) {
+                compiled = ConditionCompiler.legacy(this.condition, global, this.slot, this.value);
+            } else {
+                try {
+                    compiled = ConditionCompiler.compile(expr.toString(), global, locals);
+                } catch (IllegalArgumentException e) {
+                    compiled = Condition.FALSE;
+                    error = e.getMessage();
+                }
+            }
+        } else if (op == OpCode.CHECK_INVENTORY) {
+            int item = this.slot;
+            int needed = Math.max(1, this.amount);
+            // No item is reported by the validator
+            compiled = item == SlotTable.NONE ? Condition.FALSE : context -> context.itemCount(item) >= needed;
+        }
+        this.predicate = compiled;
+        this.predicateError = error;
+    }
+
+    private static int resolveSlot(OpCode op, String var, String item, SlotTable locals) {
+        switch (op) {
+            case CREATE_VAR:
+            case MODIFY_VARIABLE:
+            case CONDITIONAL:
+                return locals.slot(var);
+            case CREATE_GLOBAL:
+            case MODIFY_GLOBAL:
+            case CONDITIONAL_GLOBAL:
+                return SlotTable.GLOBALS.slot(var);
+            case GIVE_ITEM:
+            case CHECK_INVENTORY:
+                return item == null ? SlotTable.NONE : SlotTable.ITEMS.slot(item);
+            default:
+                return SlotTable.NONE;
+        }
+    }
+
+    static String asString(Object o) {
+        return o == null ? null : o.toString();
+    }
+
+    /**
+     * Gson hands every number back as a Double (and hand-written scripts sometimes quote them),
+     * so accept anything that looks like a whole number.
+     */
+    static long asLong(Object o, long fallback) {
+        if (o instanceof Number) {
+            return ((Number) o).longValue();
+        }
+        if (o instanceof String) {
+            try {
+                return (long) Double.parseDouble((String) o);
+            } catch (NumberFormatException e) {
+                return fallback;
+            }
+        }
+        return fallback;
+    }
+
+    @Override
+    public String toString() {
+        return "Instruction{" + id + ": " + op + "}";
+    }
+}
@@ -0,0 +1,79 @@
+package com.artesparadox.vn.vnEngine.compiler;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable label -> state id lookup for one script.
+ * Built once when the script is compiled, so jumps, idle chats and choice clicks
+ * are a hash lookup instead of a scan over every node.
+ */
+public final class LabelIndex {
+
+    /**
+     * Returned by {@link #resolve(String)} when the label doesn't exist.
+     */
+    public static final long MISSING = -1;
+
+    private final Map<String, Long> ids;
+
+    private LabelIndex(Map<String, Long> ids) {
+        this.ids = ids;
+    }
+
+    /**
+     * Indexes every "label" node. If a label is declared twice the first one (lowest id) wins,
+     * which is what the old linear scan did too.
+     *
+     * @param nodes      The script's nodes, sorted by id.
+     * @param duplicates Receives the name of every label that was declared more than once.
+     * @return The index.
+     */
+    static LabelIndex build(List<Map<String, Object>> nodes, Set<String> duplicates) {
+        Map<String, Long> ids = new HashMap<>();
+        for (Map<String, Object> node : nodes) {
+            if (!"label".equals(node.get("type"))) continue;
+
+            String label = Instruction.asString(node.get("label"));
+            if (label == null) continue;
+
+            long id = Instruction.asLong(node.get("id"), MISSING);
+            if (ids.putIfAbsent(label, id) != null) {
+                duplicates.add(label);
+            }
+        }
+        return new LabelIndex(Collections.unmodifiableMap(ids));
+    }
+
+    /**
+     * Wraps an already built label map, e.g. one read back from the script cache.
+     */
+    static LabelIndex of(Map<String, Long> ids) {
+        return new LabelIndex(Collections.unmodifiableMap(new HashMap<>(ids)));
+    }
+
+    /**
+     * @param label The label name.
+     * @return The state id of the label node, or {@link #MISSING}.
+     */
+    public long resolve(String label) {
+        if (label == null) return MISSING;
+        Long id = ids.get(label);
+        return id == null ? MISSING : id;
+    }
+
+    public boolean contains(String label) {
+        return label != null && ids.containsKey(label);
+    }
+
+    public Set<String> labels() {
+        return ids.keySet();
+    }
+
+    public int size() {
+        return ids.size();
+    }
+}
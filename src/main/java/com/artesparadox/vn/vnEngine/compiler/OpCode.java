@@ -0,0 +1,79 @@
+package com.artesparadox.vn.vnEngine.compiler;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Every kind of FSM node the engine knows how to execute.
+ * The compiler resolves the node's "type" string (and the "action" of meta nodes)
+ * to one of these once, so the engine can dispatch on an enum instead of a string.
+ */
+public enum OpCode {
+    SHOW_SPRITE("show_sprite"),
+    REMOVE_SPRITE("remove_sprite"),
+    DIALOGUE("dialogue"),
+    MODIFY_VARIABLE("modify_variable"),
+    MODIFY_GLOBAL("modify_global"),
+    GIVE_ITEM("give_item"),
+    CONDITIONAL("conditional"),
+    CONDITIONAL_GLOBAL("conditional_global"),
+    TRANSITION("transition"),
+    CHOICE("choice"),
+    COMMAND("command"),
+    LABEL("label"),
+    MODIFY_BACKGROUND("modify_background"),
+    CLEAR_BACKGROUND("clear_background"),
+    NIGHT_CHOICE("night_choice"),
+    UNLOCK_DIALOGUES("unlock_dialogues"),
+    PLAY_SOUND("play_sound"),
+    PLAY_MUSIC("play_music"),
+    NEXT("next"),
+    IDLE_CHAT("idle_chat"),
+    FINISH_DIALOGUE("finish_dialogue"),
+    CHECK_INVENTORY("check_inventory"),
+    // Meta nodes are split by their "action" so the engine never has to look at it again
+    CREATE_VAR(null),
+    CREATE_GLOBAL(null),
+    META("meta"),
+    // Anything we don't recognise just advances, same as the old default branch
+    UNKNOWN(null);
+
+    private static final Map<String, OpCode> BY_TYPE = new HashMap<>();
+    static {
+        for (OpCode op : values()) {
+            if (op.type != null) {
+                BY_TYPE.put(op.type, op);
+            }
+        }
+    }
+
+    private final String type;
+
+    OpCode(String type) {
+        this.type = type;
+    }
+
+    /**
+     * The "type" string used for this opcode in script JSON, or null for synthetic opcodes.
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Resolves the opcode for a raw FSM node.
+     *
+     * @param type   The node's "type" field.
+     * @param action The node's "action" field, only consulted for meta nodes.
+     * @return The matching opcode, never null.
+     */
+    public static OpCode of(String type, String action) {
+        if (type == null) return UNKNOWN;
+        if ("meta".equals(type)) {
+            if ("create_var".equals(action)) return CREATE_VAR;
+            if ("create_global".equals(action)) return CREATE_GLOBAL;
+            return META;
+        }
+        return BY_TYPE.getOrDefault(type, UNKNOWN);
+    }
+}
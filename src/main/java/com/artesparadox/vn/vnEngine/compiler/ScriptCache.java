@@ -0,0 +1,501 @@
+package com.artesparadox.vn.vnEngine.compiler;
+
+import com.artesparadox.vn.VisualNovelFramework;
+import com.artesparadox.vn.vnEngine.dataclass.Script;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Binary, precompiled copy of the script directory, so a server start doesn't have to parse every JSON file again.
+ *
+ * Layout (big endian):
+ * <pre>
+ *   int    magic "VNSC", int version
+ *   int    pool size, then each string as (int length, UTF-8 bytes)      -- every string is stored once
+ *   int    entry count, then per entry:
+ *            file name, hash (pool refs), long size, long modified, int body offset, int body length
+ *   bytes  entry bodies:
+ *            header: name, description, triggers, metadata, required mods, asset dir
+ *            labels: (label, state id) pairs, unresolved and duplicate label names
+ *            nodes:  per node one opcode byte followed by the node map as tagged values
+ * </pre>
+ *
+ * The file is memory-mapped when opened. Only the string pool and the entry table are decoded up front,
+ * an entry's body is decoded when its script is first used, straight out of the mapping.
+ * Entries are only trusted when the source file's SHA-256 still matches.
+ *
+ * Each entry stores its label index, but there is no stored trigger index. The trigger index covers every script
+ * at once, including the ones that came from JSON this start or were hot reloaded. Rebuilding it from the triggers
+ * in the headers is one pass over a few entries per script, about what decoding a stored one would cost.
+ *
+ * Every write goes to a new generation of the file ("script.cache.7", then "script.cache.8"...) and the newest one
+ * is what gets opened. Cached scripts keep decoding out of the mapping they were loaded from, so that file is never
+ * replaced while it's mapped (Windows won't allow it anyway). Older generations are deleted once they can be.
+ */
+public final class ScriptCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VisualNovelFramework.class);
+
+    private static final int MAGIC = 0x564E5343; // "VNSC"
+    // Bump this whenever the layout or the OpCode enum changes, opcodes are stored by ordinal
+    private static final int VERSION = 1;
+
+    // Value tags
+    private static final byte T_NULL = 0;
+    private static final byte T_STRING = 1;
+    private static final byte T_DOUBLE = 2;
+    private static final byte T_TRUE = 3;
+    private static final byte T_FALSE = 4;
+    private static final byte T_LIST = 5;
+    private static final byte T_MAP = 6;
+    private static final byte T_LONG = 7;
+
+    private static final OpCode[] OPCODES = OpCode.values();
+
+    private final MappedByteBuffer buffer;
+    private final String[] pool;
+    private final Map<String, Entry> entries;
+    private final int bodyStart;
+
+    private ScriptCache(MappedByteBuffer buffer, String[] pool, Map<String, Entry> entries, int bodyStart) {
+        this.buffer = buffer;
+        this.pool = pool;
+        this.entries = entries;
+        this.bodyStart = bodyStart;
+    }
+
+    /**
+     * One script file as it should go into the cache.
+     *
+     * @param fileName File name inside the script directory.
+     * @param hash     SHA-256 of the file content.
+     * @param size     File size in bytes.
+     * @param modified Last modified time in millis.
+     * @param script   The loaded script. Scripts whose program isn't loaded are written if the previous cache has them.
+     */
+    public record Source(String fileName, String hash, long size, long modified, Script script) {}
+
+    private record Entry(String fileName, String hash, long size, long modified, int offset, int length) {}
+
+    // --- Reading ---
+
+    /**
+     * Maps and indexes the newest generation of a cache file.
+     *
+     * @param file The cache file, without the generation.
+     * @return The cache, or null if there is none, it's from another version, or unreadable.
+     */
+    public static ScriptCache open(Path file) {
+        List<Path> generations = generations(file);
+        if (generations.isEmpty()) return null;
+        Path newest = generations.get(generations.size() - 1);
+        try (FileChannel channel = FileChannel.open(newest, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                LOGGER.info("Script cache is from another version, ignoring it.");
+                return null;
+            }
+
+            String[] pool = new String[buffer.getInt()];
+            for (int i = 0; i < pool.length; i++) {
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                pool[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            int count = buffer.getInt();
+            Map<String, Entry> entries = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry(pool[buffer.getInt()], pool[buffer.getInt()], buffer.getLong(), buffer.getLong(), buffer.getInt(), buffer.getInt());
+                entries.put(entry.fileName, entry);
+            }
+            return new ScriptCache(buffer, pool, entries, buffer.position());
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Could not read script cache, falling back to JSON", e);
+            return null;
+        }
+    }
+
+    /**
+     * Number of scripts in the cache.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * The content hash recorded for a file, or null if it isn't cached.
+     */
+    public String hashOf(String fileName) {
+        Entry entry = entries.get(fileName);
+        return entry == null ? null : entry.hash;
+    }
+
+    /**
+     * Decodes a cached script's header. The program is decoded from the mapping when it's first needed.
+     *
+     * @param fileName File name inside the script directory.
+     * @return The script (postLoad() still has to be called), or null if the file isn't cached.
+     */
+    public Script load(String fileName) {
+        Entry entry = entries.get(fileName);
+        if (entry == null) return null;
+
+        ByteBuffer in = body(entry);
+        Script script = Script.of(
+                readString(in),
+                readString(in),
+                readStringMap(in),
+                readStringMap(in),
+                readStringList(in),
+                readString(in));
+        int programOffset = in.position();
+        script.setProgramSource(() -> readProgram(body(entry).position(programOffset)));
+        return script;
+    }
+
+    /**
+     * Decodes a cached program without handing it to any script, so it can be carried over into the next cache file.
+     *
+     * @param fileName File name inside the script directory.
+     * @param hash     SHA-256 the file has now.
+     * @return The program, or null if the file isn't cached or was cached with other content.
+     */
+    public ScriptProgram program(String fileName, String hash) {
+        Entry entry = entries.get(fileName);
+        if (entry == null || !entry.hash.equals(hash)) return null;
+
+        ByteBuffer in = body(entry);
+        // The script already has its header, step over it
+        readString(in);
+        readString(in);
+        readStringMap(in);
+        readStringMap(in);
+        readStringList(in);
+        readString(in);
+        return readProgram(in);
+    }
+
+    private ByteBuffer body(Entry entry) {
+        // duplicate() so concurrent decodes don't fight over the position
+        return this.buffer.duplicate().position(this.bodyStart + entry.offset).limit(this.bodyStart + entry.offset + entry.length);
+    }
+
+    private ScriptProgram readProgram(ByteBuffer in) {
+        int labelCount = in.getInt();
+        Map<String, Long> labelIds = new HashMap<>(labelCount * 2);
+        for (int i = 0; i < labelCount; i++) {
+            labelIds.put(this.pool[in.getInt()], in.getLong());
+        }
+        Set<String> unresolved = new TreeSet<>(readStringList(in));
+        Set<String> duplicates = new TreeSet<>(readStringList(in));
+
+        int nodeCount = in.getInt();
+        List<Map<String, Object>> nodes = new ArrayList<>(nodeCount);
+        OpCode[] ops = new OpCode[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            ops[i] = OPCODES[in.get()];
+            nodes.add(readMap(in));
+        }
+        return ScriptCompiler.restore(nodes, ops, LabelIndex.of(labelIds), unresolved, duplicates);
+    }
+
+    private String readString(ByteBuffer in) {
+        int index = in.getInt();
+        return index < 0 ? null : this.pool[index];
+    }
+
+    private Map<String, String> readStringMap(ByteBuffer in) {
+        int count = in.getInt();
+        Map<String, String> map = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            map.put(readString(in), readString(in));
+        }
+        return map;
+    }
+
+    private List<String> readStringList(ByteBuffer in) {
+        int count = in.getInt();
+        List<String> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(readString(in));
+        }
+        return list;
+    }
+
+    private Map<String, Object> readMap(ByteBuffer in) {
+        int count = in.getInt();
+        // Mutable on purpose, same as the maps Gson gives us
+        Map<String, Object> map = new LinkedHashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            map.put(this.pool[in.getInt()], readValue(in));
+        }
+        return map;
+    }
+
+    private Object readValue(ByteBuffer in) {
+        byte tag = in.get();
+        switch (tag) {
+            case T_NULL:
+                return null;
+            case T_STRING:
+                return this.pool[in.getInt()];
+            case T_DOUBLE:
+                return in.getDouble();
+            case T_TRUE:
+                return Boolean.TRUE;
+            case T_FALSE:
+                return Boolean.FALSE;
+            case T_LONG:
+                return in.getLong();
+            case T_LIST: {
+                int count = in.getInt();
+                List<Object> list = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    list.add(readValue(in));
+                }
+                return list;
+            }
+            case T_MAP:
+                return readMap(in);
+            default:
+                throw new IllegalStateException("Corrupt script cache, unknown value tag " + tag);
+        }
+    }
+
+    // --- Writing ---
+
+    /**
+     * Writes the next generation of the cache file and deletes the older ones it can.
+     * Scripts whose program was never loaded are decoded from the previous cache, so cached scripts nobody has
+     * opened yet don't drop out. Lazy JSON scripts nobody used yet are left out, they will be picked up by a later
+     * write once something has compiled them.
+     *
+     * @param file     The cache file, without the generation.
+     * @param sources  The scripts to store.
+     * @param previous The cache the scripts were loaded from, or null.
+     * @return Number of scripts written.
+     * @throws IOException if the file can't be written.
+     */
+    public static int write(Path file, Collection<Source> sources, ScriptCache previous) throws IOException {
+        Map<String, Integer> pool = new LinkedHashMap<>();
+        ByteArrayOutputStream bodies = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bodies);
+        List<int[]> table = new ArrayList<>();
+        List<Source> written = new ArrayList<>();
+
+        for (Source source : sources) {
+            Script script = source.script();
+            ScriptProgram program;
+            if (script.isProgramLoaded()) {
+                program = script.getProgram();
+            } else {
+                // Only a transient decode, the script itself stays lazy
+                program = previous == null ? null : previous.program(source.fileName(), source.hash());
+                if (program == null) continue;
+            }
+
+            int start = body.size();
+            writeString(body, pool, script.getName());
+            writeString(body, pool, script.getDescription());
+            writeStringMap(body, pool, script.getTriggers());
+            writeStringMap(body, pool, script.getMetadata());
+            writeStringList(body, pool, script.getRequiredMods());
+            writeString(body, pool, script.getAssetDir());
+
+            LabelIndex labels = program.labels();
+            body.writeInt(labels.size());
+            for (String label : labels.labels()) {
+                body.writeInt(intern(pool, label));
+                body.writeLong(labels.resolve(label));
+            }
+            writeStringList(body, pool, program.getUnresolvedLabels());
+            writeStringList(body, pool, program.getDuplicateLabels());
+
+            List<Map<String, Object>> nodes = program.getNodes();
+            body.writeInt(nodes.size());
+            for (Map<String, Object> node : nodes) {
+                Instruction instruction = program.at(Instruction.asLong(node.get("id"), -1));
+                body.writeByte(instruction.op.ordinal());
+                writeMap(body, pool, node);
+            }
+
+            table.add(new int[]{start, body.size() - start});
+            written.add(source);
+            // Intern these now so the pool is complete before we write it
+            intern(pool, source.fileName());
+            intern(pool, source.hash());
+        }
+        body.flush();
+
+        List<Path> older = generations(file);
+        long generation = older.isEmpty() ? 1 : generationOf(file, older.get(older.size() - 1)) + 1;
+        Path target = file.resolveSibling(file.getFileName() + "." + generation);
+        Path temp = file.resolveSibling(target.getFileName() + ".tmp");
+        try (OutputStream os = Files.newOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            out.writeInt(pool.size());
+            for (String string : pool.keySet()) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            out.writeInt(written.size());
+            for (int i = 0; i < written.size(); i++) {
+                Source source = written.get(i);
+                out.writeInt(pool.get(source.fileName()));
+                out.writeInt(pool.get(source.hash()));
+                out.writeLong(source.size());
+                out.writeLong(source.modified());
+                out.writeInt(table.get(i)[0]);
+                out.writeInt(table.get(i)[1]);
+            }
+
+            bodies.writeTo(out);
+        }
+
+        // A fresh name, nothing is replaced, so it doesn't matter who still has the old one mapped
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target);
+        }
+
+        older.add(file); // the single file from before generations
+        for (Path old : older) {
+            try {
+                Files.deleteIfExists(old);
+            } catch (IOException e) {
+                // Still mapped on Windows, the next write gets it
+            }
+        }
+        return written.size();
+    }
+
+    /**
+     * Every generation of a cache file on disk, oldest first.
+     */
+    private static List<Path> generations(Path file) {
+        List<Path> found = new ArrayList<>();
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir == null || !Files.isDirectory(dir)) return found;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, file.getFileName() + ".*")) {
+            for (Path path : stream) {
+                if (generationOf(file, path) > 0) found.add(path);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not list script cache files", e);
+        }
+        found.sort(Comparator.comparingLong(path -> generationOf(file, path)));
+        return found;
+    }
+
+    /**
+     * @return The generation in a cache file's name, or -1 if it isn't one (e.g. a leftover .tmp).
+     */
+    private static long generationOf(Path file, Path path) {
+        String suffix = path.getFileName().toString().substring(file.getFileName().toString().length() + 1);
+        try {
+            return Long.parseLong(suffix);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static int intern(Map<String, Integer> pool, String string) {
+        Integer index = pool.get(string);
+        if (index == null) {
+            index = pool.size();
+            pool.put(string, index);
+        }
+        return index;
+    }
+
+    private static void writeString(DataOutputStream out, Map<String, Integer> pool, String string) throws IOException {
+        out.writeInt(string == null ? -1 : intern(pool, string));
+    }
+
+    private static void writeStringMap(DataOutputStream out, Map<String, Integer> pool, Map<String, String> map) throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            writeString(out, pool, entry.getKey());
+            writeString(out, pool, entry.getValue());
+        }
+    }
+
+    private static void writeStringList(DataOutputStream out, Map<String, Integer> pool, Collection<String> list) throws IOException {
+        out.writeInt(list.size());
+        for (String string : list) {
+            writeString(out, pool, string);
+        }
+    }
+
+    private static void writeMap(DataOutputStream out, Map<String, Integer> pool, Map<String, Object> map) throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            out.writeInt(intern(pool, entry.getKey()));
+            writeValue(out, pool, entry.getValue());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void writeValue(DataOutputStream out, Map<String, Integer> pool, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(T_NULL);
+        } else if (value instanceof String) {
+            out.writeByte(T_STRING);
+            out.writeInt(intern(pool, (String) value));
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? T_TRUE : T_FALSE);
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(T_DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            out.writeByte(T_LONG);
+            out.writeLong(((Number) value).longValue());
+        } else if (value instanceof List) {
+            List<Object> list = (List<Object>) value;
+            out.writeByte(T_LIST);
+            out.writeInt(list.size());
+            for (Object element : list) {
+                writeValue(out, pool, element);
+            }
+        } else if (value instanceof Map) {
+            out.writeByte(T_MAP);
+            writeMap(out, pool, (Map<String, Object>) value);
+        } else {
+            out.writeByte(T_STRING);
+            out.writeInt(intern(pool, String.valueOf(value)));
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.artesparadox.vn.vnEngine.compiler;
+
+import com.artesparadox.vn.vnEngine.dataclass.Script;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Turns a script's FSM graph into a {@link ScriptProgram}.
+ * This is where all the string matching and casting happens, so the engine doesn't have to do it per step.
+ */
+public final class ScriptCompiler {
+
+    /**
+     * Ids are consecutive in practice (the engine moves forward with id + 1),
+     * this just stops a typo like "id": 99999999 from allocating a giant array.
+     */
+    private static final int MAX_SPARSE_GAP = 4096;
+
+    private ScriptCompiler() {}
+
+    /**
+     * Compiles a loaded script.
+     *
+     * @param script The script, after postLoad().
+     * @return The compiled program.
+     * @throws IllegalArgumentException if the FSM has invalid or wildly sparse ids.
+     */
+    public static ScriptProgram compile(Script script) {
+        return compile(nodesOf(script.getFsm()));
+    }
+
+    /**
+     * Compiles a flat list of FSM nodes, each carrying its own "id".
+     *
+     * @param nodes The raw nodes, in any order.
+     * @return The compiled program.
+     * @throws IllegalArgumentException if a node has no usable id, ids repeat, or the id range is wildly sparse.
+     */
+    public static ScriptProgram compile(List<Map<String, Object>> nodes) {
+        long maxId = -1;
+        for (Map<String, Object> node : nodes) {
+            long id = Instruction.asLong(node.get("id"), -1);
+            if (id < 0) {
+                throw new IllegalArgumentException("FSM node has no valid id: " + node);
+            }
+            maxId = Math.max(maxId, id);
+        }
+        if (maxId >= (long) nodes.size() + MAX_SPARSE_GAP) {
+            throw new IllegalArgumentException("FSM ids are too sparse (max id " + maxId + " for " + nodes.size() + " nodes)");
+        }
+
+        List<Map<String, Object>> ordered = new ArrayList<>(nodes);
+        ordered.sort(Comparator.comparingLong(node -> Instruction.asLong(node.get("id"), -1)));
+
+        Set<String> duplicateLabels = new TreeSet<>();
+        LabelIndex labels = LabelIndex.build(ordered, duplicateLabels);
+
+        Instruction[] instructions = new Instruction[(int) (maxId + 1)];
+        SlotTable locals = SlotTable.locals();
+        Set<String> unresolvedLabels = new TreeSet<>();
+        for (Map<String, Object> node : ordered) {
+            long id = Instruction.asLong(node.get("id"), -1);
+            if (instructions[(int) id] != null) {
+                throw new IllegalArgumentException("Duplicate FSM node id: " + id);
+            }
+            OpCode op = OpCode.of(Instruction.asString(node.get("type")), Instruction.asString(node.get("action")));
+            Instruction instruction = new Instruction(id, op, node, labels, locals);
+            instructions[(int) id] = instruction;
+            collectLabelReferences(instruction, labels, unresolvedLabels);
+        }
+
+        return new ScriptProgram(instructions, Collections.unmodifiableList(ordered), nodes.size(), labels, locals,
+                Collections.unmodifiableSet(unresolvedLabels), Collections.unmodifiableSet(duplicateLabels));
+    }
+
+    /**
+     * Rebuilds a program from nodes, opcodes and labels that were already worked out once,
+     * e.g. by the binary script cache. Skips sorting, label scanning and reference checks.
+     *
+     * @param ordered    Nodes sorted by id.
+     * @param ops        The opcode of each node, same order.
+     * @param labels     The label index.
+     * @param unresolved Previously found unresolved labels.
+     * @param duplicates Previously found duplicate labels.
+     * @return The program.
+     */
+    static ScriptProgram restore(List<Map<String, Object>> ordered, OpCode[] ops, LabelIndex labels,
+                                 Set<String> unresolved, Set<String> duplicates) {
+        long maxId = ordered.isEmpty() ? -1 : Instruction.asLong(ordered.get(ordered.size() - 1).get("id"), -1);
+        Instruction[] instructions = new Instruction[(int) (maxId + 1)];
+        SlotTable locals = SlotTable.locals();
+        for (int i = 0; i < ordered.size(); i++) {
+            Map<String, Object> node = ordered.get(i);
+            long id = Instruction.asLong(node.get("id"), -1);
+            instructions[(int) id] = new Instruction(id, ops[i], node, labels, locals);
+        }
+        return new ScriptProgram(instructions, Collections.unmodifiableList(ordered), ordered.size(), labels, locals,
+                Collections.unmodifiableSet(unresolved), Collections.unmodifiableSet(duplicates));
+    }
+
+    /**
+     * Records every label an instruction can send the engine to that isn't in the index.
+     */
+    private static void collectLabelReferences(Instruction instruction, LabelIndex labels, Set<String> unresolved) {
+        switch (instruction.op) {
+            case TRANSITION:
+                if (instruction.jump && !labels.contains(instruction.label)) {
+                    unresolved.add(String.valueOf(instruction.label));
+                }
+                break;
+            case CHOICE:
+            case NIGHT_CHOICE:
+                if (instruction.choices == null) break;
+                for (Map<String, Object> choice : instruction.choices) {
+                    String label = Instruction.asString(choice.get("label"));
+                    if (label != null && !labels.contains(label)) {
+                        unresolved.add(label);
+                    }
+                }
+                break;
+            case UNLOCK_DIALOGUES:
+                if (instruction.events == null) break;
+                for (String event : instruction.events) {
+                    if (!labels.contains(event)) {
+                        unresolved.add(event);
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Flattens a script's "fsm" object into a list of nodes.
+     * The FSM is normally keyed by state id ({"0": {...}, "1": {...}}), but a plain list of nodes
+     * under any key is accepted too. Nodes without an "id" get the key they were stored under,
+     * on a copy: the FSM belongs to the script and stays exactly as it was loaded.
+     *
+     * @param fsm The script's FSM map.
+     * @return The nodes, in no particular order.
+     */
+    @SuppressWarnings("unchecked")
+    public static List<Map<String, Object>> nodesOf(Map<String, Object> fsm) {
+        List<Map<String, Object>> nodes = new ArrayList<>();
+        if (fsm == null) return nodes;
+
+        for (Map.Entry<String, Object> entry : fsm.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof Map) {
+                Map<String, Object> node = (Map<String, Object>) value;
+                if (!node.containsKey("id")) {
+                    // Shallow is enough, only the id is added
+                    node = new LinkedHashMap<>(node);
+                    node.put("id", Instruction.asLong(entry.getKey(), -1));
+                }
+                nodes.add(node);
+            } else if (value instanceof List) {
+                for (Object element : (List<Object>) value) {
+                    if (element instanceof Map) {
+                        nodes.add((Map<String, Object>) element);
+                    }
+                }
+            }
+        }
+        return nodes;
+    }
+}
@@ -0,0 +1,109 @@
+package com.artesparadox.vn.vnEngine.compiler;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A compiled script: a dense array of instructions indexed directly by state id.
+ * Programs are immutable once built, so a single program can be shared by every engine running that script.
+ */
+public final class ScriptProgram {
+
+    private final Instruction[] instructions;
+    private final List<Map<String, Object>> nodes;
+    private final int size;
+    private final LabelIndex labels;
+    private final SlotTable locals;
+    private final Set<String> unresolvedLabels;
+    private final Set<String> duplicateLabels;
+    // Set once ScriptValidator found nothing wrong, the engine skips its defensive checks then
+    private volatile boolean verified;
+
+    ScriptProgram(Instruction[] instructions, List<Map<String, Object>> nodes, int size,
+                  LabelIndex labels, SlotTable locals, Set<String> unresolvedLabels, Set<String> duplicateLabels) {
+        this.instructions = instructions;
+        this.nodes = nodes;
+        this.size = size;
+        this.labels = labels;
+        this.locals = locals;
+        this.unresolvedLabels = unresolvedLabels;
+        this.duplicateLabels = duplicateLabels;
+    }
+
+    /**
+     * Fetches the instruction for a state id.
+     *
+     * @param stateId The engine's current state.
+     * @return The instruction, or null if the id is out of range or has no node (which ends the script).
+     */
+    public Instruction at(long stateId) {
+        if (stateId < 0 || stateId >= instructions.length) {
+            return null;
+        }
+        return instructions[(int) stateId];
+    }
+
+    /**
+     * The label -> state id index for this script.
+     */
+    public LabelIndex labels() {
+        return labels;
+    }
+
+    /**
+     * Slots of this script's local variables. Shared by every engine running the script, each engine
+     * keeps its own values in a VariableStore over it.
+     */
+    public SlotTable locals() {
+        return locals;
+    }
+
+    /**
+     * Labels that are jumped to, offered as choices or unlocked as idle chats, but never declared.
+     * Empty for a healthy script.
+     */
+    public Set<String> getUnresolvedLabels() {
+        return unresolvedLabels;
+    }
+
+    /**
+     * Labels declared by more than one "label" node. Only the first declaration is reachable.
+     */
+    public Set<String> getDuplicateLabels() {
+        return duplicateLabels;
+    }
+
+    /**
+     * Whether {@link ScriptValidator} checked this program and found no errors. Operands, jump targets and
+     * conditional ends of a verified program are known good.
+     */
+    public boolean isVerified() {
+        return verified;
+    }
+
+    void markVerified() {
+        this.verified = true;
+    }
+
+    /**
+     * The raw nodes this program was compiled from, in id order.
+     */
+    public List<Map<String, Object>> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Number of actual instructions (holes in the id range are not counted).
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * One past the highest state id in the program.
+     */
+    public int length() {
+        return instructions.length;
+    }
+}
@@ -0,0 +1,320 @@
+package com.artesparadox.vn.vnEngine.compiler;
+
+import com.artesparadox.vn.VisualNovelFramework;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongConsumer;
+
+/**
+ * Load-time checks for a compiled script, so a broken script is refused when it's loaded instead of
+ * falling over in the middle of somebody's conversation.
+ *
+ * Builds the control-flow graph (fall-through, conditional ends, jumps, choice labels, idle chats into unlocked
+ * events) from node 0 and checks every instruction's operands on the way. Errors are things the engine can't
+ * run correctly: unresolved labels, a conditional without an end or with an expr that doesn't parse,
+ * an item amount that isn't a whole number, arithmetic on a non-number, a transition that would spin in place. Warnings are unreachable nodes, falling
+ * through into a gap in the ids (which silently ends the conversation) and the like.
+ *
+ * A program without errors is marked {@link ScriptProgram#isVerified() verified} and the engine skips its
+ * defensive checks for it.
+ */
+public final class ScriptValidator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VisualNovelFramework.class);
+
+    private static final Set<String> CONDITIONS = Set.of("equal", "not_equal", "less_than", "greater_than", "day", "night");
+    private static final Set<String> ARITHMETIC = Set.of("add", "subtract", "multiply", "divide");
+
+    private ScriptValidator() {}
+
+    /**
+     * Checks the program and marks it verified if nothing is wrong with it.
+     *
+     * @return Everything found, errors first.
+     */
+    public static Report validate(ScriptProgram program) {
+        List<Problem> problems = new ArrayList<>();
+        int length = program.length();
+
+        if (program.at(0) == null) {
+            problems.add(new Problem(0, true, "there is no node 0, the conversation would end right away"));
+        }
+        for (String label : program.getUnresolvedLabels()) {
+            problems.add(new Problem(-1, true, "label '" + label + "' is used but never declared"));
+        }
+        for (String label : program.getDuplicateLabels()) {
+            problems.add(new Problem(-1, false, "label '" + label + "' is declared more than once, only the first one is used"));
+        }
+
+        // Idle chat may jump to any event the script ever unlocks
+        List<Long> idleTargets = new ArrayList<>();
+        for (int id = 0; id < length; id++) {
+            Instruction in = program.at(id);
+            if (in == null || in.op != OpCode.UNLOCK_DIALOGUES || in.events == null) continue;
+            for (String event : in.events) {
+                long target = program.labels().resolve(event);
+                if (target != LabelIndex.MISSING) idleTargets.add(target + 1);
+            }
+        }
+
+        // Operands of every node, reachable or not, a bad node is a bad node
+        for (int id = 0; id < length; id++) {
+            Instruction in = program.at(id);
+            if (in != null) checkOperands(in, program, problems);
+        }
+
+        // Reachability from node 0
+        boolean[] reached = new boolean[length];
+        ArrayDeque<Long> work = new ArrayDeque<>();
+        if (program.at(0) != null) {
+            reached[0] = true;
+            work.push(0L);
+        }
+        while (!work.isEmpty()) {
+            Instruction in = program.at(work.pop());
+            forEachSuccessor(in, program, idleTargets, next -> {
+                if (next < 0 || next >= length || program.at(next) == null || reached[(int) next]) return;
+                reached[(int) next] = true;
+                work.push(next);
+            });
+
+            // Plain fall-through into a hole in the ids ends the conversation without a word
+            long after = in.id + 1;
+            if (fallsThrough(in.op) && after < length && program.at(after) == null) {
+                problems.add(new Problem(in.id, false, "falls through into missing node " + after + ", the conversation ends there"));
+            }
+        }
+
+        for (int id = 0; id < length; id++) {
+            if (program.at(id) == null || reached[id]) continue;
+            int last = id;
+            while (last + 1 < length && program.at(last + 1) != null && !reached[last + 1]) last++;
+            problems.add(last == id
+                    ? new Problem(id, false, "never reached")
+                    : new Problem(-1, false, "nodes " + id + "-" + last + " are never reached"));
+            id = last;
+        }
+
+        problems.sort((a, b) -> Boolean.compare(b.error(), a.error()));
+        Report report = new Report(Collections.unmodifiableList(problems));
+        if (!report.hasErrors()) {
+            program.markVerified();
+        }
+        return report;
+    }
+
+    /**
+     * Where the engine can go after an instruction, mirroring VNEngine.execute.
+     */
+    private static void forEachSuccessor(Instruction in, ScriptProgram program, List<Long> idleTargets, LongConsumer next) {
+        switch (in.op) {
+            case CONDITIONAL:
+            case CONDITIONAL_GLOBAL:
+            case CHECK_INVENTORY:
+                next.accept(in.id + 1);
+                next.accept(in.end);
+                return;
+            case TRANSITION:
+                if (in.jump && in.target != LabelIndex.MISSING) next.accept(in.target + 1);
+                return;
+            case NIGHT_CHOICE:
+                next.accept(in.id + 1);
+                // fall through, at night it's a choice
+            case CHOICE:
+                // buttonPress puts the engine on the label node itself
+                if (in.choices == null) return;
+                for (Map<String, Object> choice : in.choices) {
+                    long target = program.labels().resolve(Instruction.asString(choice.get("label")));
+                    if (target != LabelIndex.MISSING) next.accept(target);
+                }
+                return;
+            case IDLE_CHAT:
+                for (long target : idleTargets) next.accept(target);
+                return;
+            case FINISH_DIALOGUE:
+                // Ends the conversation
+                return;
+            default:
+                next.accept(in.id + 1);
+        }
+    }
+
+    private static boolean fallsThrough(OpCode op) {
+        switch (op) {
+            case TRANSITION:
+            case CHOICE:
+            case IDLE_CHAT:
+            case FINISH_DIALOGUE:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    private static void checkOperands(Instruction in, ScriptProgram program, List<Problem> problems) {
+        switch (in.op) {
+            case CONDITIONAL:
+            case CONDITIONAL_GLOBAL:
+                if (in.node.containsKey("expr")) {
+                    // The expression replaces condition / var / value
+                    if (in.predicateError != null) error(problems, in, "bad expr: " + in.predicateError);
+                } else if (in.condition == null || !CONDITIONS.contains(in.condition)) {
+                    error(problems, in, "unknown condition '" + in.condition + "'");
+                } else if (!in.condition.equals("day") && !in.condition.equals("night")) {
+                    if (in.var == null) error(problems, in, "condition without a var");
+                    if ((in.condition.equals("less_than") || in.condition.equals("greater_than")) && !(in.value instanceof Number)) {
+                        error(problems, in, in.condition + " needs a number, got " + describe(in.value));
+                    }
+                }
+                checkEnd(in, program, problems);
+                break;
+            case CHECK_INVENTORY:
+                if (in.item == null) error(problems, in, "check_inventory without an item");
+                if (in.node.containsKey("amount")) checkAmount(in, problems);
+                checkEnd(in, program, problems);
+                break;
+            case MODIFY_VARIABLE:
+            case MODIFY_GLOBAL:
+                if (in.var == null) error(problems, in, "modify without a var");
+                if (in.action == null) {
+                    error(problems, in, "modify without an action");
+                } else if (ARITHMETIC.contains(in.action)) {
+                    if (!(in.value instanceof Number)) {
+                        error(problems, in, "can't " + in.action + " " + describe(in.value));
+                    } else if (in.action.equals("divide") && ((Number) in.value).doubleValue() == 0) {
+                        error(problems, in, "divides by zero");
+                    }
+                } else if (!in.action.equals("set") && !in.action.equals("toggle")) {
+                    error(problems, in, "unknown variable action '" + in.action + "'");
+                }
+                break;
+            case CREATE_VAR:
+            case CREATE_GLOBAL:
+                if (in.var == null) error(problems, in, "create without a var");
+                break;
+            case GIVE_ITEM:
+                if (in.item == null) error(problems, in, "give_item without an item");
+                checkAmount(in, problems);
+                break;
+            case TRANSITION:
+                // Anything but a jump leaves the engine on this node forever
+                if (!in.jump) {
+                    error(problems, in, "transition '" + in.action + "' doesn't go anywhere, only 'jump' is supported");
+                } else if (in.label == null) {
+                    error(problems, in, "jump without a label");
+                }
+                break;
+            case CHOICE:
+            case NIGHT_CHOICE:
+                // Nothing to click means the player can only advance, which shows the same choice again
+                if (in.choices == null || in.choices.isEmpty()) {
+                    error(problems, in, in.op == OpCode.CHOICE ? "choice without choices" : "night_choice without choices");
+                    break;
+                }
+                for (Map<String, Object> choice : in.choices) {
+                    if (choice.get("label") == null) error(problems, in, "a choice without a label");
+                }
+                break;
+            case UNLOCK_DIALOGUES:
+                if (in.events == null || in.events.isEmpty()) warn(problems, in, "unlocks nothing");
+                break;
+            case SHOW_SPRITE:
+                if (in.sprite == null) warn(problems, in, "show_sprite without a sprite, does nothing");
+                break;
+            case PLAY_SOUND:
+                if (in.sound == null) warn(problems, in, "play_sound without a sound, does nothing");
+                break;
+            case COMMAND:
+                if (in.command == null) warn(problems, in, "command node without a command");
+                break;
+            case UNKNOWN:
+                warn(problems, in, "unknown node type '" + in.node.get("type") + "', skipped");
+                break;
+            default:
+                break;
+        }
+    }
+
+    // conditional, conditional_global and check_inventory go to "end" when they're false
+    private static void checkEnd(Instruction in, ScriptProgram program, List<Problem> problems) {
+        if (!in.node.containsKey("end") || in.end < 0) {
+            error(problems, in, in.op == OpCode.CHECK_INVENTORY ? "check_inventory without an end" : "conditional without an end");
+        } else if (in.end >= program.length() || program.at(in.end) == null) {
+            error(problems, in, "end " + in.end + " is not a node");
+        } else if (in.end == in.id + 1) {
+            warn(problems, in, "end is the next node, both branches do the same thing");
+        }
+    }
+
+    private static void checkAmount(Instruction in, List<Problem> problems) {
+        Object amount = in.node.get("amount");
+        double parsed = Double.NaN;
+        if (amount instanceof Number) {
+            parsed = ((Number) amount).doubleValue();
+        } else if (amount instanceof String) {
+            try {
+                parsed = Double.parseDouble((String) amount);
+            } catch (NumberFormatException ignored) {
+                // stays NaN
+            }
+        }
+        if (parsed != Math.rint(parsed) || parsed < 1 || parsed > Integer.MAX_VALUE) {
+            error(problems, in, "amount must be a whole number of at least 1, got " + describe(amount));
+        }
+    }
+
+    private static String describe(Object value) {
+        return value == null ? "nothing" : value instanceof String ? "'" + value + "'" : String.valueOf(value);
+    }
+
+    private static void error(List<Problem> problems, Instruction in, String message) {
+        problems.add(new Problem(in.id, true, message));
+    }
+
+    private static void warn(List<Problem> problems, Instruction in, String message) {
+        problems.add(new Problem(in.id, false, message));
+    }
+
+    /**
+     * @param node The node it's about, or -1 for the whole script.
+     */
+    public record Problem(long node, boolean error, String message) {
+        @Override
+        public String toString() {
+            return (node < 0 ? "" : "node " + node + ": ") + message;
+        }
+    }
+
+    public record Report(List<Problem> problems) {
+
+        public boolean hasErrors() {
+            return !problems.isEmpty() && problems.get(0).error();
+        }
+
+        public long errorCount() {
+            return problems.stream().filter(Problem::error).count();
+        }
+
+        /**
+         * Logs everything found, errors at error level and warnings at warn level.
+         *
+         * @param source Script name or file name, for the log.
+         */
+        public void print(String source) {
+            for (Problem problem : problems) {
+                if (problem.error()) {
+                    LOGGER.error("{}: {}", source, problem);
+                } else {
+                    LOGGER.warn("{}: {}", source, problem);
+                }
+            }
+        }
+    }
+}
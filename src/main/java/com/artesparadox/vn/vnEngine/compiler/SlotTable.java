@@ -0,0 +1,91 @@
+package com.artesparadox.vn.vnEngine.compiler;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Variable name -> slot number, so a variable store can be a few arrays instead of a HashMap.
+ *
+ * The compiler gives every variable a script names a slot up front and stores it in {@link Instruction#slot},
+ * so executing an instruction never hashes the name. Names that only show up at runtime (saves, engine
+ * bookkeeping) get a slot on first use. Slots are never taken back, so a slot stays valid for good.
+ */
+public final class SlotTable {
+
+    /**
+     * The one table for global variables, shared by every script: "money" is the same slot everywhere.
+     */
+    public static final SlotTable GLOBALS = new SlotTable();
+
+    /**
+     * Item ids ("minecraft:apple") -> slot, shared by every script and inventory, so counting an item is a lookup by int.
+     */
+    public static final SlotTable ITEMS = new SlotTable();
+
+    /**
+     * Local slots every script has, used by the engine itself.
+     */
+    public static final int UNLOCKED_EVENTS = 0;
+    public static final int CHECKPOINT = 1;
+
+    public static final int NONE = -1;
+
+    private final Map<String, Integer> slots = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[16];
+    private int count; // guarded by this
+
+    /**
+     * A fresh table for one script's local variables, with the engine's own slots already taken.
+     */
+    public static SlotTable locals() {
+        SlotTable table = new SlotTable();
+        table.slot("unlocked_events");
+        table.slot("checkpoint");
+        return table;
+    }
+
+    /**
+     * @return The slot for the name, taking a new one if it doesn't have one yet.
+     */
+    public int slot(String name) {
+        if (name == null) return NONE;
+        Integer slot = slots.get(name);
+        if (slot != null) return slot;
+        synchronized (this) {
+            slot = slots.get(name);
+            if (slot != null) return slot;
+            int next = count;
+            String[] current = names;
+            if (next == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            current[next] = name;
+            names = current;
+            count = next + 1;
+            slots.put(name, next);
+            return next;
+        }
+    }
+
+    /**
+     * @return The slot for the name, or {@link #NONE} if nothing ever used it.
+     */
+    public int lookup(String name) {
+        if (name == null) return NONE;
+        Integer slot = slots.get(name);
+        return slot == null ? NONE : slot;
+    }
+
+    /**
+     * @return The name of a slot, or null if it isn't taken.
+     */
+    public String nameOf(int slot) {
+        String[] current = names;
+        return slot >= 0 && slot < current.length ? current[slot] : null;
+    }
+
+    public int size() {
+        return slots.size();
+    }
+}
@@ -0,0 +1,167 @@
+package com.artesparadox.vn.vnEngine.controller;
+
+import com.artesparadox.vn.VisualNovelFramework;
+import com.artesparadox.vn.vnEngine.controller.modules.CommandRequestHandler;
+import com.artesparadox.vn.vnEngine.controller.modules.ForgeCommandRunner;
+import com.artesparadox.vn.vnEngine.dataclass.Const;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Script "command" actions, queued by the engines and run on the server thread once per tick.
+ *
+ * Engines never run commands themselves any more: they can be on any thread, and a script that loops over a
+ * command would otherwise run it as fast as the loop goes. Here each tick runs at most {@code maxPerTick}
+ * commands within {@code budgetNanos}, whatever is left waits for the next tick.
+ * A command that is already waiting for the same player isn't queued a second time.
+ */
+public class CommandDispatchQueue {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VisualNovelFramework.class);
+
+    private final int maxPerTick;
+    private final long budgetNanos;
+    private final int capacity;
+
+    private final Queue<Request> queue = new ConcurrentLinkedQueue<>();
+    private final Set<Request> waiting = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder dispatched = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+
+    /**
+     * @param maxPerTick   How many commands may run in one tick.
+     * @param budgetMicros How much of a tick commands may take together.
+     * @param capacity     How many commands may wait at once, anything beyond that is dropped.
+     */
+    public CommandDispatchQueue(int maxPerTick, long budgetMicros, int capacity) {
+        this.maxPerTick = maxPerTick;
+        this.budgetNanos = TimeUnit.MICROSECONDS.toNanos(budgetMicros);
+        this.capacity = capacity;
+    }
+
+    public CommandDispatchQueue() {
+        this(Const.COMMANDS_PER_TICK, Const.COMMAND_TICK_BUDGET_MICROS, Const.COMMAND_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Queues a command for a player's conversation. Safe from any thread, never blocks.
+     *
+     * @return false if the same command was already waiting, or the queue is full.
+     */
+    public boolean submit(UUID player, String command) {
+        if (command == null || command.isBlank()) return false;
+        submitted.increment();
+        Request request = new Request(player, command.trim(), System.nanoTime());
+        if (!waiting.add(request)) {
+            deduplicated.increment();
+            return false;
+        }
+        if (size.incrementAndGet() > capacity) {
+            size.decrementAndGet();
+            waiting.remove(request);
+            dropped.increment();
+            LOGGER.warn("Command queue full, dropping: {}", command);
+            return false;
+        }
+        queue.add(request);
+        return true;
+    }
+
+    /**
+     * Runs queued commands until the tick's count or time budget is used up. Server thread only.
+     *
+     * @return How many commands ran.
+     */
+    public int drain(MinecraftServer server) {
+        long deadline = System.nanoTime() + budgetNanos;
+        int ran = 0;
+        Request request;
+        while (ran < maxPerTick && (request = queue.poll()) != null) {
+            size.decrementAndGet();
+            // Out of the dedup set before running, so the script can queue it again right away
+            waiting.remove(request);
+            run(server, request);
+            ran++;
+            if (System.nanoTime() - deadline >= 0) break;
+        }
+        return ran;
+    }
+
+    private void run(MinecraftServer server, Request request) {
+        ServerPlayer player = server.getPlayerList().getPlayer(request.player());
+        if (player == null) {
+            // Logged out while it was waiting, their conversation is over anyway
+            dropped.increment();
+            return;
+        }
+        waitNanos.add(System.nanoTime() - request.queuedAt());
+        try {
+            CommandRequestHandler.handleCommandRequest(player, request.command());
+            dispatched.increment();
+        } catch (RuntimeException e) {
+            LOGGER.error("Command failed: /{}", request.command(), e);
+        }
+    }
+
+    /**
+     * Forgets everything still queued. For shutdown, the players are gone by then.
+     */
+    public void clear() {
+        int left = size.getAndSet(0);
+        queue.clear();
+        waiting.clear();
+        if (left > 0) {
+            LOGGER.info("Dropped {} queued command(s) on shutdown.", left);
+        }
+    }
+
+    public int pending() {
+        return size.get();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long ran = dispatched.sum();
+        stats.put("pending", pending());
+        stats.put("submitted", submitted.sum());
+        stats.put("deduplicated", deduplicated.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("dispatched", ran);
+        stats.put("avgQueueMicros", ran == 0 ? 0.0 : waitNanos.sum() / 1000.0 / ran);
+        stats.putAll(ForgeCommandRunner.stats());
+        return stats;
+    }
+
+    /**
+     * Equal when player and command are, the time only matters for the wait statistics.
+     */
+    private record Request(UUID player, String command, long queuedAt) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Request other && player.equals(other.player) && command.equals(other.command);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * player.hashCode() + command.hashCode();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.artesparadox.vn.vnEngine.controller;
+
+import com.artesparadox.vn.vnEngine.compiler.ScriptProgram;
+import com.artesparadox.vn.vnEngine.dataclass.Const;
+import com.artesparadox.vn.vnEngine.dataclass.Script;
+import com.artesparadox.vn.vnEngine.metrics.Metrics;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Finished engines, kept per player and script so talking to the same NPC again resets an engine instead of
+ * building a new one (buffers, locks, variable store, loading the save). Every engine of a script shares its
+ * compiled {@link ScriptProgram}, a reused engine only gets handed out while its program is still the script's.
+ *
+ * Only idle engines live here: {@link #acquire} takes one out, {@link #release} puts it back once nothing runs it anymore.
+ * The oldest go first once there are more than {@code maxIdle}, and anything idle longer than the TTL is dropped.
+ */
+public class EnginePool {
+
+    private static final LongAdder HITS = Metrics.counter("vn_engine_pool_total", "Engines handed out, reused or newly built", "result", "reused");
+    private static final LongAdder MISSES = Metrics.counter("vn_engine_pool_total", "Engines handed out, reused or newly built", "result", "built");
+    private static final LongAdder EVICTED = Metrics.counter("vn_engine_pool_evicted_total", "Idle engines dropped for age, count or a reloaded script");
+
+    private final int maxIdle;
+    private final long ttlNanos;
+
+    // Insertion order = release order, so the head is always the longest idle
+    private final LinkedHashMap<Key, Idle> idle = new LinkedHashMap<>();
+    // Per player, the start number of their latest conversation. Tells a pooled engine whether someone else saved since
+    private final Map<UUID, Long> lastStart = new HashMap<>();
+    // Start number of every engine handed out and not back yet
+    private final Map<VNEngine, Long> running = new IdentityHashMap<>();
+    private long starts;
+
+    public EnginePool(int maxIdle, long ttlSeconds) {
+        this.maxIdle = maxIdle;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        Metrics.gauge("vn_engine_pool_idle", "Finished engines waiting to be reused", this::idleCount);
+    }
+
+    public EnginePool() {
+        this(Const.ENGINE_POOL_MAX_IDLE, Const.ENGINE_POOL_IDLE_TTL_SECONDS);
+    }
+
+    /**
+     * A ready to run engine for the player and script, reset if one was pooled and built otherwise.
+     * Hand it back with {@link #release} once it finished.
+     */
+    public VNEngine acquire(UUID player, Script script, String entityType, String entityName, boolean day,
+                            InventoryView inventory,
+                            List<Map<String, Object>> globalSave, List<Map<String, Object>> localSave) {
+        ScriptProgram program = script.getProgram();
+        Idle pooled;
+        boolean keepProgress;
+        long start;
+        synchronized (this) {
+            long now = System.nanoTime();
+            evictExpired(now);
+            pooled = idle.remove(new Key(player, script.getId()));
+            Long latest = lastStart.get(player);
+            keepProgress = pooled != null && latest != null && latest == pooled.start();
+            start = ++starts;
+            lastStart.put(player, start);
+        }
+
+        VNEngine engine;
+        // Reset outside the lock, it may have to load the save
+        if (pooled != null && pooled.engine().program == program) {
+            engine = pooled.engine();
+            engine.reset(entityType, entityName, day, inventory, globalSave, localSave, keepProgress);
+            HITS.increment();
+        } else {
+            if (pooled != null) {
+                // The script was reloaded since, the old program goes with the engine
+                EVICTED.increment();
+            }
+            engine = new VNEngine(program, entityType, entityName, player.toString(), day, inventory, globalSave, localSave);
+            MISSES.increment();
+        }
+        synchronized (this) {
+            running.put(engine, start);
+        }
+        return engine;
+    }
+
+    /**
+     * Gives a finished engine back. If the player already has one pooled for the script, the older one is dropped.
+     */
+    public synchronized void release(UUID player, String scriptId, VNEngine engine) {
+        Key key = new Key(player, scriptId);
+        Long start = running.remove(engine);
+        // Remove first, put alone wouldn't move the key to the young end
+        Idle previous = idle.remove(key);
+        idle.put(key, new Idle(engine, start == null ? -1 : start, System.nanoTime()));
+        if (previous != null && previous.engine() != engine) {
+            EVICTED.increment();
+        }
+        while (idle.size() > maxIdle) {
+            Iterator<Idle> eldest = idle.values().iterator();
+            eldest.next();
+            eldest.remove();
+            EVICTED.increment();
+        }
+    }
+
+    private void evictExpired(long now) {
+        Iterator<Map.Entry<Key, Idle>> it = idle.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Idle> entry = it.next();
+            if (now - entry.getValue().since() < ttlNanos) break;
+            it.remove();
+            EVICTED.increment();
+        }
+        if (idle.isEmpty()) {
+            // Nothing pooled that could use it
+            lastStart.clear();
+        }
+    }
+
+    public synchronized int idleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Drops every pooled engine. Call this when the server stops.
+     */
+    public synchronized void clear() {
+        idle.clear();
+        lastStart.clear();
+        running.clear();
+    }
+
+    private record Key(UUID player, String scriptId) {}
+
+    // start: the player's conversation number this engine ran as
+    private record Idle(VNEngine engine, long start, long since) {}
+}
@@ -0,0 +1,110 @@
+package com.artesparadox.vn.vnEngine.controller;
+
+import java.util.Arrays;
+
+/**
+ * int -> int counts with open addressing (linear probing), so counting an item is a couple of array reads
+ * instead of boxing into a HashMap. Keys are slots, so never negative.
+ *
+ * A count that drops to 0 keeps its entry, an item that leaves and comes back doesn't probe for a new spot.
+ * Zeroes are only dropped when the table grows. Not thread-safe, {@link InventoryView} guards it.
+ */
+final class IntCountMap {
+
+    private static final int[] NONE = new int[0];
+
+    // Keys are stored +1 so 0 can mean an empty spot
+    private int[] keys;
+    private int[] counts;
+    private int mask;
+    private int used;
+
+    IntCountMap() {
+        this(16);
+    }
+
+    IntCountMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1;
+        this.keys = new int[capacity];
+        this.counts = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    int get(int key) {
+        int stored = key + 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == stored) return counts[i];
+            if (k == 0) return 0;
+        }
+    }
+
+    /**
+     * @return The new count.
+     */
+    int add(int key, int delta) {
+        int stored = key + 1;
+        int i = mix(key) & mask;
+        for (; ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == stored) return counts[i] += delta;
+            if (k == 0) break;
+        }
+        if (delta == 0) return 0;
+        keys[i] = stored;
+        counts[i] = delta;
+        // Keep it at most half full, probes stay short
+        if (++used * 2 > keys.length) grow();
+        return delta;
+    }
+
+    void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(counts, 0);
+        used = 0;
+    }
+
+    /**
+     * @return Every key with a count other than 0, as key, count, key, count...
+     */
+    int[] toPairs() {
+        int n = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0 && counts[i] != 0) n++;
+        }
+        if (n == 0) return NONE;
+        int[] pairs = new int[n * 2];
+        int p = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0 && counts[i] != 0) {
+                pairs[p++] = keys[i] - 1;
+                pairs[p++] = counts[i];
+            }
+        }
+        return pairs;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldCounts = counts;
+        int live = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0 && oldCounts[i] != 0) live++;
+        }
+        // Only double if the zeroes weren't what filled it up
+        int capacity = live * 4 > oldKeys.length ? oldKeys.length << 1 : oldKeys.length;
+        keys = new int[capacity];
+        counts = new int[capacity];
+        mask = capacity - 1;
+        used = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0 && oldCounts[i] != 0) add(oldKeys[i] - 1, oldCounts[i]);
+        }
+    }
+
+    // Slots are small and dense, spread them over the table
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -1,7 +1,332 @@
 package com.artesparadox.vn.vnEngine.controller;
 
+import com.artesparadox.vn.vnEngine.dataclass.Const;
+import com.artesparadox.vn.vnEngine.router.SimpleRouter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
 public class InteractionManager {
     // This is the part that connects client with server
     // So like Client -> Server(This Guy -> VN Engine)
     // I guess I'm gonna do something like, livedata? observer?
+    // (It's an observer: the engine calls publish() whenever it yields, and every browser tab of that player
+    //  that holds an /events connection gets the new DialogueState pushed as a Server-Sent Event.)
+
+    private final Map<UUID, Channel> channels = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService heartbeat;
+    private final int maxClientsPerPlayer;
+    // Versions are unique across all players, so a stale Last-Event-ID can never match someone else's snapshot
+    private final AtomicLong versions = new AtomicLong();
+
+    private final LongAdder fullFrames = new LongAdder();
+    private final LongAdder deltaFrames = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder framesCoalesced = new LongAdder();
+
+    /**
+     * @param heartbeatSeconds    How often idle connections get a comment line, keeps proxies from closing them
+     *                            and lets us notice clients that went away.
+     * @param maxClientsPerPlayer How many streams (tabs) one player may have open.
+     */
+    public InteractionManager(long heartbeatSeconds, int maxClientsPerPlayer) {
+        this.maxClientsPerPlayer = maxClientsPerPlayer;
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "vn-sse-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.heartbeat.scheduleAtFixedRate(this::pingAll, heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+    }
+
+    public InteractionManager() {
+        this(Const.SSE_HEARTBEAT_SECONDS, Const.SSE_MAX_CLIENTS_PER_PLAYER);
+    }
+
+    /**
+     * Called by the engine every time it yields to the player, and once when it finishes.
+     * Encodes the state once as a new version, no matter how many tabs are listening.
+     *
+     * @param player   Whose conversation this is.
+     * @param engine   The engine that yielded.
+     * @param finished true if the conversation is over.
+     */
+    public void publish(UUID player, VNEngine engine, boolean finished) {
+        if (finished) {
+            Channel channel = channels.get(player);
+            // A finished engine that was already replaced by a new conversation must not end the new one's stream
+            if (channel == null || channel.engine != engine) return;
+            channel.end(framesCoalesced);
+            channels.remove(player, channel);
+            return;
+        }
+
+        Channel channel = channels.computeIfAbsent(player, p -> new Channel());
+        channel.engine = engine;
+        channel.publish(StateSnapshot.of(versions.incrementAndGet(), engine.getNext(), channel.latest), framesCoalesced);
+    }
+
+    /**
+     * The player's current state for a plain GET, as a delta against {@code since} when we still have that version.
+     *
+     * @param since The version the client already has, or 0 for the full state.
+     * @return The JSON payload, or null if the player has no conversation.
+     */
+    public String stateSince(UUID player, long since) {
+        Channel channel = channels.get(player);
+        if (channel == null) return null;
+        StateSnapshot latest = channel.latest;
+        if (latest == null) return null;
+        return encode(channel, latest, since);
+    }
+
+    private String encode(Channel channel, StateSnapshot snapshot, long since) {
+        StateSnapshot base = since > 0 ? channel.find(since) : null;
+        if (base == null) {
+            // Never seen, or too old and already out of the history: full resync
+            fullFrames.increment();
+            return snapshot.full();
+        }
+        deltaFrames.increment();
+        return snapshot.deltaFrom(base);
+    }
+
+    /**
+     * Serves one Server-Sent Events stream. Blocks the calling (virtual) thread until the client disconnects,
+     * the conversation ends or the manager shuts down. Only call this for a player with a running conversation
+     * (the web server checks the session token first), it opens the player's channel if there isn't one yet.
+     *
+     * Every frame written is taken as acknowledged. When the browser reconnects it sends the last id it got
+     * as Last-Event-ID, and the stream picks up with a delta from there.
+     */
+    public void stream(UUID player, HttpExchange exchange) throws IOException {
+        Channel channel = channels.computeIfAbsent(player, p -> new Channel());
+        if (channel.clients.size() >= maxClientsPerPlayer) {
+            SimpleRouter.sendJson(exchange, 429, Collections.singletonMap("error", "Too many open streams for this player."));
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=UTF-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0); // chunked, open ended
+
+        Client client = new Client(parseVersion(exchange.getRequestHeaders().getFirst("Last-Event-ID")));
+        channel.clients.add(client);
+        StateSnapshot latest = channel.latest;
+        if (latest != null && latest.version != client.acked) {
+            client.offer(latest); // whatever is on screen right now, so a fresh tab doesn't start blank
+        }
+
+        try (OutputStream os = exchange.getResponseBody()) {
+            write(os, "retry: 2000\n\n");
+            while (true) {
+                Object next = client.take();
+                if (next == null) break;
+                if (next == Client.PING) {
+                    write(os, ": ping\n\n");
+                } else if (next == Client.END) {
+                    write(os, "event: end\ndata: {}\n\n");
+                    break;
+                } else {
+                    StateSnapshot snapshot = (StateSnapshot) next;
+                    if (snapshot.version == client.acked) continue;
+                    String payload = encode(channel, snapshot, client.acked);
+                    write(os, "id: " + snapshot.version + "\nevent: state\ndata: " + payload + "\n\n");
+                    client.acked = snapshot.version;
+                }
+            }
+        } catch (IOException e) {
+            // The browser went away, nothing to do
+        } finally {
+            channel.clients.remove(client);
+            if (channel.clients.isEmpty() && channel.latest == null) {
+                channels.remove(player, channel);
+            }
+        }
+    }
+
+    private void write(OutputStream os, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        os.write(bytes);
+        os.flush();
+        bytesSent.add(bytes.length);
+    }
+
+    public static long parseVersion(String value) {
+        if (value == null || value.isBlank()) return 0;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private void pingAll() {
+        for (Channel channel : channels.values()) {
+            for (Client client : channel.clients) {
+                client.ping();
+            }
+        }
+    }
+
+    public Map<String, Object> stats() {
+        int clients = 0;
+        for (Channel channel : channels.values()) {
+            clients += channel.clients.size();
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("players", channels.size());
+        stats.put("clients", clients);
+        stats.put("fullFrames", fullFrames.sum());
+        stats.put("deltaFrames", deltaFrames.sum());
+        stats.put("framesCoalesced", framesCoalesced.sum());
+        stats.put("bytesSent", bytesSent.sum());
+        return stats;
+    }
+
+    /**
+     * Closes every stream. Call this when the server stops.
+     */
+    public void shutdown() {
+        heartbeat.shutdownNow();
+        for (Channel channel : channels.values()) {
+            for (Client client : channel.clients) {
+                client.close();
+            }
+        }
+        channels.clear();
+    }
+
+    /**
+     * Everything listening to one player's conversation, plus the last few versions so clients
+     * a little behind still get a delta.
+     */
+    private static final class Channel {
+        final Set<Client> clients = ConcurrentHashMap.newKeySet();
+        final StateSnapshot[] history = new StateSnapshot[Const.STATE_HISTORY_SIZE];
+        int next;
+        volatile StateSnapshot latest;
+        volatile VNEngine engine;
+
+        void publish(StateSnapshot snapshot, LongAdder coalesced) {
+            synchronized (this) {
+                history[next] = snapshot;
+                next = (next + 1) % history.length;
+                latest = snapshot;
+            }
+            for (Client client : clients) {
+                if (client.offer(snapshot)) coalesced.increment();
+            }
+        }
+
+        synchronized StateSnapshot find(long version) {
+            for (StateSnapshot snapshot : history) {
+                if (snapshot != null && snapshot.version == version) return snapshot;
+            }
+            return null;
+        }
+
+        void end(LongAdder coalesced) {
+            for (Client client : clients) {
+                if (client.offer(Client.END)) coalesced.increment();
+            }
+        }
+    }
+
+    /**
+     * One open stream. Holds at most one thing that hasn't been written yet: if the browser can't keep up,
+     * the older snapshot is simply replaced and the next write is a delta from whatever it got last,
+     * so a slow client costs one slot, not a queue.
+     */
+    private static final class Client {
+        static final Object PING = new Object();
+        static final Object END = new Object();
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        private Object pending;
+        private boolean pingPending;
+        private boolean closed;
+        // Last version this client has, only touched by the stream's own thread
+        long acked;
+
+        Client(long acked) {
+            this.acked = acked;
+        }
+
+        /**
+         * @return true if something unsent got replaced.
+         */
+        boolean offer(Object item) {
+            lock.lock();
+            try {
+                // Never drop an END, the stream has to see it
+                if (pending == END) return true;
+                boolean replaced = pending != null;
+                pending = item;
+                changed.signal();
+                return replaced;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void ping() {
+            lock.lock();
+            try {
+                pingPending = true;
+                changed.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void close() {
+            lock.lock();
+            try {
+                closed = true;
+                changed.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return A {@link StateSnapshot}, {@link #END}, {@link #PING}, or null once closed.
+         */
+        Object take() {
+            lock.lock();
+            try {
+                while (pending == null && !pingPending && !closed) {
+                    changed.awaitUninterruptibly();
+                }
+                if (closed) return null;
+                if (pending != null) {
+                    Object item = pending;
+                    pending = null;
+                    pingPending = false; // a frame is as good as a ping
+                    return item;
+                }
+                pingPending = false;
+                return PING;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
 }
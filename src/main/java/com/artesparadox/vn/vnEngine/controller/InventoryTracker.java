@@ -0,0 +1,218 @@
+package com.artesparadox.vn.vnEngine.controller;
+
+import com.artesparadox.vn.VisualNovelFramework;
+import com.artesparadox.vn.vnEngine.compiler.SlotTable;
+import com.artesparadox.vn.vnEngine.dataclass.Const;
+import com.artesparadox.vn.vnEngine.metrics.Metrics;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.entity.player.Inventory;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
+import net.neoforged.bus.api.SubscribeEvent;
+import net.neoforged.neoforge.event.entity.item.ItemTossEvent;
+import net.neoforged.neoforge.event.entity.living.LivingEntityUseItemEvent;
+import net.neoforged.neoforge.event.entity.player.ItemEntityPickupEvent;
+import net.neoforged.neoforge.event.entity.player.PlayerContainerEvent;
+import net.neoforged.neoforge.event.entity.player.PlayerEvent;
+import net.neoforged.neoforge.event.tick.ServerTickEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps every player's {@link InventoryView} in sync with their real inventory and hands out what scripts gave them.
+ *
+ * Inventory events (picking up, tossing, crafting, closing a container, finishing eating...) mark the player dirty,
+ * and the next tick compares their inventory slot by slot against the view. Nothing reports /give, /clear or
+ * other mods moving items, so every {@link Const#INVENTORY_RESYNC_TICKS} ticks every view is compared anyway.
+ * Comparing is cheap: a stack whose item and count didn't change costs two comparisons, and only a changed
+ * slot touches the counts.
+ *
+ * Register it on {@code NeoForge.EVENT_BUS}. Everything except {@link #view} runs on the server thread.
+ */
+public class InventoryTracker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VisualNovelFramework.class);
+
+    private static final LongAdder SLOT_CHANGES = Metrics.counter("vn_inventory_slot_changes_total",
+            "Inventory slots that changed between two syncs, over all players");
+    private static final LongAdder GRANTS = Metrics.counter("vn_inventory_grants_total",
+            "Batched give_item grants handed out, one per item per tick");
+
+    private final Map<UUID, Tracked> players = new ConcurrentHashMap<>();
+    // Item -> its slot in SlotTable.ITEMS, so a changed stack doesn't need a registry lookup. Server thread only
+    private final Map<Item, Integer> itemSlots = new IdentityHashMap<>();
+    private final int resyncTicks;
+    private int ticks;
+
+    public InventoryTracker(int resyncTicks) {
+        this.resyncTicks = resyncTicks;
+        Metrics.gauge("vn_inventory_views", "Players whose inventory is kept for scripts", players::size);
+    }
+
+    public InventoryTracker() {
+        this(Const.INVENTORY_RESYNC_TICKS);
+    }
+
+    /**
+     * The player's inventory as scripts see it, the same one for all of their conversations until they log out.
+     * A new view fills in on the next tick. Any thread.
+     */
+    public InventoryView view(UUID player) {
+        return players.computeIfAbsent(player, id -> new Tracked(new InventoryView())).view;
+    }
+
+    @SubscribeEvent
+    public void onServerTick(ServerTickEvent.Post event) {
+        boolean resync = ++ticks >= resyncTicks;
+        if (resync) ticks = 0;
+        for (Map.Entry<UUID, Tracked> entry : players.entrySet()) {
+            Tracked tracked = entry.getValue();
+            int[] grants = tracked.view.pendingGrants();
+            if (!resync && !tracked.dirty && grants.length == 0) continue;
+
+            ServerPlayer player = event.getServer().getPlayerList().getPlayer(entry.getKey());
+            // Not online (yet), grants wait until they are
+            if (player == null) continue;
+
+            if (grants.length > 0) {
+                give(player, grants);
+            }
+            sync(player.getInventory(), tracked, grants.length > 0 ? grants : null);
+        }
+    }
+
+    private void give(ServerPlayer player, int[] grants) {
+        for (int i = 0; i < grants.length; i += 2) {
+            String id = SlotTable.ITEMS.nameOf(grants[i]);
+            ResourceLocation key = id == null ? null : ResourceLocation.tryParse(id);
+            Item item = key == null ? Items.AIR : BuiltInRegistries.ITEM.get(key);
+            if (item == Items.AIR) {
+                LOGGER.warn("Can't give unknown item '{}' to {}", id, player.getScoreboardName());
+                continue;
+            }
+            int left = grants[i + 1];
+            int stackSize = new ItemStack(item).getMaxStackSize();
+            while (left > 0) {
+                ItemStack stack = new ItemStack(item, Math.min(left, stackSize));
+                left -= stack.getCount();
+                // Whatever doesn't fit lands at their feet
+                if (!player.getInventory().add(stack) && !stack.isEmpty()) {
+                    player.drop(stack, false);
+                }
+            }
+            GRANTS.increment();
+        }
+    }
+
+    private void sync(Inventory inventory, Tracked tracked, int[] delivered) {
+        int size = inventory.getContainerSize();
+        if (tracked.items.length != size) {
+            tracked.stacks = new Item[size];
+            tracked.items = new int[size];
+            tracked.amounts = new int[size];
+        }
+        for (int i = 0; i < size; i++) {
+            ItemStack stack = inventory.getItem(i);
+            Item item = stack.isEmpty() ? null : stack.getItem();
+            if (item != tracked.stacks[i]) {
+                tracked.stacks[i] = item;
+                tracked.items[i] = item == null ? SlotTable.NONE : slotOf(item);
+            }
+            tracked.amounts[i] = stack.getCount();
+        }
+        SLOT_CHANGES.add(tracked.view.update(tracked.items, tracked.amounts, delivered));
+        tracked.dirty = false;
+    }
+
+    private int slotOf(Item item) {
+        Integer slot = itemSlots.get(item);
+        if (slot == null) {
+            slot = SlotTable.ITEMS.slot(BuiltInRegistries.ITEM.getKey(item).toString());
+            itemSlots.put(item, slot);
+        }
+        return slot;
+    }
+
+    private void markDirty(Player player) {
+        if (player instanceof ServerPlayer) {
+            Tracked tracked = players.get(player.getUUID());
+            if (tracked != null) tracked.dirty = true;
+        }
+    }
+
+    @SubscribeEvent
+    public void onPickup(ItemEntityPickupEvent.Post event) {
+        markDirty(event.getPlayer());
+    }
+
+    @SubscribeEvent
+    public void onToss(ItemTossEvent event) {
+        markDirty(event.getPlayer());
+    }
+
+    @SubscribeEvent
+    public void onCrafted(PlayerEvent.ItemCraftedEvent event) {
+        markDirty(event.getEntity());
+    }
+
+    @SubscribeEvent
+    public void onSmelted(PlayerEvent.ItemSmeltedEvent event) {
+        markDirty(event.getEntity());
+    }
+
+    @SubscribeEvent
+    public void onContainerClose(PlayerContainerEvent.Close event) {
+        markDirty(event.getEntity());
+    }
+
+    @SubscribeEvent
+    public void onItemUsed(LivingEntityUseItemEvent.Finish event) {
+        if (event.getEntity() instanceof Player player) markDirty(player);
+    }
+
+    @SubscribeEvent
+    public void onRespawn(PlayerEvent.PlayerRespawnEvent event) {
+        markDirty(event.getEntity());
+    }
+
+    @SubscribeEvent
+    public void onLogout(PlayerEvent.PlayerLoggedOutEvent event) {
+        Tracked tracked = players.remove(event.getEntity().getUUID());
+        // Still in the world at this point, hand out what a script gave them this tick
+        if (tracked != null && event.getEntity() instanceof ServerPlayer player) {
+            int[] grants = tracked.view.pendingGrants();
+            if (grants.length > 0) give(player, grants);
+        }
+    }
+
+    /**
+     * Forgets every view. Call this when the server stops.
+     */
+    public void shutdown() {
+        players.clear();
+        itemSlots.clear();
+    }
+
+    private static final class Tracked {
+        final InventoryView view;
+        // Server thread only. Starts dirty so a new view fills in on the next tick
+        boolean dirty = true;
+        Item[] stacks = new Item[0];
+        int[] items = new int[0];
+        int[] amounts = new int[0];
+
+        Tracked(InventoryView view) {
+            this.view = view;
+        }
+    }
+}
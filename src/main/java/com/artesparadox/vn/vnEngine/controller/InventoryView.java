@@ -0,0 +1,133 @@
+package com.artesparadox.vn.vnEngine.controller;
+
+import com.artesparadox.vn.vnEngine.compiler.SlotTable;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * What scripts see of a player's inventory: item slot ({@link SlotTable#ITEMS}) -> how many the player has.
+ *
+ * The {@link InventoryTracker} keeps it up to date on the server thread. It remembers what was in every inventory slot
+ * and only touches the counts for slots that changed, so an update costs a comparison per slot and a check_inventory
+ * or {@code item("...")} costs a lookup, never a walk over the player's items.
+ *
+ * Items given by give_item are queued here and handed out by the tracker once per tick, several grants of the same
+ * item in one go. Counts include what's queued, so a script sees an item right after giving it.
+ * Reading is safe from any thread (optimistic read, like {@link VariableStore}).
+ */
+public final class InventoryView {
+
+    private final StampedLock lock = new StampedLock();
+    // Item slot -> count, over the whole inventory
+    private final IntCountMap counts = new IntCountMap();
+    // Item slot -> amount given by scripts and not handed out yet
+    private final IntCountMap pending = new IntCountMap();
+    // What each inventory slot held at the last update, SlotTable.NONE for empty
+    private int[] slotItems = new int[0];
+    private int[] slotCounts = new int[0];
+
+    /**
+     * @param item Slot of the item in {@link SlotTable#ITEMS}.
+     * @return How many the player has, plus whatever scripts gave that isn't handed out yet.
+     */
+    public int count(int item) {
+        if (item < 0) return 0;
+        long stamp = lock.tryOptimisticRead();
+        int count;
+        try {
+            count = counts.get(item) + pending.get(item);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            // Saw the tables halfway through growing, the validate below fails anyway
+            count = 0;
+        }
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                count = counts.get(item) + pending.get(item);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param item The item id, e.g. "minecraft:apple".
+     */
+    public int count(String item) {
+        return count(SlotTable.ITEMS.lookup(item));
+    }
+
+    /**
+     * Queues items for the player. Any thread, the tracker hands them out on the next tick.
+     *
+     * @param item Slot of the item in {@link SlotTable#ITEMS}.
+     */
+    public void giveItemToPlayer(int item, int amount) {
+        if (item < 0 || amount <= 0) return;
+        long stamp = lock.writeLock();
+        try {
+            pending.add(item, amount);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void giveItemToPlayer(String item, int amount) {
+        giveItemToPlayer(SlotTable.ITEMS.slot(item), amount);
+    }
+
+    /**
+     * @return The queued grants as item, amount, item, amount... Empty if there are none.
+     */
+    int[] pendingGrants() {
+        long stamp = lock.readLock();
+        try {
+            return pending.toPairs();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Takes in the inventory as it is now, and drops the grants that were handed out to get there.
+     * Both at once, so a reader never sees a granted item twice or not at all. Server thread only.
+     *
+     * @param items     Item slot in every inventory slot, {@link SlotTable#NONE} for empty.
+     * @param amounts   Stack size in every inventory slot.
+     * @param delivered What {@link #pendingGrants()} returned and was handed out since, or null.
+     * @return How many inventory slots changed.
+     */
+    int update(int[] items, int[] amounts, int[] delivered) {
+        long stamp = lock.writeLock();
+        try {
+            if (slotItems.length != items.length) {
+                // First update, or the inventory changed size: start over
+                counts.clear();
+                slotItems = new int[items.length];
+                slotCounts = new int[items.length];
+                Arrays.fill(slotItems, SlotTable.NONE);
+            }
+            int changed = 0;
+            for (int i = 0; i < items.length; i++) {
+                int item = items[i];
+                int amount = item == SlotTable.NONE ? 0 : amounts[i];
+                if (slotItems[i] == item && slotCounts[i] == amount) continue;
+                if (slotItems[i] != SlotTable.NONE) counts.add(slotItems[i], -slotCounts[i]);
+                if (item != SlotTable.NONE) counts.add(item, amount);
+                slotItems[i] = item;
+                slotCounts[i] = amount;
+                changed++;
+            }
+            if (delivered != null) {
+                for (int i = 0; i < delivered.length; i += 2) {
+                    pending.add(delivered[i], -delivered[i + 1]);
+                }
+            }
+            return changed;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package com.artesparadox.vn.vnEngine.controller;
+
+import com.artesparadox.vn.VisualNovelFramework;
+import com.artesparadox.vn.vnEngine.dataclass.Const;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.level.storage.LevelResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the players' script variables on disk, under world/visualnovelframework/saves.
+ *
+ * Nothing here ever touches the disk on the thread that runs a conversation:
+ * <ul>
+ *   <li>{@link #loadProgress(VNEngine)} reads from an in-memory index that is filled once when the server starts.</li>
+ *   <li>{@link #saveProgress(VNEngine)} takes a copy-on-write snapshot of the engine's variables and hands it over.</li>
+ *   <li>A single writer thread flushes whatever changed every {@link Const#SAVE_FLUSH_INTERVAL_MS} in one batch.</li>
+ * </ul>
+ *
+ * On disk there are two files. {@code progress.log} is an append-only log: every record is the full variable set
+ * for one key, one line each as {@code <crc32> <json>}, so replaying it is "last one wins" and a line torn by a crash
+ * fails its checksum and is dropped. A batch is one write and one fsync. Once the log grows past
+ * {@link Const#SAVE_COMPACT_BYTES} the whole index goes to {@code progress.dat} (temp file, fsync, atomic rename)
+ * and the log starts over. A crash between the two just means the log gets replayed over a snapshot that already
+ * has it, which changes nothing.
+ */
+public class SaveHandler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VisualNovelFramework.class);
+
+    private static final String LOG_FILE = "progress.log";
+    private static final String SNAPSHOT_FILE = "progress.dat";
+
+    /**
+     * Key of the global variables record. Player keys always contain a '/', so it can't clash.
+     */
+    private static final String GLOBALS_KEY = "globals";
+
+    private static final Gson GSON = new Gson();
+    private static final Type VARIABLES_TYPE = new TypeToken<Map<String, Object>>() {}.getType();
+
+    // The running handler, null before the server starts (engines then just don't load or save anything)
+    private static volatile SaveHandler instance;
+
+    private final Path directory;
+    private final Path logFile;
+    private final Path snapshotFile;
+
+    // What loadProgress reads: key -> every variable of the latest save, immutable maps
+    private final Map<String, Map<String, Object>> index = new ConcurrentHashMap<>();
+    // Handed over by the engines, not written yet. Newer snapshots simply replace older ones.
+    private final Map<String, VariableStore.Snapshot> pending = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "VN Save Writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Only touched by the writer thread
+    private FileChannel log;
+    private long savedGlobalsVersion = -1;
+    private final Set<String> failed = new HashSet<>();
+    private boolean torn; // the log may end in half a line, start the next batch on a fresh one
+
+    private SaveHandler(Path directory) {
+        this.directory = directory;
+        this.logFile = directory.resolve(LOG_FILE);
+        this.snapshotFile = directory.resolve(SNAPSHOT_FILE);
+    }
+
+    /**
+     * Reads the saves of the world and starts the background writer. Call once when the server starts,
+     * before any conversation can begin. Loading happens right here, it's one sequential read of two files.
+     *
+     * @param server The running server, used to find the world folder.
+     * @return The handler, also the one the static methods use from now on.
+     */
+    public static SaveHandler open(MinecraftServer server) {
+        return open(server.getWorldPath(LevelResource.ROOT).resolve(Paths.get(Const.FRAMEWORK_ID, Const.SAVES_SUBDIR)));
+    }
+
+    /**
+     * Same as {@link #open(MinecraftServer)} with the saves folder given directly, for tests.
+     */
+    static SaveHandler open(Path directory) {
+        SaveHandler handler = new SaveHandler(directory);
+        handler.load();
+        instance = handler;
+        return handler;
+    }
+
+    /**
+     * Fills an engine's variables from the save of its player and character, and the global variables
+     * if this is the first conversation since the server started.
+     * Never blocks on disk, whatever isn't in memory by now doesn't exist.
+     * Engines without a save get the legacy {@code localSave}/{@code globalSave} maps they were created with, if any.
+     */
+    public static void loadProgress(VNEngine vn) {
+        SaveHandler handler = instance;
+        Map<String, Object> saved = handler == null ? null : handler.lookup(keyOf(vn));
+        if (saved != null) {
+            vn.localVariables.load(saved);
+        } else if (vn.localSave != null) {
+            for (Map<String, Object> values : vn.localSave) {
+                vn.localVariables.load(values);
+            }
+        }
+
+        // Globals are read once in open(), the legacy list only counts when nothing was saved yet
+        if ((handler == null || handler.index.get(GLOBALS_KEY) == null) && vn.globalSave != null) {
+            for (Map<String, Object> values : vn.globalSave) {
+                for (Map.Entry<String, Object> entry : values.entrySet()) {
+                    if (vn.globalVariables.get(entry.getKey()) == null) {
+                        vn.globalVariables.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Queues the engine's variables for saving. Cheap enough for a conversation step: takes a copy-on-write
+     * snapshot and puts it in a map, the writer thread does the rest.
+     */
+    public static void saveProgress(VNEngine vn) {
+        SaveHandler handler = instance;
+        if (handler == null) return;
+        handler.pending.put(keyOf(vn), vn.localVariables.snapshot());
+    }
+
+    /**
+     * One save per player and the character they talk to.
+     */
+    private static String keyOf(VNEngine vn) {
+        return vn.uid + "/" + vn.entityType + "/" + vn.entityName;
+    }
+
+    private Map<String, Object> lookup(String key) {
+        // Not flushed yet still counts, the player may start talking again before the writer gets to it
+        VariableStore.Snapshot snapshot = pending.get(key);
+        if (snapshot != null) return snapshot.toMap();
+        return index.get(key);
+    }
+
+    // --- Writer thread ---
+
+    private void load() {
+        long start = System.nanoTime();
+        try {
+            Files.createDirectories(directory);
+            int fromSnapshot = replay(snapshotFile);
+            int fromLog = replay(logFile);
+            log = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            log.position(log.size()); // Only the writer thread writes, so this is as good as APPEND
+            torn = endsTorn(log);
+            LOGGER.info("Loaded {} save(s) from {} ({} snapshot + {} log records, {} ms)", index.size(), directory,
+                    fromSnapshot, fromLog, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IOException e) {
+            LOGGER.error("Could not open saves at {}, progress will not be kept", directory, e);
+        }
+
+        // GLOBALS outlives the server, in singleplayer the previous world's globals are still in there.
+        // No conversation runs yet, so it can be emptied, and the version read below is what this world's log matches.
+        VariableStore.GLOBALS.clear();
+        Map<String, Object> globals = index.get(GLOBALS_KEY);
+        if (globals != null) {
+            VariableStore.GLOBALS.load(globals);
+        }
+        savedGlobalsVersion = VariableStore.GLOBALS.version();
+
+        long interval = Const.SAVE_FLUSH_INTERVAL_MS;
+        writer.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reads one save file into the index.
+     *
+     * @return How many records were applied.
+     */
+    private int replay(Path file) throws IOException {
+        int applied = 0;
+        int lineNumber = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty()) continue;
+                if (!apply(line)) {
+                    // Only the last line can be torn by a crash, anything else is worth shouting about
+                    LOGGER.warn("Skipping damaged record {}:{}", file.getFileName(), lineNumber);
+                    continue;
+                }
+                applied++;
+            }
+        } catch (NoSuchFileException e) {
+            // Fresh world
+        }
+        return applied;
+    }
+
+    private static boolean endsTorn(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size == 0) return false;
+        ByteBuffer last = ByteBuffer.allocate(1);
+        channel.read(last, size - 1);
+        return last.get(0) != '\n';
+    }
+
+    private boolean apply(String line) {
+        int space = line.indexOf(' ');
+        if (space <= 0) return false;
+        String json = line.substring(space + 1);
+        try {
+            if (Long.parseLong(line.substring(0, space), 16) != crc(json)) return false;
+            JsonObject record = JsonParser.parseString(json).getAsJsonObject();
+            String key = record.get("key").getAsString();
+            Map<String, Object> vars = GSON.fromJson(record.get("vars"), VARIABLES_TYPE);
+            index.put(key, vars == null ? Map.of() : Collections.unmodifiableMap(vars));
+            return true;
+        } catch (NumberFormatException | JsonParseException | IllegalStateException | NullPointerException e) {
+            return false;
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            LOGGER.error("Saving progress failed", e);
+        }
+    }
+
+    /**
+     * Writes everything that changed since the last flush as one batch, then compacts if the log got big.
+     */
+    private void flush() {
+        if (log == null) return;
+
+        Map<String, Map<String, Object>> batch = new LinkedHashMap<>();
+        for (Map.Entry<String, VariableStore.Snapshot> entry : pending.entrySet()) {
+            Map<String, Object> vars = entry.getValue().toMap();
+            // Index first, then let go of the snapshot, so loadProgress always finds one of the two
+            index.put(entry.getKey(), vars);
+            pending.remove(entry.getKey(), entry.getValue());
+            batch.put(entry.getKey(), vars);
+        }
+
+        long globalsVersion = VariableStore.GLOBALS.version();
+        if (globalsVersion != savedGlobalsVersion) {
+            Map<String, Object> globals = VariableStore.GLOBALS.snapshot().toMap();
+            index.put(GLOBALS_KEY, globals);
+            batch.put(GLOBALS_KEY, globals);
+            savedGlobalsVersion = globalsVersion;
+        }
+
+        // Whatever didn't make it to disk last time, in its newest version
+        for (String key : failed) {
+            if (!batch.containsKey(key) && index.containsKey(key)) {
+                batch.put(key, index.get(key));
+            }
+        }
+        if (batch.isEmpty()) return;
+
+        StringBuilder out = new StringBuilder();
+        if (torn) out.append('\n');
+        for (Map.Entry<String, Map<String, Object>> entry : batch.entrySet()) {
+            appendRecord(out, entry.getKey(), entry.getValue());
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(out.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                log.write(buffer);
+            }
+            log.force(false); // One fsync for the whole batch
+            failed.clear();
+            torn = false;
+        } catch (IOException e) {
+            failed.addAll(batch.keySet());
+            torn = true;
+            LOGGER.warn("Could not write {} save(s), retrying next flush", batch.size(), e);
+            return;
+        }
+
+        try {
+            if (log.size() > Const.SAVE_COMPACT_BYTES) {
+                compact();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not compact saves, the log keeps growing", e);
+        }
+    }
+
+    /**
+     * Writes the whole index as the new snapshot and empties the log.
+     */
+    private void compact() throws IOException {
+        long start = System.nanoTime();
+        Path temp = snapshotFile.resolveSibling(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             Writer out = Channels.newWriter(channel, StandardCharsets.UTF_8)) {
+            StringBuilder line = new StringBuilder();
+            for (Map.Entry<String, Map<String, Object>> entry : index.entrySet()) {
+                line.setLength(0);
+                appendRecord(line, entry.getKey(), entry.getValue());
+                out.append(line);
+            }
+            out.flush();
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+        // The snapshot has everything now, the log can start over
+        log.truncate(0);
+        log.force(true);
+        torn = false;
+        LOGGER.info("Compacted {} save(s) in {} ms", index.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private static void appendRecord(StringBuilder out, String key, Map<String, Object> vars) {
+        JsonObject record = new JsonObject();
+        record.addProperty("key", key);
+        record.add("vars", GSON.toJsonTree(vars, VARIABLES_TYPE));
+        String json = record.toString(); // Never has a newline in it, strings are escaped
+        out.append(Long.toHexString(crc(json))).append(' ').append(json).append('\n');
+    }
+
+    private static long crc(String json) {
+        CRC32 crc = new CRC32();
+        crc.update(json.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    /**
+     * @return How many saves are known and how many are waiting for the writer.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("saves", index.size());
+        stats.put("pending", pending.size());
+        try {
+            stats.put("logBytes", Files.size(logFile));
+        } catch (IOException e) {
+            stats.put("logBytes", -1L);
+        }
+        return stats;
+    }
+
+    /**
+     * Writes out everything that is still pending, compacts, and stops the writer.
+     * Call when the server stops, after the conversations have been stopped.
+     */
+    public void close() {
+        if (instance == this) {
+            instance = null;
+        }
+        writer.execute(() -> {
+            flushQuietly();
+            try {
+                if (log != null) {
+                    compact();
+                    log.close();
+                }
+            } catch (IOException e) {
+                LOGGER.error("Could not compact saves on shutdown", e);
+            }
+        });
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                LOGGER.warn("Saves did not finish writing in time.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
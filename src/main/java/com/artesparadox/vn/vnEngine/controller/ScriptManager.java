@@ -1,32 +1,95 @@
 // Suggested package location
 package com.artesparadox.vn.vnEngine.controller;
 
+import com.artesparadox.vn.VisualNovelFramework;
+import com.artesparadox.vn.vnEngine.compiler.ScriptCache;
 import com.artesparadox.vn.vnEngine.dataclass.Const;
 import com.artesparadox.vn.vnEngine.dataclass.Script;
-import com.google.gson.Gson;
+import com.artesparadox.vn.vnEngine.metrics.Metrics;
 import com.google.gson.JsonSyntaxException;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.world.level.storage.LevelResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Manages multiple scripts by loading them from a directory within the Minecraft world save.
  * Identifies and stores scripts by their unique UUID.
+ *
+ * Everything a reader needs (scripts by UUID, the trigger index, per-file bookkeeping) lives in one
+ * immutable {@link Snapshot}. Reloads build a complete new snapshot off to the side and swap it in with
+ * a single volatile write, so there is never a moment where scripts are missing.
  */
 public class ScriptManager {
 
-    private static final Gson GSON = new Gson();
+    private static final Logger LOGGER = LoggerFactory.getLogger(VisualNovelFramework.class);
+
+    /**
+     * Files at least this big keep their FSM on disk until a conversation touches them.
+     * They're still validated right after loading, in the background, see {@link #validateInBackground()}.
+     */
+    private static final long LAZY_THRESHOLD_BYTES = 256 * 1024;
+
+    /**
+     * Upper bound on parser threads for a full reload. Parsing is CPU bound, no point going wider.
+     */
+    private static final int MAX_LOAD_THREADS = 8;
+
+    /**
+     * How long the watcher waits for more events after the first one, so an editor's
+     * save-as-temp-then-rename dance turns into one reload.
+     */
+    private static final long WATCH_DEBOUNCE_MS = 250;
+
     private final Path scriptDirectory;
-    private final Map<String, Script> scripts = new ConcurrentHashMap<>(); // Key = UUID
+    private final Path cacheFile;
+    // The cache the current scripts were loaded from, cached scripts still decode out of it
+    private volatile ScriptCache cache;
+    private final Object reloadLock = new Object();
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    private WatchService watchService;
+    private Thread watchThread;
+
+    // Validating lazy and cached scripts after a load, one at a time
+    private final ExecutorService validator = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "VN Script Validator");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Cache writes happen off to the side, one at a time
+    private final ExecutorService cacheWriter = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "VN Script Cache Writer");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     /**
      * Initializes the ScriptManager.
@@ -38,64 +101,377 @@ public class ScriptManager {
     public ScriptManager(MinecraftServer server) {
         // Assuming you add a SCRIPTS_SUBDIR constant to your Const class
         // e.g., public static final String SCRIPTS_SUBDIR = "vn_scripts";
-        Path frameworkPath = Paths.get(Const.FRAMEWORK_ID, Const.SCRIPTS_SUBDIR);
-        this.scriptDirectory = server.getWorldPath(LevelResource.ROOT).resolve(frameworkPath);
+        this(server.getWorldPath(LevelResource.ROOT).resolve(Paths.get(Const.FRAMEWORK_ID, Const.SCRIPTS_SUBDIR)));
+    }
+
+    /**
+     * Initializes the ScriptManager for any script directory, no server needed (tools, benchmarks).
+     * The binary cache goes next to the directory, same as in a world.
+     *
+     * @param scriptDirectory Where the .json scripts are.
+     */
+    public ScriptManager(Path scriptDirectory) {
+        this(scriptDirectory, scriptDirectory.resolveSibling(Const.SCRIPT_CACHE_FILE));
+    }
+
+    /**
+     * @param scriptDirectory Where the .json scripts are.
+     * @param cacheFile       Where the binary script cache is read from and written to.
+     */
+    public ScriptManager(Path scriptDirectory, Path cacheFile) {
+        this.scriptDirectory = scriptDirectory;
+        this.cacheFile = cacheFile;
 
         try {
             Files.createDirectories(this.scriptDirectory);
-            System.out.println(Const.LOG_PREFIX + " Script directory ensured at: " + this.scriptDirectory.toAbsolutePath());
+            LOGGER.info("Script directory ensured at: {}", this.scriptDirectory.toAbsolutePath());
         } catch (IOException e) {
-            System.err.println(Const.LOG_PREFIX + " [!] FATAL: Could not create script directory: " + this.scriptDirectory);
-            e.printStackTrace();
+            LOGGER.error("FATAL: Could not create script directory: {}", this.scriptDirectory, e);
         }
     }
 
     /**
      * Scans the script directory for .json files, loads them, and populates the script map.
      * This method can be called to reload all scripts.
+     * Files are parsed in parallel on a small bounded pool. Files whose modification time hasn't changed
+     * since the last load are reused as-is. The old scripts stay visible until the new set is complete.
+     * Files whose hash matches an entry in the binary script cache are taken from the cache instead of JSON.
      */
     public void loadScripts() {
-        this.scripts.clear();
-        System.out.println(Const.LOG_PREFIX + " Starting to load scripts from " + this.scriptDirectory);
+        LOGGER.info("Starting to load scripts from {}", this.scriptDirectory);
 
         if (!Files.isDirectory(this.scriptDirectory)) {
-            System.err.println(Const.LOG_PREFIX + " [!] Script directory does not exist or is not a directory.");
+            LOGGER.error("Script directory does not exist or is not a directory.");
             return;
         }
 
+        List<Path> entries = new ArrayList<>();
         try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.scriptDirectory, "*.json")) {
             for (Path entry : stream) {
-                try {
-                    String jsonContent = Files.readString(entry);
-                    Script script = GSON.fromJson(jsonContent, Script.class);
+                entries.add(entry);
+            }
+        } catch (IOException e) {
+            LOGGER.error("Error reading script directory", e);
+            return;
+        }
 
-                    // Post-load initialization is crucial to set defaults and UUID
-                    script.postLoad(entry.getFileName().toString());
+        synchronized (this.reloadLock) {
+            long start = System.nanoTime();
+            Map<Path, LoadedFile> previous = this.snapshot.files();
+            Map<Path, LoadedFile> files = new HashMap<>();
+            ScriptCache cache = ScriptCache.open(this.cacheFile);
+            LoadStats stats = new LoadStats();
 
-                    if (script.getId() == null || script.getId().isEmpty()) {
-                        System.err.println("[!] Failed to load " + entry.getFileName() + ": Script has no valid UUID after initialization.");
-                        continue;
+            int threads = Math.max(1, Math.min(Math.min(Runtime.getRuntime().availableProcessors(), MAX_LOAD_THREADS), entries.size()));
+            ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "VN Script Loader");
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                List<Future<LoadedFile>> pending = new ArrayList<>(entries.size());
+                for (Path entry : entries) {
+                    pending.add(pool.submit(() -> loadFile(entry, previous.get(entry), true, cache, stats)));
+                }
+                for (int i = 0; i < entries.size(); i++) {
+                    try {
+                        LoadedFile loaded = pending.get(i).get();
+                        if (loaded != null) {
+                            files.put(entries.get(i), loaded);
+                        }
+                    } catch (ExecutionException e) {
+                        LOGGER.error("Failed to load {}", entries.get(i).getFileName(), e.getCause());
                     }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOGGER.warn("Script loading interrupted, keeping the previous scripts.");
+                return;
+            } finally {
+                pool.shutdownNow();
+            }
+
+            publish(files);
+            this.cache = cache;
+            LOGGER.info("Finished loading scripts. Total: {} ({} ms, {} threads)", this.snapshot.scripts().size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), threads);
+            LOGGER.info("{}", stats);
+
+            validateInBackground();
+            if (stats.jsonFiles.sum() > 0) {
+                saveCache();
+            }
+        }
+    }
 
-                    if (this.scripts.containsKey(script.getId())) {
-                        System.out.println("[!] Warning: Duplicate UUID '" + script.getId() + "' found. Overwriting script '" + this.scripts.get(script.getId()).getName() + "' with '" + script.getName() + "'.");
+    /**
+     * Writes every compiled script to the binary cache in the background.
+     * Cached scripts that nobody opened yet are carried over from the cache they came from.
+     * Lazy JSON scripts that no conversation has touched yet are skipped, so it's worth calling this again
+     * on shutdown to pick those up for the next start.
+     */
+    public void saveCache() {
+        ScriptCache previous = this.cache;
+        List<ScriptCache.Source> sources = new ArrayList<>();
+        for (LoadedFile file : this.snapshot.files().values()) {
+            sources.add(new ScriptCache.Source(file.path().getFileName().toString(), file.hash(), file.size(), file.modified(), file.script()));
+        }
+        this.cacheWriter.execute(() -> {
+            try {
+                int written = ScriptCache.write(this.cacheFile, sources, previous);
+                LOGGER.info("Wrote {} compiled script(s) to {}", written, this.cacheFile.getFileName());
+            } catch (IOException e) {
+                LOGGER.warn("Could not write script cache", e);
+            }
+        });
+    }
+
+    /**
+     * Validates every script that hasn't been yet (big lazy ones and ones that came from the cache) and prints
+     * their reports, off the loading thread. They stay lazy, nothing is kept from this.
+     */
+    private void validateInBackground() {
+        List<LoadedFile> pending = new ArrayList<>();
+        for (LoadedFile file : this.snapshot.files().values()) {
+            if (!file.script().isValidated()) pending.add(file);
+        }
+        if (pending.isEmpty()) return;
+        this.validator.execute(() -> {
+            long start = System.nanoTime();
+            int errors = 0;
+            for (LoadedFile file : pending) {
+                try {
+                    if (file.script().validate().hasErrors()) errors++;
+                } catch (RuntimeException e) {
+                    errors++;
+                    LOGGER.error("Failed to validate {}", file.path().getFileName(), e);
+                }
+            }
+            LOGGER.info("Validated {} lazy or cached script(s) in {} ms, {} with errors.", pending.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), errors);
+        });
+    }
+
+    /**
+     * Re-parses only the given files and swaps in a new snapshot.
+     * Deleted files drop out, files whose content hash didn't change keep their already compiled script.
+     *
+     * @param changed Paths of script files that were created, modified or deleted.
+     */
+    public void reloadFiles(Set<Path> changed) {
+        synchronized (this.reloadLock) {
+            Map<Path, LoadedFile> files = new HashMap<>(this.snapshot.files());
+            for (Path path : changed) {
+                if (!Files.isRegularFile(path)) {
+                    if (files.remove(path) != null) {
+                        LOGGER.info("Unloaded script file: {}", path.getFileName());
                     }
+                    continue;
+                }
+                // The watcher told us it changed, so don't trust the mtime, check the hash
+                LoadedFile loaded = loadFile(path, files.get(path), false, null, null);
+                if (loaded != null) {
+                    files.put(path, loaded);
+                } else {
+                    // Broken edit, drop it rather than keep running a version that no longer exists on disk
+                    files.remove(path);
+                }
+            }
+            publish(files);
+            LOGGER.info("Reloaded {} script file(s). Total: {}", changed.size(), this.snapshot.scripts().size());
+            validateInBackground();
+            saveCache();
+        }
+    }
 
-                    this.scripts.put(script.getId(), script);
-                    System.out.println("[+] Loaded script: " + script.getName() + " (UUID: " + script.getId() + ")");
+    /**
+     * Starts watching the script directory and hot-reloading files as they change.
+     * Safe to call more than once, only one watcher is ever running.
+     */
+    public void startWatching() {
+        synchronized (this.reloadLock) {
+            if (this.watchThread != null) return;
+            try {
+                this.watchService = this.scriptDirectory.getFileSystem().newWatchService();
+                this.scriptDirectory.register(this.watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+            } catch (IOException e) {
+                LOGGER.warn("Could not watch script directory, hot reload disabled", e);
+                return;
+            }
+            WatchService service = this.watchService;
+            this.watchThread = new Thread(() -> watchLoop(service), "VN Script Watcher");
+            this.watchThread.setDaemon(true);
+            this.watchThread.start();
+            LOGGER.info("Watching {} for script changes.", this.scriptDirectory);
+        }
+    }
 
-                } catch (JsonSyntaxException e) {
-                    System.err.println("[!] Failed to load " + entry.getFileName() + ": Invalid JSON format. " + e.getMessage());
-                } catch (Exception e) {
-                    System.err.println("[!] Failed to load " + entry.getFileName() + ": " + e);
-                    e.printStackTrace();
+    /**
+     * Stops the hot-reload watcher, if running.
+     */
+    public void stopWatching() {
+        synchronized (this.reloadLock) {
+            if (this.watchThread == null) return;
+            try {
+                this.watchService.close();
+            } catch (IOException ignored) {
+                // Closing is best effort, the thread exits on ClosedWatchServiceException either way
+            }
+            this.watchThread.interrupt();
+            this.watchThread = null;
+            this.watchService = null;
+        }
+    }
+
+    /**
+     * Stops the watcher and waits for a pending cache write to finish.
+     */
+    public void shutdown() {
+        stopWatching();
+        // Only reporting, not worth holding up the shutdown for
+        this.validator.shutdownNow();
+        this.cacheWriter.shutdown();
+        try {
+            if (!this.cacheWriter.awaitTermination(10, TimeUnit.SECONDS)) {
+                LOGGER.warn("Script cache write did not finish in time.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void watchLoop(WatchService service) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Set<Path> changed = new TreeSet<>();
+                WatchKey key = service.take();
+                // Keep collecting until things go quiet for a moment
+                while (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            // Lost track of what changed, just do a full reload
+                            changed.clear();
+                            key.reset();
+                            loadScripts();
+                            key = null;
+                            break;
+                        }
+                        Path name = (Path) event.context();
+                        if (name.toString().endsWith(".json")) {
+                            changed.add(this.scriptDirectory.resolve(name));
+                        }
+                    }
+                    if (key != null) {
+                        key.reset();
+                        key = service.poll(WATCH_DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+                    }
+                }
+                if (!changed.isEmpty()) {
+                    reloadFiles(changed);
                 }
             }
-        } catch (IOException e) {
-            System.err.println("[!] Error reading script directory: " + e);
-            e.printStackTrace();
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Shutting down
         }
-        System.out.println(Const.LOG_PREFIX + " Finished loading scripts. Total: " + this.scripts.size());
+    }
+
+    /**
+     * Reads, hashes, parses and compiles one script file.
+     *
+     * @param entry    The file.
+     * @param previous What was loaded from this path last time, or null.
+     * @param trustModified Skip reading the file entirely if its modification time is unchanged.
+     * @param cache    The binary script cache, or null to always go to JSON.
+     * @param stats    Where to record load timings, or null.
+     * @return The loaded file, the previous one if nothing changed, or null if the file is unusable.
+     */
+    private LoadedFile loadFile(Path entry, LoadedFile previous, boolean trustModified, ScriptCache cache, LoadStats stats) {
+        try {
+            long modified = Files.getLastModifiedTime(entry).toMillis();
+            if (trustModified && previous != null && previous.modified() == modified) {
+                return previous;
+            }
+
+            String fileName = entry.getFileName().toString();
+            long started = System.nanoTime();
+            String cachedHash = cache == null ? null : cache.hashOf(fileName);
+            if (cachedHash != null) {
+                // Hashing is a lot cheaper than parsing, and it's the only thing we trust the cache on
+                String hash = ScriptReader.hash(entry);
+                if (cachedHash.equals(hash)) {
+                    Script script = cache.load(fileName);
+                    script.postLoad(fileName);
+                    long took = System.nanoTime() - started;
+                    if (stats != null) stats.cached(took);
+                    recordLoad(fileName, "cache", took);
+                    return new LoadedFile(entry, modified, Files.size(entry), hash, script);
+                }
+            }
+
+            // Streams the file: header parsed now, FSM nodes only indexed by byte offset
+            ScriptReader.Result read = ScriptReader.read(entry);
+            String hash = read.hash();
+            if (previous != null && previous.hash().equals(hash)) {
+                // Touched but not changed
+                return new LoadedFile(entry, modified, read.size(), hash, previous.script());
+            }
+
+            Script script = read.script();
+
+            // Post-load initialization is crucial to set defaults and UUID
+            script.postLoad(entry.getFileName().toString());
+
+            if (script.getId() == null || script.getId().isEmpty()) {
+                LOGGER.error("Failed to load {}: Script has no valid UUID after initialization.", entry.getFileName());
+                return null;
+            }
+
+            // Small scripts are compiled right away so label problems show up at load time.
+            // Big ones stay lazy and compile (and report) when a conversation first needs them.
+            boolean lazy = read.size() >= LAZY_THRESHOLD_BYTES;
+            if (!lazy) {
+                script.getProgram();
+            }
+
+            long took = System.nanoTime() - started;
+            if (stats != null) stats.parsed(took);
+            recordLoad(fileName, "json", took);
+            LOGGER.info("Loaded script: {} (UUID: {}){}", script.getName(), script.getId(), lazy ? " [lazy]" : "");
+            return new LoadedFile(entry, modified, read.size(), hash, script);
+
+        } catch (NoSuchFileException e) {
+            // Deleted between listing and reading
+            return null;
+        } catch (JsonSyntaxException e) {
+            LOGGER.error("Failed to load {}: Invalid JSON format. {}", entry.getFileName(), e.getMessage());
+        } catch (Exception e) {
+            LOGGER.error("Failed to load {}", entry.getFileName(), e);
+        }
+        return null;
+    }
+
+    /**
+     * Builds the UUID map and trigger index for a set of files and makes it the current snapshot.
+     * Must be called with the reload lock held.
+     */
+    private void publish(Map<Path, LoadedFile> files) {
+        // Sorted by path so duplicate UUIDs resolve the same way every time
+        Map<String, Script> scripts = new LinkedHashMap<>();
+        for (Path path : new TreeSet<>(files.keySet())) {
+            Script script = files.get(path).script();
+            Script existing = scripts.put(script.getId(), script);
+            if (existing != null && existing != script) {
+                LOGGER.warn("Duplicate UUID '{}' found. Overwriting script '{}' with '{}'.", script.getId(), existing.getName(), script.getName());
+            }
+        }
+        // Swap in the new snapshot in one go, lookups keep using the old one until this line
+        this.snapshot = new Snapshot(
+                Collections.unmodifiableMap(scripts),
+                Collections.unmodifiableMap(files),
+                TriggerIndex.build(scripts.values()));
     }
 
     /**
@@ -105,19 +481,72 @@ public class ScriptManager {
      * @return The Script object, or null if not found.
      */
     public Script getScript(String scriptId) {
-        return this.scripts.get(scriptId);
+        return this.snapshot.scripts().get(scriptId);
     }
 
     /**
      * Finds all scripts that match a specific trigger condition.
+     * Scripts can also use a wildcard value like "minecraft:*" to match every value with that prefix.
+     * This is a hash lookup, so it's fine to call from interact and tick events.
      *
      * @param triggerKey The key of the trigger (e.g., "on_npc_interact").
      * @param triggerValue The value the trigger key must have (e.g., "minecraft:villager").
-     * @return A list of matching scripts. The list will be empty if no matches are found.
+     * @return An immutable list of matching scripts. The list will be empty if no matches are found.
      */
     public List<Script> findByTrigger(String triggerKey, String triggerValue) {
-        return this.scripts.values().stream()
-                .filter(script -> triggerValue.equals(script.getTriggers().get(triggerKey)))
-                .collect(Collectors.toList());
+        return this.snapshot.triggers().find(triggerKey, triggerValue);
+    }
+
+    /**
+     * Per file, so one slow script stands out. Bounded by the number of files in the scripts folder.
+     */
+    private static void recordLoad(String fileName, String source, long nanos) {
+        Metrics.histogram("vn_script_load_seconds", "Time to load one script file, from the binary cache or from JSON",
+                "file", fileName, "source", source).record(nanos);
+    }
+
+    // --- Internal Data Structures ---
+
+    /**
+     * One script file as it was when we last read it. The hash is what tells a real edit from a touch.
+     */
+    private record LoadedFile(Path path, long modified, long size, String hash, Script script) {}
+
+    /**
+     * Cache vs JSON timings for one full load, summed over all loader threads.
+     */
+    private static final class LoadStats {
+        final LongAdder cachedFiles = new LongAdder();
+        final LongAdder cachedNanos = new LongAdder();
+        final LongAdder jsonFiles = new LongAdder();
+        final LongAdder jsonNanos = new LongAdder();
+
+        void cached(long nanos) {
+            cachedFiles.increment();
+            cachedNanos.add(nanos);
+        }
+
+        void parsed(long nanos) {
+            jsonFiles.increment();
+            jsonNanos.add(nanos);
+        }
+
+        @Override
+        public String toString() {
+            return "Script cache: " + describe(cachedFiles.sum(), cachedNanos.sum()) + " from cache, "
+                    + describe(jsonFiles.sum(), jsonNanos.sum()) + " from JSON";
+        }
+
+        private static String describe(long files, long nanos) {
+            double ms = nanos / 1_000_000.0;
+            return String.format("%d file(s) in %.1f ms (%.2f ms/file)", files, ms, files == 0 ? 0.0 : ms / files);
+        }
+    }
+
+    /**
+     * Everything readers look at, published as one unit.
+     */
+    private record Snapshot(Map<String, Script> scripts, Map<Path, LoadedFile> files, TriggerIndex triggers) {
+        static final Snapshot EMPTY = new Snapshot(Map.of(), Map.of(), TriggerIndex.EMPTY);
     }
 }
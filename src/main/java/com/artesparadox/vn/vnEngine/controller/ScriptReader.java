@@ -0,0 +1,421 @@
+package com.artesparadox.vn.vnEngine.controller;
+
+import com.artesparadox.vn.VisualNovelFramework;
+import com.artesparadox.vn.vnEngine.dataclass.Script;
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Streams a script file instead of turning it into one big String and then one big object tree.
+ *
+ * One pass over the bytes does three things: hashes the file, hands the small header fields
+ * (name, triggers, metadata, required_mods, ...) to Gson, and for the "fsm" object only remembers where each
+ * node starts and ends in the file. The nodes themselves are parsed later, the first time something
+ * actually asks the script for its FSM.
+ */
+public final class ScriptReader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VisualNovelFramework.class);
+
+    private static final Gson GSON = new Gson();
+    private static final Type NODE_TYPE = new TypeToken<Map<String, Object>>() {}.getType();
+
+    /**
+     * Top level keys that are parsed straight away. Anything else that isn't "fsm" is skipped.
+     */
+    private static final Set<String> HEADER_KEYS = Set.of("name", "description", "triggers", "metadata", "required_mods", "asset_dir");
+
+    private ScriptReader() {}
+
+    /**
+     * Result of reading one file.
+     *
+     * @param script The script with its header filled in and its FSM not yet materialized.
+     * @param hash   SHA-256 of the whole file, hex encoded.
+     * @param size   File size in bytes.
+     */
+    public record Result(Script script, String hash, long size) {}
+
+    /**
+     * Reads the header of a script file and indexes its FSM nodes.
+     *
+     * @param path The .json file.
+     * @return The header-only script, its content hash and size.
+     * @throws IOException if the file can't be read.
+     * @throws JsonSyntaxException if the file isn't a well formed script object.
+     */
+    public static Result read(Path path) throws IOException {
+        MessageDigest digest = newDigest();
+        long modified = Files.getLastModifiedTime(path).toMillis();
+
+        // Buffer on the outside: the scanner reads a byte at a time, the digest gets fed 64 KB blocks
+        try (Scanner in = new Scanner(new BufferedInputStream(new DigestInputStream(Files.newInputStream(path), digest), 64 * 1024))) {
+            // Header fields get glued back into a tiny JSON object so Gson can apply @SerializedName etc. as usual
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            header.write('{');
+            NodeSpans spans = null;
+
+            in.skipByteOrderMark();
+            in.expect('{');
+            in.skipWhitespace();
+            if (in.peek() == '}') {
+                in.read();
+            } else {
+                while (true) {
+                    in.skipWhitespace();
+                    String key = in.readKey();
+                    in.skipWhitespace();
+                    in.expect(':');
+                    in.skipWhitespace();
+
+                    if (HEADER_KEYS.contains(key)) {
+                        if (header.size() > 1) header.write(',');
+                        header.writeBytes(GSON.toJson(key).getBytes(StandardCharsets.UTF_8));
+                        header.write(':');
+                        in.skipValue(header);
+                    } else if ("fsm".equals(key)) {
+                        spans = in.indexFsm();
+                    } else {
+                        in.skipValue(null);
+                    }
+
+                    in.skipWhitespace();
+                    int c = in.read();
+                    if (c == '}') break;
+                    if (c != ',') throw in.error("Expected ',' or '}'");
+                }
+            }
+            // Drain whatever is left so the hash covers the whole file
+            while (in.read() != -1) {
+                // trailing whitespace
+            }
+            header.write('}');
+
+            Script script = GSON.fromJson(new String(header.toByteArray(), StandardCharsets.UTF_8), Script.class);
+            if (script == null) {
+                throw new JsonSyntaxException("Empty script file");
+            }
+            long size = in.position();
+            if (spans != null) {
+                script.setFsmSource(new LazyFsm(path, size, modified, spans));
+            }
+            return new Result(script, HexFormat.of().formatHex(digest.digest()), size);
+        }
+    }
+
+    /**
+     * Hashes a file the same way {@link #read(Path)} does, without parsing anything.
+     *
+     * @param path The file.
+     * @return SHA-256 of the content, hex encoded.
+     * @throws IOException if the file can't be read.
+     */
+    public static String hash(Path path) throws IOException {
+        MessageDigest digest = newDigest();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(path), digest)) {
+            byte[] buffer = new byte[64 * 1024];
+            while (in.read(buffer) != -1) {
+                // just feeding the digest
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Where each FSM node lives in the file.
+     * The keys are the object keys of the fsm map, or list indices when the fsm is a plain array.
+     */
+    private record NodeSpans(String listKey, List<String> keys, long[] starts, int[] lengths, long regionStart, long regionEnd) {}
+
+    /**
+     * Materializes the FSM of one file on demand by re-reading only the byte range that holds the nodes.
+     */
+    private static final class LazyFsm implements Supplier<Map<String, Object>> {
+        private final Path path;
+        private final long size;
+        private final long modified;
+        private final NodeSpans spans;
+
+        LazyFsm(Path path, long size, long modified, NodeSpans spans) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.spans = spans;
+        }
+
+        @Override
+        public Map<String, Object> get() {
+            try {
+                if (Files.size(path) != size || Files.getLastModifiedTime(path).toMillis() != modified) {
+                    // The file moved under us, the offsets are useless now. The watcher will swap in a fresh
+                    // script soon, but this conversation still needs something sane to run.
+                    LOGGER.warn("{} changed since it was indexed, parsing it in full.", path.getFileName());
+                    return readFully();
+                }
+
+                int regionLength = (int) (spans.regionEnd - spans.regionStart);
+                ByteBuffer region = ByteBuffer.allocate(regionLength);
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    while (region.hasRemaining()) {
+                        if (channel.read(region, spans.regionStart + region.position()) < 0) {
+                            throw new EOFException("Script file truncated: " + path);
+                        }
+                    }
+                }
+                byte[] bytes = region.array();
+
+                Map<String, Object> nodes = new LinkedHashMap<>();
+                List<Object> list = spans.listKey != null ? new ArrayList<>(spans.keys.size()) : null;
+                for (int i = 0; i < spans.keys.size(); i++) {
+                    int offset = (int) (spans.starts[i] - spans.regionStart);
+                    try (Reader reader = new InputStreamReader(new ByteArrayInputStream(bytes, offset, spans.lengths[i]), StandardCharsets.UTF_8)) {
+                        Object node = GSON.fromJson(reader, NODE_TYPE);
+                        if (list != null) {
+                            list.add(node);
+                        } else {
+                            nodes.put(spans.keys.get(i), node);
+                        }
+                    }
+                }
+                if (list != null) {
+                    nodes.put(spans.listKey, list);
+                }
+                return nodes;
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read FSM from " + path, e);
+            }
+        }
+
+        private Map<String, Object> readFully() throws IOException {
+            try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                Script script = GSON.fromJson(new JsonReader(reader), Script.class);
+                return script != null && script.getFsm() != null ? script.getFsm() : new LinkedHashMap<>();
+            }
+        }
+    }
+
+    /**
+     * A tiny byte-level JSON walker. It only knows how to find where values start and end,
+     * which is all we need to skip past the FSM without building it.
+     *
+     * Gson's JsonReader can't do this part: it reads chars through its own buffer and never tells you the
+     * byte offset of a value, and the lazy FSM needs exactly those offsets to re-read single nodes later.
+     * Everything that does get parsed (header fields, keys, nodes) still goes through Gson.
+     */
+    private static final class Scanner implements AutoCloseable {
+        private static final int[] UTF8_BOM = {0xEF, 0xBB, 0xBF};
+
+        private final InputStream in;
+        private long position;
+        private int peeked = -2;
+
+        /**
+         * @param in Must support mark/reset, see {@link #skipByteOrderMark()}.
+         */
+        Scanner(InputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * Steps over a UTF-8 byte order mark at the start of the file, which Windows editors like to add.
+         * Gson's JsonReader ignores one too, so files that loaded before keep loading.
+         * The BOM still counts towards {@link #position()}, node offsets are offsets into the file.
+         */
+        void skipByteOrderMark() throws IOException {
+            in.mark(UTF8_BOM.length);
+            for (int b : UTF8_BOM) {
+                if (in.read() != b) {
+                    in.reset();
+                    return;
+                }
+            }
+            position += UTF8_BOM.length;
+        }
+
+        long position() {
+            return position;
+        }
+
+        int peek() throws IOException {
+            if (peeked == -2) {
+                peeked = in.read();
+            }
+            return peeked;
+        }
+
+        int read() throws IOException {
+            int c = peek();
+            peeked = -2;
+            if (c != -1) position++;
+            return c;
+        }
+
+        void expect(char expected) throws IOException {
+            skipWhitespace();
+            int c = read();
+            if (c != expected) throw error("Expected '" + expected + "'");
+        }
+
+        void skipWhitespace() throws IOException {
+            int c;
+            while ((c = peek()) == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                read();
+            }
+        }
+
+        String readKey() throws IOException {
+            if (peek() != '"') throw error("Expected a key");
+            ByteArrayOutputStream raw = new ByteArrayOutputStream();
+            copyString(raw);
+            // Let Gson deal with escapes
+            return new JsonReader(new StringReader(new String(raw.toByteArray(), StandardCharsets.UTF_8))).nextString();
+        }
+
+        /**
+         * Skips one value, optionally copying its raw bytes.
+         */
+        void skipValue(ByteArrayOutputStream out) throws IOException {
+            int c = peek();
+            if (c == '"') {
+                copyString(out);
+                return;
+            }
+            if (c == '{' || c == '[') {
+                int depth = 0;
+                do {
+                    c = peek();
+                    if (c == -1) throw error("Unexpected end of file");
+                    if (c == '"') {
+                        copyString(out);
+                        continue;
+                    }
+                    read();
+                    if (out != null) out.write(c);
+                    if (c == '{' || c == '[') depth++;
+                    else if (c == '}' || c == ']') depth--;
+                } while (depth > 0);
+                return;
+            }
+            // Number, true, false or null
+            while ((c = peek()) != -1 && c != ',' && c != '}' && c != ']' && c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                read();
+                if (out != null) out.write(c);
+            }
+        }
+
+        private void copyString(ByteArrayOutputStream out) throws IOException {
+            int c = read(); // opening quote
+            if (out != null) out.write(c);
+            while (true) {
+                c = read();
+                if (c == -1) throw error("Unterminated string");
+                if (out != null) out.write(c);
+                if (c == '\\') {
+                    int escaped = read();
+                    if (out != null) out.write(escaped);
+                } else if (c == '"') {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Walks the fsm value, recording the span of each node.
+         */
+        NodeSpans indexFsm() throws IOException {
+            List<String> keys = new ArrayList<>();
+            List<long[]> spans = new ArrayList<>();
+            long regionStart = position;
+            int open = peek();
+
+            if (open == '{' || open == '[') {
+                read();
+                int index = 0;
+                while (true) {
+                    skipWhitespace();
+                    if (peek() == '}' || peek() == ']') {
+                        read();
+                        break;
+                    }
+                    String key;
+                    if (open == '{') {
+                        key = readKey();
+                        skipWhitespace();
+                        expect(':');
+                        skipWhitespace();
+                    } else {
+                        key = Integer.toString(index++);
+                    }
+                    long start = position;
+                    skipValue(null);
+                    keys.add(key);
+                    spans.add(new long[]{start, position - start});
+
+                    skipWhitespace();
+                    int c = read();
+                    if (c == '}' || c == ']') break;
+                    if (c != ',') throw error("Expected ',' in fsm");
+                }
+            } else {
+                skipValue(null);
+            }
+
+            long[] starts = new long[spans.size()];
+            int[] lengths = new int[spans.size()];
+            for (int i = 0; i < spans.size(); i++) {
+                starts[i] = spans.get(i)[0];
+                lengths[i] = (int) spans.get(i)[1];
+            }
+            // A top level array is stored under the "states" key, ScriptCompiler.nodesOf accepts lists under any key
+            return new NodeSpans(open == '[' ? "states" : null, keys, starts, lengths, regionStart, position);
+        }
+
+        JsonSyntaxException error(String message) {
+            return new JsonSyntaxException(message + " at byte " + position);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
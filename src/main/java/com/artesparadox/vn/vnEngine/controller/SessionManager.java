@@ -0,0 +1,328 @@
+package com.artesparadox.vn.vnEngine.controller;
+
+import com.artesparadox.vn.VisualNovelFramework;
+import com.artesparadox.vn.vnEngine.dataclass.Const;
+import com.artesparadox.vn.vnEngine.dataclass.Script;
+import com.artesparadox.vn.vnEngine.metrics.LatencyHistogram;
+import com.artesparadox.vn.vnEngine.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Owns every running conversation, one per player.
+ *
+ * Conversations either get stepped on the server thread by the {@link TickScheduler} under a per-tick budget,
+ * or each run on their own virtual thread. In the second mode an engine waiting for the player is parked on a lock,
+ * which unmounts the virtual thread, and its Minecraft side effects are queued for the server thread.
+ *
+ * Conversations started from a {@link Script} get their engine from an {@link EnginePool} and give it back when
+ * they end, so reopening the same NPC chat resets an engine instead of building one.
+ *
+ * Every conversation gets a random token. Whatever sends the player to the web UI hands it over ({@link #token}),
+ * and the web routes only advance or choose for a request that brings it. The player's UUID alone is public.
+ */
+public class SessionManager {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VisualNovelFramework.class);
+
+    private static final LongAdder STARTED = Metrics.counter("vn_sessions_started_total", "Conversations started");
+    private static final LongAdder REJECTED = Metrics.counter("vn_sessions_rejected_total",
+            "Conversations not started because of the session limit or a shutdown");
+    private static final LongAdder ENDED = Metrics.counter("vn_sessions_ended_total",
+            "Conversations that finished, were stopped or crashed");
+    private static final LatencyHistogram START_TIME = Metrics.histogram("vn_session_start_seconds",
+            "Time to get an engine for a script (reused or built) and start its conversation");
+
+    private final Map<UUID, Session> sessions = new ConcurrentHashMap<>();
+    private final Semaphore slots;
+    private final long idleTimeoutNanos;
+    private final TickScheduler scheduler;
+    private final InteractionManager interactions;
+    private final InventoryTracker inventories;
+    private final boolean onServerTick;
+    private final EnginePool pool;
+    private final SecureRandom random = new SecureRandom();
+    private volatile StartListener startListener;
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("vn-session-", 0).factory());
+    private volatile boolean closed;
+
+    /**
+     * @param maxSessions        How many conversations may run at once.
+     * @param idleTimeoutSeconds How long a conversation may wait on its player before it is closed.
+     * @param scheduler          The server tick driver, also used to get side effects onto the server thread.
+     * @param interactions       Pushes every state the engine yields to the player's browser, may be null.
+     * @param inventories        Where conversations get the player's inventory from.
+     * @param onServerTick       true to step conversations from the tick, false to give each its own virtual thread.
+     */
+    public SessionManager(int maxSessions, long idleTimeoutSeconds, TickScheduler scheduler, InteractionManager interactions,
+                          InventoryTracker inventories, boolean onServerTick, EnginePool pool) {
+        this.slots = new Semaphore(maxSessions);
+        this.idleTimeoutNanos = TimeUnit.SECONDS.toNanos(idleTimeoutSeconds);
+        this.scheduler = scheduler;
+        this.interactions = interactions;
+        this.inventories = inventories;
+        this.onServerTick = onServerTick;
+        this.pool = pool;
+        Metrics.gauge("vn_sessions_active", "Conversations running right now", this::activeCount);
+    }
+
+    /**
+     * Told about every conversation that starts, with its token. This is how the token gets to the player.
+     */
+    @FunctionalInterface
+    public interface StartListener {
+        void onStarted(UUID player, String token);
+    }
+
+    public SessionManager(TickScheduler scheduler, InteractionManager interactions, InventoryTracker inventories) {
+        this(Const.MAX_CONCURRENT_SESSIONS, Const.SESSION_IDLE_TIMEOUT_SECONDS, scheduler, interactions, inventories,
+                Const.SESSIONS_ON_SERVER_TICK, new EnginePool());
+    }
+
+    /**
+     * Starts a conversation on a script, reusing the engine from the player's last run of it if there is one.
+     * Same arguments as the {@link VNEngine} constructor, the inventory comes from {@link InventoryTracker#view}.
+     *
+     * @return false if the server is at its session limit or shutting down.
+     * @throws IllegalArgumentException if the script is too broken to run, see {@link Script#getProgram()}.
+     */
+    public boolean start(UUID player, Script script, String entityType, String entityName, boolean day,
+                         List<Map<String, Object>> globalSave, List<Map<String, Object>> localSave) {
+        long started = System.nanoTime();
+        VNEngine engine = pool.acquire(player, script, entityType, entityName, day, inventories.view(player), globalSave, localSave);
+        boolean running = start(player, engine, script.getId());
+        if (!running && !closed) {
+            // Never ran, as good as new for next time
+            pool.release(player, script.getId(), engine);
+        }
+        START_TIME.recordSince(started);
+        return running;
+    }
+
+    /**
+     * Starts a conversation for a player, ending whatever conversation they were in before.
+     *
+     * @param player The player's UUID.
+     * @param engine A fresh engine for the conversation. Gets the player's inventory if it has none.
+     * @return false if the server is at its session limit or shutting down.
+     */
+    public boolean start(UUID player, VNEngine engine) {
+        return start(player, engine, null);
+    }
+
+    /**
+     * @param scriptId Where the engine goes back to in the pool once it ends, null if it didn't come from the pool.
+     */
+    private boolean start(UUID player, VNEngine engine, String scriptId) {
+        if (closed) {
+            REJECTED.increment();
+            return false;
+        }
+
+        stop(player);
+        if (!slots.tryAcquire()) {
+            REJECTED.increment();
+            LOGGER.warn("Session limit reached, not starting a conversation for {}", player);
+            return false;
+        }
+
+        Session session = new Session(engine, scriptId, newToken());
+        sessions.put(player, session);
+        if (engine.inventoryHandler == null) {
+            engine.inventoryHandler = inventories.view(player);
+        }
+        engine.setIdleTimeout(idleTimeoutNanos);
+        if (interactions != null) {
+            engine.setStateListener((e, finished) -> interactions.publish(player, e, finished));
+        }
+        engine.setCommandQueue(scheduler.commands());
+        engine.shutdown.set(false);
+        engine.isEngineRunning.set(true);
+
+        if (onServerTick) {
+            scheduler.add(engine, () -> release(player, session));
+            STARTED.increment();
+            notifyStarted(player, session);
+            return true;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    engine.runEngine();
+                } catch (RuntimeException e) {
+                    LOGGER.error("Conversation for {} crashed", player, e);
+                } finally {
+                    engine.isEngineRunning.set(false);
+                    release(player, session);
+                }
+            });
+        } catch (RuntimeException e) {
+            // Executor already shut down, never started so it doesn't count as ended either
+            sessions.remove(player, session);
+            slots.release();
+            REJECTED.increment();
+            return false;
+        }
+        STARTED.increment();
+        notifyStarted(player, session);
+        return true;
+    }
+
+    private void notifyStarted(UUID player, Session session) {
+        StartListener listener = startListener;
+        if (listener == null) return;
+        try {
+            listener.onStarted(player, session.token());
+        } catch (RuntimeException e) {
+            LOGGER.error("Session start listener failed", e);
+        }
+    }
+
+    public void setStartListener(StartListener startListener) {
+        this.startListener = startListener;
+    }
+
+    private void release(UUID player, Session session) {
+        sessions.remove(player, session);
+        slots.release();
+        ENDED.increment();
+        if (session.scriptId() != null && !closed) {
+            pool.release(player, session.scriptId(), session.engine());
+        }
+    }
+
+    /**
+     * @return The player's running engine, or null if they aren't in a conversation.
+     */
+    public VNEngine get(UUID player) {
+        Session session = sessions.get(player);
+        return session == null ? null : session.engine();
+    }
+
+    /**
+     * @return The token for the player's current conversation, or null if they aren't in one.
+     */
+    public String token(UUID player) {
+        Session session = sessions.get(player);
+        return session == null ? null : session.token();
+    }
+
+    /**
+     * Whether a request speaks for the player's current conversation.
+     */
+    public boolean isAuthorized(UUID player, String token) {
+        return session(player, token) != null;
+    }
+
+    /**
+     * The player clicked through a line of dialogue. For callers on the server side, the web goes through
+     * {@link #advance(UUID, String)}.
+     */
+    public void advance(UUID player) {
+        VNEngine engine = get(player);
+        if (engine != null) engine.advance();
+    }
+
+    /**
+     * @return false if the token isn't the one of the player's current conversation.
+     */
+    public boolean advance(UUID player, String token) {
+        Session session = session(player, token);
+        if (session == null) return false;
+        session.engine().advance();
+        return true;
+    }
+
+    /**
+     * The player picked a choice. For callers on the server side, the web goes through {@link #choose(UUID, String, String)}.
+     */
+    public void choose(UUID player, String label) {
+        VNEngine engine = get(player);
+        if (engine != null) engine.buttonPress(label);
+    }
+
+    /**
+     * @return false if the token isn't the one of the player's current conversation, or the label isn't one of the
+     * choices on screen.
+     */
+    public boolean choose(UUID player, String token, String label) {
+        Session session = session(player, token);
+        return session != null && session.engine().buttonPress(label);
+    }
+
+    private Session session(UUID player, String token) {
+        Session session = sessions.get(player);
+        if (session == null || token == null) return null;
+        // Constant time, the token is the only secret here
+        boolean matches = MessageDigest.isEqual(session.token().getBytes(StandardCharsets.US_ASCII),
+                token.getBytes(StandardCharsets.US_ASCII));
+        return matches ? session : null;
+    }
+
+    private String newToken() {
+        byte[] bytes = new byte[24];
+        random.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * Ends the player's conversation, if any. The engine thread exits (or the scheduler drops it) on its own shortly after.
+     */
+    public void stop(UUID player) {
+        Session session = sessions.remove(player);
+        if (session != null) {
+            session.engine().stop();
+        }
+    }
+
+    /**
+     * @return Queue and execution numbers of script commands.
+     */
+    public Map<String, Object> commandStats() {
+        return scheduler.commands().stats();
+    }
+
+    public int activeCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Stops every conversation and waits a little for the engine threads to wind down.
+     * Call this when the server stops, before shutting down the {@link TickScheduler}.
+     */
+    public void shutdown() {
+        closed = true;
+        for (UUID player : sessions.keySet()) {
+            stop(player);
+        }
+        pool.clear();
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                LOGGER.warn("Some conversations did not stop in time.");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+    }
+
+    private record Session(VNEngine engine, String scriptId, String token) {}
+}
@@ -0,0 +1,104 @@
+package com.artesparadox.vn.vnEngine.controller;
+
+import com.artesparadox.vn.vnEngine.dataclass.DialogueState;
+import com.google.gson.Gson;
+
+/**
+ * One published version of a player's {@link DialogueState}, with every field already encoded to JSON on its own.
+ *
+ * Keeping the fields apart means a client that already has version N-1 can be sent just the fields that changed,
+ * usually a new line of dialogue, instead of the sprite list and background all over again.
+ * The encodings are computed once per publish and shared by every client of the player.
+ */
+final class StateSnapshot {
+
+    private static final Gson GSON = new Gson();
+
+    // Same names as the DialogueState fields, so a full snapshot looks like what Gson would have produced
+    static final String[] FIELDS = {"label", "content", "background", "command", "music", "sound", "sprites", "choices"};
+
+    final long version;
+    private final DialogueState state;
+    private final String[] values; // JSON per field, "null" when unset
+    private volatile String full;
+    // Nearly every client of a player sits on the same base version, so one cached delta covers them all
+    private volatile CachedDelta lastDelta;
+
+    private record CachedDelta(long base, String json) {}
+
+    private StateSnapshot(long version, DialogueState state, String[] values) {
+        this.version = version;
+        this.state = state;
+        this.values = values;
+    }
+
+    /**
+     * Encodes the state. DialogueState is immutable, so this is safe from any thread.
+     *
+     * @param previous The player's previous snapshot, or null. Sprite and choice lists that are still the
+     *                 same instances as in there (states share what didn't change) aren't encoded again.
+     */
+    static StateSnapshot of(long version, DialogueState state, StateSnapshot previous) {
+        String[] values = new String[FIELDS.length];
+        values[0] = GSON.toJson(state.getLabel());
+        values[1] = GSON.toJson(state.getContent());
+        values[2] = GSON.toJson(state.getBackground());
+        values[3] = GSON.toJson(state.getCommand());
+        values[4] = GSON.toJson(state.getMusic());
+        values[5] = GSON.toJson(state.getSound());
+        values[6] = previous != null && previous.state.getSprites() == state.getSprites()
+                ? previous.values[6] : GSON.toJson(state.getSprites());
+        values[7] = previous != null && previous.state.getChoices() == state.getChoices()
+                ? previous.values[7] : GSON.toJson(state.getChoices());
+        return new StateSnapshot(version, state, values);
+    }
+
+    /**
+     * The whole state, for new clients and for clients that fell too far behind.
+     */
+    String full() {
+        String json = full;
+        if (json == null) {
+            StringBuilder out = new StringBuilder(256);
+            out.append("{\"v\":").append(version).append(",\"full\":true,\"state\":{");
+            boolean first = true;
+            for (int i = 0; i < FIELDS.length; i++) {
+                if ("null".equals(values[i])) continue; // like Gson, leave unset fields out
+                if (!first) out.append(',');
+                out.append('"').append(FIELDS[i]).append("\":").append(values[i]);
+                first = false;
+            }
+            json = out.append("}}").toString();
+            full = json;
+        }
+        return json;
+    }
+
+    /**
+     * Only what changed since {@code base}. Fields that got cleared are sent as null.
+     * Falls back to {@link #full()} when the delta wouldn't be any smaller.
+     */
+    String deltaFrom(StateSnapshot base) {
+        CachedDelta cached = lastDelta;
+        if (cached != null && cached.base() == base.version) {
+            return cached.json();
+        }
+
+        StringBuilder out = new StringBuilder(128);
+        out.append("{\"v\":").append(version).append(",\"base\":").append(base.version).append(",\"full\":false,\"set\":{");
+        boolean first = true;
+        for (int i = 0; i < FIELDS.length; i++) {
+            if (values[i].equals(base.values[i])) continue;
+            if (!first) out.append(',');
+            out.append('"').append(FIELDS[i]).append("\":").append(values[i]);
+            first = false;
+        }
+        String delta = out.append("}}").toString();
+        if (delta.length() >= full().length()) {
+            delta = full();
+        }
+
+        lastDelta = new CachedDelta(base.version, delta);
+        return delta;
+    }
+}
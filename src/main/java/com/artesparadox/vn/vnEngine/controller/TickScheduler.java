@@ -0,0 +1,153 @@
+package com.artesparadox.vn.vnEngine.controller;
+
+import com.artesparadox.vn.VisualNovelFramework;
+import com.artesparadox.vn.vnEngine.dataclass.Const;
+import com.artesparadox.vn.vnEngine.metrics.LatencyHistogram;
+import com.artesparadox.vn.vnEngine.metrics.Metrics;
+import net.neoforged.bus.api.SubscribeEvent;
+import net.neoforged.neoforge.event.tick.ServerTickEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives conversations from the server tick instead of their own threads.
+ *
+ * Every tick each engine gets at most {@code stepsPerEngine} instructions, and all of them together get at most
+ * {@code budgetNanos} of wall time. An engine that hits dialogue or a choice yields right away and costs nothing
+ * until the player answers. Engines that didn't get their turn because the budget ran out go first next tick,
+ * so a busy server slows conversations down a little instead of dropping TPS.
+ *
+ * Register it on {@code NeoForge.EVENT_BUS}. Everything except {@link #add} runs on the server thread.
+ */
+public class TickScheduler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VisualNovelFramework.class);
+
+    private static final LatencyHistogram TICK_TIME = Metrics.histogram("vn_tick_seconds",
+            "Server thread time spent stepping conversations per tick");
+
+    private final int stepsPerEngine;
+    private final long budgetNanos;
+
+    // Engines started since the last tick, handed over from web server / command threads
+    private final Queue<Entry> incoming = new ConcurrentLinkedQueue<>();
+    // Round robin order, only touched on the server thread
+    private final ArrayDeque<Entry> running = new ArrayDeque<>();
+    private final CommandDispatchQueue commands = new CommandDispatchQueue();
+
+    public TickScheduler(int stepsPerEngine, long budgetMicros) {
+        this.stepsPerEngine = stepsPerEngine;
+        this.budgetNanos = TimeUnit.MICROSECONDS.toNanos(budgetMicros);
+    }
+
+    public TickScheduler() {
+        this(Const.TICK_STEPS_PER_SESSION, Const.TICK_BUDGET_MICROS);
+    }
+
+    /**
+     * Script commands, run under their own budget at the start of every tick.
+     */
+    public CommandDispatchQueue commands() {
+        return commands;
+    }
+
+    /**
+     * Starts stepping an engine from the next tick on. To remove it again just {@link VNEngine#stop()} it.
+     *
+     * @param engine   The engine, already marked as running.
+     * @param onFinish Called on the server thread once the engine finished, was stopped or crashed.
+     */
+    public void add(VNEngine engine, Runnable onFinish) {
+        incoming.add(new Entry(engine, onFinish));
+    }
+
+    public int activeCount() {
+        return running.size() + incoming.size();
+    }
+
+    @SubscribeEvent
+    public void onServerTick(ServerTickEvent.Post event) {
+        commands.drain(event.getServer());
+        tick();
+    }
+
+    /**
+     * Runs one tick's worth of work.
+     */
+    public void tick() {
+        long started = System.nanoTime();
+        long deadline = started + budgetNanos;
+
+        Entry entry;
+        while ((entry = incoming.poll()) != null) {
+            running.addLast(entry);
+        }
+
+        // Each engine at most once per tick, stop early if the budget is gone
+        int turns = running.size();
+        for (int i = 0; i < turns && System.nanoTime() - deadline < 0; i++) {
+            entry = running.pollFirst();
+            if (runTurn(entry, deadline)) {
+                running.addLast(entry);
+            } else {
+                finish(entry);
+            }
+        }
+        TICK_TIME.recordSince(started);
+    }
+
+    /**
+     * @return true if the engine should stay scheduled.
+     */
+    private boolean runTurn(Entry entry, long deadline) {
+        VNEngine engine = entry.engine();
+        try {
+            for (int step = 0; step < stepsPerEngine; step++) {
+                switch (engine.step()) {
+                    case FINISHED:
+                        return false;
+                    case WAITING:
+                        return true;
+                    default:
+                        break;
+                }
+                if (System.nanoTime() - deadline >= 0) break;
+            }
+            return true;
+        } catch (RuntimeException e) {
+            LOGGER.error("Conversation {} crashed", engine.uid, e);
+            engine.stop();
+            return false;
+        }
+    }
+
+    private void finish(Entry entry) {
+        try {
+            entry.onFinish().run();
+        } catch (RuntimeException e) {
+            LOGGER.error("Conversation cleanup failed", e);
+        }
+    }
+
+    /**
+     * Stops every engine. Call this when the server stops.
+     */
+    public void shutdown() {
+        Entry entry;
+        while ((entry = incoming.poll()) != null) {
+            running.addLast(entry);
+        }
+        while ((entry = running.pollFirst()) != null) {
+            entry.engine().stop();
+            finish(entry);
+        }
+        commands.clear();
+    }
+
+    private record Entry(VNEngine engine, Runnable onFinish) {}
+}
@@ -0,0 +1,154 @@
+package com.artesparadox.vn.vnEngine.controller;
+
+import com.artesparadox.vn.vnEngine.dataclass.Script;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable (triggerKey, triggerValue) -> scripts lookup.
+ * A new index is built from scratch every time scripts are (re)loaded and swapped in as a whole,
+ * so readers never see a half-built one.
+ *
+ * Trigger values ending in '*' are treated as prefixes, e.g. "minecraft:*" matches every vanilla entity
+ * and a bare "*" matches anything. Those live in a per-key character trie next to the exact map.
+ */
+public final class TriggerIndex {
+
+    public static final TriggerIndex EMPTY = build(Collections.emptyList());
+
+    /**
+     * Max number of merged (exact + wildcard) results remembered per index.
+     * Trigger values come from registry ids, so in practice this never fills up.
+     */
+    private static final int MAX_MERGED_CACHE = 4096;
+
+    private final Map<String, Map<String, List<Script>>> exact;
+    private final Map<String, PrefixNode> wildcards;
+    private final Map<String, Map<String, List<Script>>> merged = new ConcurrentHashMap<>();
+    private final AtomicInteger mergedCount = new AtomicInteger();
+
+    private TriggerIndex(Map<String, Map<String, List<Script>>> exact, Map<String, PrefixNode> wildcards) {
+        this.exact = exact;
+        this.wildcards = wildcards;
+    }
+
+    /**
+     * Builds an index over the given scripts.
+     *
+     * @param scripts Every loaded script.
+     * @return A new, fully populated index.
+     */
+    public static TriggerIndex build(Collection<Script> scripts) {
+        Map<String, Map<String, List<Script>>> exactBuilder = new HashMap<>();
+        Map<String, PrefixNode> wildcardBuilder = new HashMap<>();
+
+        for (Script script : scripts) {
+            for (Map.Entry<String, String> trigger : script.getTriggers().entrySet()) {
+                String key = trigger.getKey();
+                String value = trigger.getValue();
+                if (key == null || value == null) continue;
+
+                if (value.endsWith("*")) {
+                    PrefixNode root = wildcardBuilder.computeIfAbsent(key, k -> new PrefixNode());
+                    root.insert(value.substring(0, value.length() - 1), script);
+                } else {
+                    exactBuilder.computeIfAbsent(key, k -> new HashMap<>())
+                            .computeIfAbsent(value, v -> new ArrayList<>())
+                            .add(script);
+                }
+            }
+        }
+
+        // Freeze everything so lookups can hand out the lists directly
+        Map<String, Map<String, List<Script>>> exact = new HashMap<>();
+        exactBuilder.forEach((key, values) -> {
+            Map<String, List<Script>> frozen = new HashMap<>();
+            values.forEach((value, list) -> frozen.put(value, List.copyOf(list)));
+            exact.put(key, Collections.unmodifiableMap(frozen));
+        });
+        wildcardBuilder.values().forEach(PrefixNode::freeze);
+
+        return new TriggerIndex(Collections.unmodifiableMap(exact), Collections.unmodifiableMap(wildcardBuilder));
+    }
+
+    /**
+     * Finds all scripts whose trigger matches, exactly or by wildcard prefix.
+     *
+     * @param triggerKey   The key of the trigger (e.g., "on_npc_interact").
+     * @param triggerValue The actual value (e.g., "minecraft:villager").
+     * @return An immutable list, empty if nothing matches. Callers must not modify it.
+     */
+    public List<Script> find(String triggerKey, String triggerValue) {
+        if (triggerKey == null || triggerValue == null) return List.of();
+
+        Map<String, List<Script>> byValue = exact.get(triggerKey);
+        List<Script> exactMatches = byValue == null ? null : byValue.get(triggerValue);
+
+        PrefixNode root = wildcards.get(triggerKey);
+        if (root == null) {
+            // Common case: no wildcard triggers for this key, nothing to merge
+            return exactMatches == null ? List.of() : exactMatches;
+        }
+
+        Map<String, List<Script>> cached = merged.get(triggerKey);
+        if (cached != null) {
+            List<Script> hit = cached.get(triggerValue);
+            if (hit != null) return hit;
+        }
+
+        List<Script> result = root.collect(triggerValue, exactMatches);
+        if (mergedCount.get() < MAX_MERGED_CACHE
+                && merged.computeIfAbsent(triggerKey, k -> new ConcurrentHashMap<>()).putIfAbsent(triggerValue, result) == null) {
+            mergedCount.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * One character of a wildcard prefix. Scripts sit on the node where their prefix ends.
+     */
+    private static final class PrefixNode {
+        private Map<Character, PrefixNode> children = new HashMap<>();
+        private List<Script> scripts = new ArrayList<>();
+
+        void insert(String prefix, Script script) {
+            PrefixNode node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), c -> new PrefixNode());
+            }
+            node.scripts.add(script);
+        }
+
+        void freeze() {
+            scripts = List.copyOf(scripts);
+            for (PrefixNode child : children.values()) {
+                child.freeze();
+            }
+            children = children.isEmpty() ? Map.of() : Collections.unmodifiableMap(children);
+        }
+
+        /**
+         * Walks the value through the trie, picking up every prefix that matches along the way.
+         */
+        List<Script> collect(String value, List<Script> exactMatches) {
+            List<Script> out = new ArrayList<>();
+            if (exactMatches != null) out.addAll(exactMatches);
+
+            PrefixNode node = this;
+            out.addAll(node.scripts);
+            for (int i = 0; i < value.length(); i++) {
+                node = node.children.get(value.charAt(i));
+                if (node == null) break;
+                out.addAll(node.scripts);
+            }
+            return List.copyOf(out);
+        }
+    }
+}
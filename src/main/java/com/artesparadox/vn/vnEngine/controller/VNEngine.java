@@ -1,26 +1,83 @@
 package com.artesparadox.vn.vnEngine.controller;
 
+import com.artesparadox.vn.VisualNovelFramework;
+import com.artesparadox.vn.vnEngine.compiler.Condition.Context;
+import com.artesparadox.vn.vnEngine.compiler.Instruction;
+import com.artesparadox.vn.vnEngine.compiler.LabelIndex;
+import com.artesparadox.vn.vnEngine.compiler.OpCode;
+import com.artesparadox.vn.vnEngine.compiler.ScriptCompiler;
+import com.artesparadox.vn.vnEngine.compiler.ScriptProgram;
+import com.artesparadox.vn.vnEngine.compiler.SlotTable;
 import com.artesparadox.vn.vnEngine.dataclass.DialogueState;
+import com.artesparadox.vn.vnEngine.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.artesparadox.vn.vnEngine.controller.modules.DialogueHandler.*;
 
 public class VNEngine {
 
+    // The mod's logger (VisualNovelFramework.LOGGER). Looked up by class so the engine doesn't initialize the mod class and its registries
+    private static final Logger LOGGER = LoggerFactory.getLogger(VisualNovelFramework.class);
+
+    // Instructions executed, per op. Indexed by ordinal so counting a step is one adder increment
+    private static final LongAdder[] STEPS = new LongAdder[OpCode.values().length];
+    static {
+        for (OpCode op : OpCode.values()) {
+            STEPS[op.ordinal()] = Metrics.counter("vn_engine_steps_total", "Script instructions executed, by node type",
+                    "op", op.name().toLowerCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * What a single {@link #step()} ended with.
+     */
+    public enum StepResult {
+        /** Ran an instruction, the next one can run right away. */
+        CONTINUE,
+        /** Showed dialogue or choices, nothing happens until the player answers. */
+        WAITING,
+        /** The script ended, or the engine was stopped or idled out. */
+        FINISHED
+    }
+
+    /**
+     * Told whenever the engine stops to wait for the player, and once when the conversation is over.
+     * Runs on whatever thread drives the engine, so keep it quick.
+     */
+    @FunctionalInterface
+    public interface StateListener {
+        void onStateChanged(VNEngine engine, boolean finished);
+    }
+
     public AtomicBoolean shutdown = new AtomicBoolean(false);
     public List<Map<String, Object>> gameData;
+    public final ScriptProgram program;
     public List<Map<String, Object>> globalSave;
     public List<Map<String, Object>> localSave;
     public AtomicLong currentState = new AtomicLong(0);
-    public Map<String, Object> localVariables = new HashMap<>();
+    // Typed, slot-indexed variables. Slots come from the compiled program, see Instruction.slot
+    public final VariableStore localVariables;
+    // The program passed ScriptValidator, so the defensive checks in execute() can be skipped
+    private final boolean verified;
 
-    public Map<String, Object> globalVariables = new HashMap<>();
+    public final VariableStore globalVariables = VariableStore.GLOBALS; // Shared by every engine
 
-    public DialogueState state;
+    // Current screen. Immutable snapshots, so readers on other threads just get() and never see a half-updated state
+    public final AtomicReference<DialogueState> state = new AtomicReference<>(DialogueState.EMPTY);
     public AtomicBoolean isEngineRunning = new AtomicBoolean(false);
 
     public StringBuffer entityType = new StringBuffer();
@@ -31,7 +88,32 @@ public class VNEngine {
 
     public AtomicBoolean isDay = new AtomicBoolean(true);
 
-    public List<Map<String, Integer>> inventoryHandler; // Contains inventory, list of item id and number
+    // Ticks into the Minecraft day, -1 until the caller tells us, see setTimeOfDay
+    public AtomicLong timeOfDay = new AtomicLong(-1);
+
+    public InventoryView inventoryHandler; // The player's items, kept up to date by the InventoryTracker
+
+    // What compiled conditions (Instruction.predicate) read from
+    public final Context conditionContext = new ConditionContext();
+
+    // Dialogue advance / choice hand-off between the player and the engine thread
+    private final ReentrantLock inputLock = new ReentrantLock();
+    private final Condition inputArrived = inputLock.newCondition();
+    private boolean inputPending;
+    private volatile long idleTimeoutNanos;
+
+    // Only touched by whichever thread drives the engine
+    private boolean waitingForInput;
+    private long waitingSince;
+
+    // Where script commands go, null = commands are only shown to the client
+    private volatile CommandDispatchQueue commandQueue;
+
+    private volatile StateListener stateListener;
+    private final AtomicBoolean finishNotified = new AtomicBoolean(false);
+
+    // Variables version last handed to the SaveHandler, so unchanged progress isn't saved again
+    private long savedVersion;
 
 
     public VNEngine(
@@ -40,17 +122,36 @@ public class VNEngine {
             String entityName,
             String uid,
             boolean day,
-            List<Map<String, Integer>> inventory,
+            InventoryView inventory,
+            List<Map<String, Object>> globalSave,
+            List<Map<String,Object>> localSave
+    ) {
+        this(ScriptCompiler.compile(gameData), entityType, entityName, uid, day, inventory, globalSave, localSave);
+    }
+
+    /**
+     * Creates an engine for an already compiled script.
+     * Prefer this one with {@code script.getProgram()}, the program is shared and never recompiled.
+     */
+    public VNEngine(
+            ScriptProgram program,
+            String entityType,
+            String entityName,
+            String uid,
+            boolean day,
+            InventoryView inventory,
             List<Map<String, Object>> globalSave,
             List<Map<String,Object>> localSave
     ) {
         this.uid.setLength(0);
         this.uid.append(uid);
 
-        this.gameData = gameData;
+        this.program = program;
+        this.verified = program.isVerified();
+        this.localVariables = new VariableStore(program.locals());
+        this.gameData = program.getNodes();
         this.globalSave = globalSave;
         this.localSave = localSave;
-        this.state = new DialogueState(null,null,null);
         this.entityName.setLength(0);
         this.entityName.append(entityName);
         this.entityType.setLength(0);
@@ -58,113 +159,187 @@ public class VNEngine {
         this.isDay.set(day);
         this.inventoryHandler = inventory;
         SaveHandler.loadProgress(this);
+        this.savedVersion = this.localVariables.version();
+    }
+
+    /**
+     * Puts a finished engine back to the start of its script for another conversation with the same player,
+     * as if it was just constructed. The program, variable store, locks and buffers are reused.
+     * Only call this on an engine nothing is running anymore, see {@link EnginePool}.
+     *
+     * @param keepProgress true if no other engine ran for this player since this one, then the variables in memory
+     *                     are still what's saved and don't have to be loaded again (if the character is the same).
+     */
+    public void reset(
+            String entityType,
+            String entityName,
+            boolean day,
+            InventoryView inventory,
+            List<Map<String, Object>> globalSave,
+            List<Map<String, Object>> localSave,
+            boolean keepProgress
+    ) {
+        // Unsaved changes (the engine was stopped between two waits) are dropped, a new engine wouldn't see them either
+        boolean sameSave = keepProgress
+                && this.savedVersion == this.localVariables.version()
+                && entityType.contentEquals(this.entityType)
+                && entityName.contentEquals(this.entityName);
+
+        this.shutdown.set(false);
+        this.isEngineRunning.set(false);
+        this.finishNotified.set(false);
+        this.currentState.set(0);
+        this.state.set(DialogueState.EMPTY);
+        inputLock.lock();
+        try {
+            this.inputPending = false;
+        } finally {
+            inputLock.unlock();
+        }
+        this.waitingForInput = false;
+        this.waitingSince = 0;
+        this.stateListener = null;
+        this.commandQueue = null;
+        this.idleTimeoutNanos = 0;
+
+        this.entityName.setLength(0);
+        this.entityName.append(entityName);
+        this.entityType.setLength(0);
+        this.entityType.append(entityType);
+        this.isDay.set(day);
+        this.timeOfDay.set(-1);
+        this.inventoryHandler = inventory;
+        this.globalSave = globalSave;
+        this.localSave = localSave;
+
+        if (!sameSave) {
+            this.localVariables.clear();
+            SaveHandler.loadProgress(this);
+            this.savedVersion = this.localVariables.version();
+        }
     }
 
     // Look, for the sake of my own sanity, I have to refactor this thing...
+    // (Done: the script gets compiled into a ScriptProgram up front, so this is just a switch over an enum)
 
     @SuppressWarnings("unchecked")
-    private void processAction(Map<String, Object> action) {
-        String actionType = (String) action.get("type");
-
-        switch (actionType) {
-            case "show_sprite":
+    private void execute(Instruction action) {
+        STEPS[action.op.ordinal()].increment();
+        switch (action.op) {
+            case SHOW_SPRITE:
                 updateSprite(action, this);
                 return;
-            case "remove_sprite":
-                removeSprite((String) action.get("sprite"), this);
+            case REMOVE_SPRITE:
+                removeSprite(action.sprite, this);
                 return;
-            case "dialogue":
-                String sound = (String) action.get("voice");
+            case DIALOGUE:
                 updateDialogue(
-                        (String) action.get("label"),
-                        (String) action.get("content"),
-                        (String) action.get("voice"),
+                        action.label,
+                        action.content,
+                        action.voice,
                         this);
                 return;
-            case "modify_variable":
-                modifyVariable(
-                        (String) action.get("var"),
-                        (String) action.get("action"),
-                        action.get("value"),
-                        localVariables,
-                        currentState
-                );
-                break;
-            case "modify_global":
-                modifyVariable(
-                        (String) action.get("var"),
-                        (String) action.get("action"),
-                        action.get("value"),
-                        globalVariables,
-                        currentState
-                );
-                break;
-            case "give_item":
-                inventoryHandler.giveItemToPlayer((String) action.get("item"), (int) (long) action.get("amount"));
-                break;
-            case "conditional":
-                processConditional(action, this);
+            case MODIFY_VARIABLE:
+                if (verified) {
+                    localVariables.apply(action.slot, action.action, action.value);
+                    this.currentState.incrementAndGet();
+                } else {
+                    modifyVariable(action, localVariables, currentState);
+                }
+                break;
+            case MODIFY_GLOBAL:
+                if (verified) {
+                    globalVariables.apply(action.slot, action.action, action.value);
+                    this.currentState.incrementAndGet();
+                } else {
+                    modifyVariable(action, globalVariables, currentState);
+                }
                 break;
-            case "conditional_global":
-                processGlobalConditional(action, this);
+            case GIVE_ITEM:
+                // Queued on the view and handed out with the next tick, no need to hop threads
+                if (inventoryHandler != null) {
+                    inventoryHandler.giveItemToPlayer(action.slot, action.amount);
+                }
+                this.currentState.incrementAndGet();
                 break;
-            case "transition":
-                if ("jump".equals(action.get("action"))) {
-                    processJump(action,this);
+            case CONDITIONAL:
+            case CONDITIONAL_GLOBAL:
+            case CHECK_INVENTORY:
+                processConditional(action, this);
+                break;
+            case TRANSITION:
+                if (verified) {
+                    // Validated: always a jump, and the label exists
+                    this.currentState.set(action.target + 1);
+                } else if (action.jump) {
+                    processJump(action, this);
                 }
                 break;
-            case "choice":
-                System.out.println("Try to yoink choice" + action);
-                updateChoices(
-                        (List<Map<String, Object>>) action.get("choice"), this
-                );
+            case CHOICE:
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Session {} shows choices at node {}: {}", uid, action.id, action.choices);
+                }
+                updateChoices(action.choices, this);
                 break;
-            case "command":
-                updateCommand(action, state);
+            case COMMAND:
+                updateCommand(action, this);
+                dispatchCommand(action);
                 this.currentState.incrementAndGet();
                 break;
-            case "label":
+            case LABEL:
                 this.currentState.incrementAndGet();
                 break;
-            case "modify_background":
-                updateBackground((String) action.get("background"),this);
+            case MODIFY_BACKGROUND:
+                updateBackground(action.background, this);
                 break;
-            case "clear_background":
-                state.clearBackground();
+            case CLEAR_BACKGROUND:
+                clearBackground(this);
                 this.currentState.incrementAndGet();
                 break;
-            case "night_choice":
+            case NIGHT_CHOICE:
                 if (!isDay.get()) {
-                    updateChoices((List<Map<String, Object>>) action.get("choice"), this);
+                    updateChoices(action.choices, this);
                 } else {
                     this.currentState.incrementAndGet();
                 }
                 break;
-            case "unlock_dialogues":
-                Set<String> events = new HashSet<>((List<String>) this.localVariables.getOrDefault("unlocked_events", new ArrayList<>()));
-                events.addAll((List<String>) action.get("events"));
-                this.localVariables.put("unlocked_events", new ArrayList<>(events));
+            case UNLOCK_DIALOGUES:
+                Object unlocked = this.localVariables.get(SlotTable.UNLOCKED_EVENTS);
+                Set<String> events = new LinkedHashSet<>(unlocked instanceof List ? (List<String>) unlocked : List.of());
+                if (action.events != null) {
+                    events.addAll(action.events);
+                }
+                // A fresh list every time, snapshots taken for saving still hold the old one
+                this.localVariables.set(SlotTable.UNLOCKED_EVENTS, List.copyOf(events));
                 this.currentState.incrementAndGet();
                 break;
-            case "play_sound":
-                updateSound(this, (String) action.get("sound"));
-            case "play_music":
-                if(action.get("music")!=null){
-                    updateMusic(this, (String) action.get("music"));
-                }else{
+            case PLAY_SOUND:
+                updateSound(this, action.sound);
+                this.currentState.incrementAndGet();
+                break;
+            case PLAY_MUSIC:
+                if (action.music != null) {
+                    updateMusic(this, action.music);
+                } else {
                     stopMusic(this);
                 }
-
-            case "next":
-                processNext(action,this);
                 this.currentState.incrementAndGet();
                 break;
-            case "idle_chat":
+            case NEXT:
+                processNext(action, this);
+                this.currentState.incrementAndGet();
+                break;
+            case IDLE_CHAT:
                 processIdleChat(this);
                 break;
-            case "finish_dialogue":
+            case CREATE_VAR:
+            case CREATE_GLOBAL:
+            case META:
+                processMeta(action, this);
+                break;
+            case FINISH_DIALOGUE:
                 processFinishing(this);
-            case "check_inventory":
+                break;
             default:
                 this.currentState.incrementAndGet();
                 break;
@@ -173,31 +348,304 @@ public class VNEngine {
 
 
 
+    /**
+     * Runs the whole conversation on the calling thread, parking it whenever the player has to answer.
+     * Meant for a dedicated (virtual) thread, the server thread should use {@link #step()} via the {@link TickScheduler}.
+     */
     public void runEngine() {
-        while (isEngineRunning.get()) { // Infinite loop
-            // Check if engine is running
-            System.out.println(this.currentState);
-            Map<String, Object> action = getDictById(this.currentState.get(),gameData);
-            if(action == null){
-                shutdown.set(true);
-                isEngineRunning.set(false);
-                return;
+        while (true) { // Runs until the script ends or someone stops us
+            switch (step()) {
+                case FINISHED:
+                    return;
+                case WAITING:
+                    // Park (not spin) until the player clicks through or picks a choice
+                    if (!awaitInput()) {
+                        finish();
+                        return;
+                    }
+                    break;
+                default:
+                    break;
             }
-            if ("meta".equals(((Map<?, ?>) action).get("type"))) {
-                processMeta(action,this);
-            } else {
-                processAction(action);
+        }
+    }
+
+    /**
+     * Runs at most one instruction and never blocks.
+     * While the engine waits for the player this just checks whether they answered yet.
+     *
+     * @return Whether the caller can keep stepping, has to wait for the player, or is done with this engine.
+     */
+    public StepResult step() {
+        if (!isEngineRunning.get() || shutdown.get()) {
+            notifyListener(true);
+            return StepResult.FINISHED;
+        }
+
+        if (waitingForInput) {
+            if (!pollInput()) {
+                if (idleTimeoutNanos > 0 && System.nanoTime() - waitingSince > idleTimeoutNanos) {
+                    LOGGER.info("Session {} idled out.", uid);
+                    finish();
+                    return StepResult.FINISHED;
+                }
+                return StepResult.WAITING;
             }
+            waitingForInput = false;
+        }
+
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("Session {} at node {}", uid, currentState.get());
+        }
+        Instruction action = program.at(this.currentState.get());
+        if (action == null) {
+            finish();
+            return StepResult.FINISHED;
+        }
+        boolean waits = waitsForPlayer(action);
+        execute(action);
+        if (waits) {
+            waitingForInput = true;
+            waitingSince = System.nanoTime();
+            saveProgress();
+            notifyListener(false);
+            return StepResult.WAITING;
+        }
+        return StepResult.CONTINUE;
+    }
+
+    private void finish() {
+        shutdown.set(true);
+        isEngineRunning.set(false);
+        saveProgress();
+        notifyListener(true);
+    }
+
+    /**
+     * Hands the variables to the {@link SaveHandler} if they changed. Never touches the disk.
+     * Called whenever the engine stops for the player, which is the only time anyone would notice a lost variable.
+     */
+    private void saveProgress() {
+        long version = localVariables.version();
+        if (version != savedVersion) {
+            savedVersion = version;
+            SaveHandler.saveProgress(this);
+        }
+    }
+
+    private void notifyListener(boolean finished) {
+        StateListener listener = stateListener;
+        if (listener == null) return;
+        if (finished && !finishNotified.compareAndSet(false, true)) return;
+        try {
+            listener.onStateChanged(this, finished);
+        } catch (RuntimeException e) {
+            LOGGER.error("State listener failed", e);
+        }
+    }
+
+    /**
+     * Lets "time" in conditions see the world clock, and sets day / night from it (day is ticks 0-11999).
+     *
+     * @param ticks The level's day time, any multiple of a day is ignored.
+     */
+    public void setTimeOfDay(long ticks) {
+        long time = Math.floorMod(ticks, 24000L);
+        this.timeOfDay.set(time);
+        this.isDay.set(time < 12000);
+    }
+
+    /**
+     * Whether the engine has to stop and wait for the player after this instruction.
+     * Decided before executing, night_choice only shows its choices at night.
+     */
+    private boolean waitsForPlayer(Instruction action) {
+        switch (action.op) {
+            case DIALOGUE:
+            case CHOICE:
+                return true;
+            case NIGHT_CHOICE:
+                return !isDay.get();
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Blocks the engine thread until {@link #advance()} or {@link #buttonPress(String)} is called.
+     * Uses a j.u.c. lock rather than synchronized so a virtual thread unmounts instead of pinning its carrier.
+     *
+     * @return true if input arrived, false on idle timeout, shutdown or interrupt.
+     */
+    public boolean awaitInput() {
+        inputLock.lock();
+        try {
+            long remaining = idleTimeoutNanos > 0 ? idleTimeoutNanos : Long.MAX_VALUE;
+            while (!inputPending && !shutdown.get()) {
+                if (remaining <= 0) {
+                    LOGGER.info("Session {} idled out.", uid);
+                    return false;
+                }
+                remaining = inputArrived.awaitNanos(remaining);
+            }
+            inputPending = false;
+            waitingForInput = false;
+            return !shutdown.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            inputLock.unlock();
+        }
+    }
+
+    /**
+     * Non-blocking version of {@link #awaitInput()}, consumes the input if there is any.
+     */
+    private boolean pollInput() {
+        inputLock.lock();
+        try {
+            if (!inputPending) return false;
+            inputPending = false;
+            return true;
+        } finally {
+            inputLock.unlock();
+        }
+    }
 
+    private void signalInput() {
+        inputLock.lock();
+        try {
+            inputPending = true;
+            inputArrived.signalAll();
+        } finally {
+            inputLock.unlock();
+        }
+    }
+
+    /**
+     * The player clicked through the current line of dialogue.
+     */
+    public void advance() {
+        signalInput();
+    }
+
+    /**
+     * Asks the engine to stop. A parked engine wakes up and exits right away.
+     */
+    public void stop() {
+        shutdown.set(true);
+        isEngineRunning.set(false);
+        signalInput();
+    }
+
+    /**
+     * How long the engine may sit waiting for the player before giving up.
+     *
+     * @param idleTimeoutNanos Timeout in nanoseconds, 0 or less to wait forever.
+     */
+    public void setIdleTimeout(long idleTimeoutNanos) {
+        this.idleTimeoutNanos = idleTimeoutNanos;
+    }
+
+    public void setStateListener(StateListener stateListener) {
+        this.stateListener = stateListener;
+    }
+
+    /**
+     * Where script commands are queued to run on the server thread.
+     */
+    public void setCommandQueue(CommandDispatchQueue commandQueue) {
+        this.commandQueue = commandQueue;
+    }
+
+    private void dispatchCommand(Instruction action) {
+        CommandDispatchQueue queue = commandQueue;
+        String command = action.command;
+        if (queue == null || command == null) return;
+        try {
+            queue.submit(UUID.fromString(uid.toString()), command);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Can't run command for non-player session {}", uid);
         }
     }
 
     public DialogueState getNext() {
-        return this.state;
+        return this.state.get();
+    }
+
+    /**
+     * The player picked a choice. Only one of the choices on screen is taken, and only once:
+     * the choices are cleared by whoever picks first, so a second click (or a made up label) does nothing.
+     *
+     * @param choice The label of the picked choice.
+     * @return Whether the engine took it.
+     */
+    public boolean buttonPress(String choice) {
+        while (true) {
+            DialogueState current = this.state.get();
+            if (!isOnScreen(current.getChoices(), choice)) {
+                LOGGER.warn("Ignoring choice '{}', it isn't on screen for {}", choice, uid);
+                return false;
+            }
+            long labelId = program.labels().resolve(choice);
+            if (labelId == LabelIndex.MISSING) {
+                // Choices are checked at load time, shouldn't happen
+                LOGGER.warn("Ignoring choice for unknown label: {}", choice);
+                return false;
+            }
+            if (this.state.compareAndSet(current, current.withChoices(List.of()))) {
+                this.currentState.set(labelId);
+                signalInput();
+                return true;
+            }
+            // The engine published something in between, look again
+        }
+    }
+
+    private static boolean isOnScreen(List<Map<String, Object>> choices, String label) {
+        if (choices == null || label == null) return false;
+        for (Map<String, Object> choice : choices) {
+            if (label.equals(String.valueOf(choice.get("label")))) return true;
+        }
+        return false;
     }
 
-    public void buttonPress(String choice) {
-        changeStateByLabel(choice,currentState,gameData);
-        this.state.setChoices(new ArrayList<>());
+    /**
+     * The engine's side of a compiled condition. Reads the variable stores and the inventory as they are right now.
+     */
+    private final class ConditionContext implements Context {
+
+        @Override
+        public double number(boolean global, int slot) {
+            return (global ? globalVariables : localVariables).getDouble(slot);
+        }
+
+        @Override
+        public boolean truthy(boolean global, int slot) {
+            return (global ? globalVariables : localVariables).isTruthy(slot);
+        }
+
+        @Override
+        public Object value(boolean global, int slot) {
+            return (global ? globalVariables : localVariables).get(slot);
+        }
+
+        @Override
+        public boolean isDay() {
+            return isDay.get();
+        }
+
+        @Override
+        public double timeOfDay() {
+            long time = timeOfDay.get();
+            return time < 0 ? Double.NaN : time;
+        }
+
+        @Override
+        public int itemCount(int item) {
+            InventoryView inventory = inventoryHandler;
+            return inventory == null ? 0 : inventory.count(item);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,540 @@
+package com.artesparadox.vn.vnEngine.controller;
+
+import com.artesparadox.vn.VisualNovelFramework;
+import com.artesparadox.vn.vnEngine.compiler.SlotTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Script variables, stored by slot (see {@link SlotTable}) in typed arrays instead of a HashMap of boxed objects.
+ *
+ * Numbers are kept as raw longs/doubles, so comparing "money greater_than 10" reads a long and compares it,
+ * without unboxing a Gson Double. Whole numbers from the script become longs, anything with a fraction a double.
+ *
+ * Slots are grouped in chunks of {@value #CHUNK} and every chunk has its own StampedLock, so engines touching
+ * different global variables don't contend, and reads are optimistic (no lock at all unless a write raced them).
+ * That makes one store safe to share, which is what {@link #GLOBALS} is: one set of globals for every player.
+ *
+ * {@link #snapshot()} is copy-on-write: it only marks the chunks as shared, and the next write to a shared chunk
+ * copies it first. Saving a snapshot therefore never blocks the engines for longer than flipping a flag.
+ */
+public final class VariableStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VisualNovelFramework.class);
+
+    /**
+     * Global variables, shared by every engine.
+     */
+    public static final VariableStore GLOBALS = new VariableStore(SlotTable.GLOBALS);
+
+    public static final byte NONE = 0;
+    public static final byte LONG = 1;
+    public static final byte DOUBLE = 2;
+    public static final byte BOOLEAN = 3;
+    public static final byte STRING = 4;
+    public static final byte OBJECT = 5; // lists and whatever else a save hands us
+
+    /**
+     * Returned by {@link #compare(int, Object)} when the two sides aren't both numbers.
+     */
+    public static final int NOT_COMPARABLE = Integer.MIN_VALUE;
+
+    private static final int CHUNK = 32;
+
+    private final SlotTable table;
+    private volatile Chunk[] chunks = new Chunk[0];
+    private final AtomicLong version = new AtomicLong(); // bumped on every write, tells savers whether anything changed
+
+    public VariableStore(SlotTable table) {
+        this.table = table;
+    }
+
+    public SlotTable table() {
+        return table;
+    }
+
+    /**
+     * @return A number that changes whenever a variable is written.
+     */
+    public long version() {
+        return version.get();
+    }
+
+    // --- Slot access, what the engine uses ---
+
+    /**
+     * @return The value as an object (Long, Double, Boolean, String or whatever was stored), or null if unset.
+     */
+    public Object get(int slot) {
+        Chunk chunk = chunkOf(slot, false);
+        if (chunk == null) return null;
+        int i = slot % CHUNK;
+        StampedLock lock = chunk.lock;
+        long stamp = lock.tryOptimisticRead();
+        byte type = chunk.types[i];
+        long bits = chunk.bits[i];
+        Object ref = chunk.refs[i];
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                type = chunk.types[i];
+                bits = chunk.bits[i];
+                ref = chunk.refs[i];
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return box(type, bits, ref);
+    }
+
+    public boolean isSet(int slot) {
+        Chunk chunk = chunkOf(slot, false);
+        if (chunk == null) return false;
+        StampedLock lock = chunk.lock;
+        long stamp = lock.tryOptimisticRead();
+        byte type = chunk.types[slot % CHUNK];
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                type = chunk.types[slot % CHUNK];
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return type != NONE;
+    }
+
+    public void set(int slot, Object value) {
+        if (slot < 0) return;
+        Chunk chunk = chunkOf(slot, true);
+        long stamp = chunk.lock.writeLock();
+        try {
+            chunk.beforeWrite();
+            store(chunk, slot % CHUNK, value);
+            version.incrementAndGet();
+        } finally {
+            chunk.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Sets the value only if the variable doesn't exist yet, which is what create_var / create_global mean:
+     * a global created by one script isn't reset when another player starts it, and saved locals survive.
+     *
+     * @return true if the value was set.
+     */
+    public boolean setIfAbsent(int slot, Object value) {
+        if (slot < 0) return false;
+        Chunk chunk = chunkOf(slot, true);
+        long stamp = chunk.lock.writeLock();
+        try {
+            if (chunk.types[slot % CHUNK] != NONE) return false;
+            chunk.beforeWrite();
+            store(chunk, slot % CHUNK, value);
+            version.incrementAndGet();
+            return true;
+        } finally {
+            chunk.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Read-modify-write in one go, so two engines adding to the same global never lose an update.
+     *
+     * @param action  "set", "add", "subtract", "multiply", "divide" or "toggle".
+     * @param operand The script's value.
+     */
+    public void apply(int slot, String action, Object operand) {
+        if (slot < 0 || action == null) return;
+        Chunk chunk = chunkOf(slot, true);
+        int i = slot % CHUNK;
+        long stamp = chunk.lock.writeLock();
+        try {
+            chunk.beforeWrite();
+            version.incrementAndGet(); // worst case a failed operation costs one needless save
+            byte type = chunk.types[i];
+            long bits = chunk.bits[i];
+            switch (action) {
+                case "set":
+                    store(chunk, i, operand);
+                    return;
+                case "toggle":
+                    chunk.types[i] = BOOLEAN;
+                    chunk.bits[i] = type == BOOLEAN && bits != 0 ? 0 : 1;
+                    chunk.refs[i] = null;
+                    return;
+                default:
+                    break;
+            }
+
+            // Arithmetic, an unset variable counts as 0
+            if (type != NONE && type != LONG && type != DOUBLE) {
+                LOGGER.warn("Can't {} on non-numeric variable {}", action, table.nameOf(slot));
+                return;
+            }
+            byte operandType = typeOf(operand);
+            if (operandType != LONG && operandType != DOUBLE) {
+                LOGGER.warn("Can't {} {} to variable {}", action, operand, table.nameOf(slot));
+                return;
+            }
+            if (type == NONE) {
+                type = LONG;
+                bits = 0;
+            }
+
+            if (type == LONG && operandType == LONG) {
+                long a = bits;
+                long b = ((Number) operand).longValue();
+                switch (action) {
+                    case "add": setLong(chunk, i, a + b); return;
+                    case "subtract": setLong(chunk, i, a - b); return;
+                    case "multiply": setLong(chunk, i, a * b); return;
+                    case "divide":
+                        if (b != 0 && a % b == 0) {
+                            setLong(chunk, i, a / b);
+                            return;
+                        }
+                        break; // falls back to double division below
+                    default:
+                        LOGGER.warn("Unknown variable action: {}", action);
+                        return;
+                }
+            }
+
+            double a = type == LONG ? bits : Double.longBitsToDouble(bits);
+            double b = ((Number) operand).doubleValue();
+            switch (action) {
+                case "add": setDouble(chunk, i, a + b); return;
+                case "subtract": setDouble(chunk, i, a - b); return;
+                case "multiply": setDouble(chunk, i, a * b); return;
+                case "divide": setDouble(chunk, i, a / b); return;
+                default:
+                    LOGGER.warn("Unknown variable action: {}", action);
+            }
+        } finally {
+            chunk.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Equality as the "equal" condition means it: numbers by value (1 equals 1.0), everything else with equals().
+     * An unset variable or a null operand is never equal to anything.
+     */
+    public boolean isEqual(int slot, Object value) {
+        Object current = get(slot);
+        if (current == null || value == null) return false;
+        if (current instanceof Long && (value instanceof Long || value instanceof Integer)) {
+            return (Long) current == ((Number) value).longValue();
+        }
+        if (current instanceof Number && value instanceof Number) {
+            return ((Number) current).doubleValue() == ((Number) value).doubleValue();
+        }
+        return current.equals(value);
+    }
+
+    /**
+     * @return Negative, zero or positive like compareTo, or {@link #NOT_COMPARABLE} if either side isn't a number.
+     */
+    public int compare(int slot, Object value) {
+        Chunk chunk = chunkOf(slot, false);
+        if (chunk == null || !(value instanceof Number)) return NOT_COMPARABLE;
+        int i = slot % CHUNK;
+        StampedLock lock = chunk.lock;
+        long stamp = lock.tryOptimisticRead();
+        byte type = chunk.types[i];
+        long bits = chunk.bits[i];
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                type = chunk.types[i];
+                bits = chunk.bits[i];
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        Number number = (Number) value;
+        if (type == LONG) {
+            if (typeOf(value) == LONG) return Long.compare(bits, number.longValue());
+            return compareDoubles(bits, number.doubleValue());
+        }
+        if (type == DOUBLE) {
+            return compareDoubles(Double.longBitsToDouble(bits), number.doubleValue());
+        }
+        return NOT_COMPARABLE;
+    }
+
+    /**
+     * The variable as a number without boxing it, for compiled conditions. Booleans count as 1 and 0.
+     *
+     * @return The value, or NaN if it's unset or not a number (NaN compares false to everything).
+     */
+    public double getDouble(int slot) {
+        Chunk chunk = chunkOf(slot, false);
+        if (chunk == null) return Double.NaN;
+        int i = slot % CHUNK;
+        StampedLock lock = chunk.lock;
+        long stamp = lock.tryOptimisticRead();
+        byte type = chunk.types[i];
+        long bits = chunk.bits[i];
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                type = chunk.types[i];
+                bits = chunk.bits[i];
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        switch (type) {
+            case LONG: return bits;
+            case DOUBLE: return Double.longBitsToDouble(bits);
+            case BOOLEAN: return bits != 0 ? 1 : 0;
+            default: return Double.NaN;
+        }
+    }
+
+    /**
+     * Whether the variable counts as true in a condition: a true boolean, a number other than 0,
+     * a non-empty string or list. Unset is false.
+     */
+    public boolean isTruthy(int slot) {
+        Chunk chunk = chunkOf(slot, false);
+        if (chunk == null) return false;
+        int i = slot % CHUNK;
+        StampedLock lock = chunk.lock;
+        long stamp = lock.tryOptimisticRead();
+        byte type = chunk.types[i];
+        long bits = chunk.bits[i];
+        Object ref = chunk.refs[i];
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                type = chunk.types[i];
+                bits = chunk.bits[i];
+                ref = chunk.refs[i];
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        switch (type) {
+            case LONG:
+            case BOOLEAN:
+                return bits != 0;
+            case DOUBLE:
+                double d = Double.longBitsToDouble(bits);
+                return d != 0 && !Double.isNaN(d);
+            case STRING:
+                return !((String) ref).isEmpty();
+            case OBJECT:
+                return !(ref instanceof Collection) || !((Collection<?>) ref).isEmpty();
+            default:
+                return false;
+        }
+    }
+
+    private static int compareDoubles(double a, double b) {
+        if (Double.isNaN(a) || Double.isNaN(b)) return NOT_COMPARABLE;
+        return a < b ? -1 : (a > b ? 1 : 0);
+    }
+
+    // --- Name access, for saves and anything not known at compile time ---
+
+    public Object get(String name) {
+        int slot = table.lookup(name);
+        return slot == SlotTable.NONE ? null : get(slot);
+    }
+
+    public void put(String name, Object value) {
+        set(table.slot(name), value);
+    }
+
+    /**
+     * Forgets every variable. Only for a store nobody is running on, like an engine being reset for reuse
+     * or {@link #GLOBALS} before the next world's saves are loaded.
+     * Snapshots taken before keep their values.
+     */
+    public void clear() {
+        synchronized (this) {
+            chunks = new Chunk[0];
+        }
+        version.incrementAndGet();
+    }
+
+    /**
+     * Copies every variable of a save into the store.
+     */
+    public void load(Map<String, Object> values) {
+        if (values == null) return;
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * A frozen view of the store right now. Cheap: no values are copied until someone writes to the store again.
+     */
+    public Snapshot snapshot() {
+        Chunk[] current = chunks;
+        byte[][] types = new byte[current.length][];
+        long[][] bits = new long[current.length][];
+        Object[][] refs = new Object[current.length][];
+        for (int c = 0; c < current.length; c++) {
+            Chunk chunk = current[c];
+            long stamp = chunk.lock.writeLock();
+            try {
+                chunk.shared = true;
+                types[c] = chunk.types;
+                bits[c] = chunk.bits;
+                refs[c] = chunk.refs;
+            } finally {
+                chunk.lock.unlockWrite(stamp);
+            }
+        }
+        return new Snapshot(table, types, bits, refs);
+    }
+
+    /**
+     * Frozen variables, see {@link #snapshot()}.
+     */
+    public static final class Snapshot {
+        private final SlotTable table;
+        private final byte[][] types;
+        private final long[][] bits;
+        private final Object[][] refs;
+
+        private Snapshot(SlotTable table, byte[][] types, long[][] bits, Object[][] refs) {
+            this.table = table;
+            this.types = types;
+            this.bits = bits;
+            this.refs = refs;
+        }
+
+        /**
+         * @return Every set variable by name, in slot order.
+         */
+        public Map<String, Object> toMap() {
+            Map<String, Object> values = new LinkedHashMap<>();
+            for (int c = 0; c < types.length; c++) {
+                for (int i = 0; i < CHUNK; i++) {
+                    if (types[c][i] == NONE) continue;
+                    String name = table.nameOf(c * CHUNK + i);
+                    if (name != null) {
+                        values.put(name, box(types[c][i], bits[c][i], refs[c][i]));
+                    }
+                }
+            }
+            return Collections.unmodifiableMap(values);
+        }
+    }
+
+    // --- Internals ---
+
+    private static final class Chunk {
+        final StampedLock lock = new StampedLock();
+        byte[] types = new byte[CHUNK];
+        long[] bits = new long[CHUNK];
+        Object[] refs = new Object[CHUNK];
+        boolean shared; // a snapshot points at the arrays, copy before writing
+
+        void beforeWrite() {
+            if (shared) {
+                types = types.clone();
+                bits = bits.clone();
+                refs = refs.clone();
+                shared = false;
+            }
+        }
+    }
+
+    private Chunk chunkOf(int slot, boolean create) {
+        if (slot < 0) return null;
+        int index = slot / CHUNK;
+        Chunk[] current = chunks;
+        if (index < current.length) return current[index];
+        if (!create) return null;
+        synchronized (this) {
+            current = chunks;
+            if (index >= current.length) {
+                Chunk[] grown = Arrays.copyOf(current, index + 1);
+                for (int c = current.length; c < grown.length; c++) {
+                    grown[c] = new Chunk();
+                }
+                chunks = grown;
+                current = grown;
+            }
+            return current[index];
+        }
+    }
+
+    private static void store(Chunk chunk, int i, Object value) {
+        byte type = typeOf(value);
+        chunk.types[i] = type;
+        switch (type) {
+            case LONG:
+                chunk.bits[i] = ((Number) value).longValue();
+                chunk.refs[i] = null;
+                break;
+            case DOUBLE:
+                chunk.bits[i] = Double.doubleToRawLongBits(((Number) value).doubleValue());
+                chunk.refs[i] = null;
+                break;
+            case BOOLEAN:
+                chunk.bits[i] = (Boolean) value ? 1 : 0;
+                chunk.refs[i] = null;
+                break;
+            case NONE:
+                chunk.bits[i] = 0;
+                chunk.refs[i] = null;
+                break;
+            default:
+                chunk.bits[i] = 0;
+                chunk.refs[i] = value;
+                break;
+        }
+    }
+
+    private static void setLong(Chunk chunk, int i, long value) {
+        chunk.types[i] = LONG;
+        chunk.bits[i] = value;
+        chunk.refs[i] = null;
+    }
+
+    private static void setDouble(Chunk chunk, int i, double value) {
+        chunk.types[i] = DOUBLE;
+        chunk.bits[i] = Double.doubleToRawLongBits(value);
+        chunk.refs[i] = null;
+    }
+
+    /**
+     * Gson gives us Doubles for everything, a Double without a fraction is stored as a long.
+     */
+    static byte typeOf(Object value) {
+        if (value == null) return NONE;
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) return LONG;
+        if (value instanceof Number) {
+            double d = ((Number) value).doubleValue();
+            return d == Math.rint(d) && !Double.isInfinite(d) && Math.abs(d) < 0x1p53 ? LONG : DOUBLE;
+        }
+        if (value instanceof Boolean) return BOOLEAN;
+        if (value instanceof String) return STRING;
+        return OBJECT;
+    }
+
+    private static Object box(byte type, long bits, Object ref) {
+        switch (type) {
+            case LONG: return bits;
+            case DOUBLE: return Double.longBitsToDouble(bits);
+            case BOOLEAN: return bits != 0;
+            case NONE: return null;
+            default: return ref;
+        }
+    }
+}
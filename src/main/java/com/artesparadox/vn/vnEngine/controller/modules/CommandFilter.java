@@ -0,0 +1,120 @@
+package com.artesparadox.vn.vnEngine.controller.modules;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Which commands scripts may run, compiled once from the whitelist and blacklist in the config.
+ *
+ * Rules are command prefixes split into words ("gamerule", "gamerule doDaylightCycle", "op"), stored in a trie
+ * keyed by word. Checking a command walks it word by word and the deepest rule on the way decides, so
+ * "gamerule" can be whitelisted while "gamerule doImmediateRespawn" stays blacklisted.
+ * With an empty whitelist everything not blacklisted is allowed, otherwise only whitelisted commands are.
+ *
+ * Roots are matched without the leading slash and the "minecraft:" namespace, in lower case.
+ * "execute ... run &lt;command&gt;" is checked again for the command after "run", otherwise
+ * "execute run op" would walk straight past the blacklist.
+ */
+public final class CommandFilter {
+
+    /**
+     * Why a command was or wasn't allowed.
+     */
+    public enum Verdict {
+        ALLOWED,
+        BLACKLISTED,
+        NOT_WHITELISTED
+    }
+
+    private static final byte NO_RULE = 0;
+    private static final byte ALLOW = 1;
+    private static final byte DENY = 2;
+
+    // How deep "execute run execute run ..." is followed before giving up and refusing
+    private static final int MAX_NESTING = 8;
+
+    private final Node root = new Node();
+    private final boolean whitelistOnly;
+
+    private CommandFilter(boolean whitelistOnly) {
+        this.whitelistOnly = whitelistOnly;
+    }
+
+    /**
+     * @param whitelist Command prefixes that may run. Empty to allow everything that isn't blacklisted.
+     * @param blacklist Command prefixes that may never run. Wins over a whitelist rule of the same length.
+     */
+    public static CommandFilter compile(String[] whitelist, String[] blacklist) {
+        CommandFilter filter = new CommandFilter(whitelist != null && whitelist.length > 0);
+        if (whitelist != null) {
+            for (String rule : whitelist) filter.add(rule, ALLOW);
+        }
+        if (blacklist != null) {
+            for (String rule : blacklist) filter.add(rule, DENY);
+        }
+        return filter;
+    }
+
+    private void add(String rule, byte verdict) {
+        String[] words = split(rule);
+        if (words.length == 0) return;
+        Node node = root;
+        for (int i = 0; i < words.length; i++) {
+            node = node.children.computeIfAbsent(normalize(words[i], i == 0), w -> new Node());
+        }
+        if (node.rule != DENY) { // A blacklist entry is never weakened by a whitelist entry for the same prefix
+            node.rule = verdict;
+        }
+    }
+
+    public Verdict check(String command) {
+        return check(split(command), 0, 0);
+    }
+
+    private Verdict check(String[] words, int start, int depth) {
+        if (start >= words.length) return whitelistOnly ? Verdict.NOT_WHITELISTED : Verdict.ALLOWED;
+        if (depth > MAX_NESTING) return Verdict.BLACKLISTED;
+
+        byte decided = NO_RULE;
+        Node node = root;
+        for (int i = start; i < words.length && node != null; i++) {
+            node = node.children.get(normalize(words[i], i == start));
+            if (node != null && node.rule != NO_RULE) {
+                decided = node.rule;
+            }
+        }
+        if (decided == DENY) return Verdict.BLACKLISTED;
+        if (decided == NO_RULE && whitelistOnly) return Verdict.NOT_WHITELISTED;
+
+        // The execute wrapper has to pass on its own, and so does whatever it runs
+        if ("execute".equals(normalize(words[start], true))) {
+            for (int i = start + 1; i < words.length; i++) {
+                if ("run".equals(words[i])) {
+                    return check(words, i + 1, depth + 1);
+                }
+            }
+        }
+        return Verdict.ALLOWED;
+    }
+
+    private static String[] split(String command) {
+        if (command == null) return new String[0];
+        String trimmed = command.trim();
+        if (trimmed.startsWith("/")) trimmed = trimmed.substring(1);
+        return trimmed.isEmpty() ? new String[0] : trimmed.split("\\s+");
+    }
+
+    private static String normalize(String word, boolean isRoot) {
+        String lower = word.toLowerCase(Locale.ROOT);
+        if (isRoot && lower.startsWith("minecraft:")) {
+            lower = lower.substring("minecraft:".length());
+        }
+        return lower;
+    }
+
+    private static final class Node {
+        final Map<String, Node> children = new HashMap<>(4);
+        byte rule = NO_RULE;
+    }
+}
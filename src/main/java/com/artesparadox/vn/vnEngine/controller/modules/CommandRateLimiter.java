@@ -0,0 +1,79 @@
+package com.artesparadox.vn.vnEngine.controller.modules;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket per player, done as GCRA: instead of a token count and a refill timer, each player only has the
+ * time at which their bucket would be full again ("theoretical arrival time"). A command pushes that time one
+ * interval further, and is refused if that would put it more than a full burst ahead of now.
+ *
+ * That's a single long per player, updated with a CAS, so no locks and nothing to refill in the background.
+ * A player whose time is in the past has a full bucket, which is the same as having no entry at all,
+ * so those entries are swept out now and then and the map only holds players who were busy recently.
+ */
+public final class CommandRateLimiter {
+
+    // Sweep idle players on about one call in this many
+    private static final int SWEEP_EVERY = 1024;
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final Map<UUID, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * @param perSecond How many commands a player may run per second on average.
+     * @param burst     How many commands a player may run back to back after being quiet.
+     */
+    public CommandRateLimiter(double perSecond, int burst) {
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / perSecond));
+        this.burstNanos = intervalNanos * Math.max(1, burst);
+    }
+
+    /**
+     * Takes a token for the player if there is one.
+     *
+     * @return true if the command may run, false if the player has to slow down.
+     */
+    public boolean tryAcquire(UUID player) {
+        return tryAcquire(player, System.nanoTime());
+    }
+
+    boolean tryAcquire(UUID player, long now) {
+        // Random instead of a shared counter, which every player's thread would fight over
+        if (ThreadLocalRandom.current().nextInt(SWEEP_EVERY) == 0) {
+            sweep(now);
+        }
+
+        AtomicLong bucket = buckets.computeIfAbsent(player, p -> new AtomicLong(now));
+        while (true) {
+            long tat = bucket.get();
+            long next = Math.max(tat, now) + intervalNanos;
+            if (next - now > burstNanos) {
+                return false;
+            }
+            if (bucket.compareAndSet(tat, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Drops every player whose bucket is full again. A command racing the removal gets counted against a
+     * bucket that's then thrown away, which at worst lets one extra command through.
+     */
+    public void sweep(long now) {
+        buckets.entrySet().removeIf(entry -> entry.getValue().get() - now <= 0);
+    }
+
+    /**
+     * @return How many players currently have a bucket that isn't full.
+     */
+    public int trackedPlayers() {
+        return buckets.size();
+    }
+}
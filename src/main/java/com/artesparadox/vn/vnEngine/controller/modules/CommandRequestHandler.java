@@ -1,10 +1,43 @@
 package com.artesparadox.vn.vnEngine.controller.modules;
 
+import com.artesparadox.vn.vnEngine.dataclass.Const;
+import com.artesparadox.vn.vnEngine.metrics.Metrics;
 import net.minecraft.network.chat.Component;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerPlayer;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
 public class CommandRequestHandler {
+
+    // Both rebuilt from the config (Config) when it's loaded or edited, checks are a trie walk and a CAS.
+    // The Const defaults until then
+    private static volatile CommandFilter filter = CommandFilter.compile(Const.COMMAND_WHITELIST, Const.COMMAND_BLACKLIST);
+    private static volatile CommandRateLimiter limiter = new CommandRateLimiter(Const.COMMAND_RATE_PER_SECOND, Const.COMMAND_BURST);
+
+    // What happened to the commands scripts asked for, see stats() and /api/metrics
+    private static final String RESULTS_HELP = "Commands scripts asked to run, by what happened to them";
+    private static final LongAdder ACCEPTED = Metrics.counter("vn_script_commands_total", RESULTS_HELP, "result", "accepted");
+    private static final LongAdder REJECTED_BLACKLISTED = Metrics.counter("vn_script_commands_total", RESULTS_HELP, "result", "blacklisted");
+    private static final LongAdder REJECTED_NOT_WHITELISTED = Metrics.counter("vn_script_commands_total", RESULTS_HELP, "result", "not_whitelisted");
+    private static final LongAdder REJECTED_PERMISSION = Metrics.counter("vn_script_commands_total", RESULTS_HELP, "result", "no_permission");
+    private static final LongAdder REJECTED_RATE_LIMITED = Metrics.counter("vn_script_commands_total", RESULTS_HELP, "result", "rate_limited");
+
+    /**
+     * Swaps in a new filter and rate limiter. Rate limits start over, every player gets a full burst again.
+     *
+     * @param whitelist Command prefixes scripts may run, empty to allow everything that isn't blacklisted.
+     * @param blacklist Command prefixes scripts may never run.
+     * @param perSecond Commands per second a player's scripts may run on average.
+     * @param burst     Commands a player's scripts may run back to back.
+     */
+    public static void configure(String[] whitelist, String[] blacklist, double perSecond, int burst) {
+        filter = CommandFilter.compile(whitelist, blacklist);
+        limiter = new CommandRateLimiter(perSecond, burst);
+    }
+
     public static boolean handleCommandRequest(ServerPlayer player, String command) {
         MinecraftServer server = player.getServer();
 
@@ -16,42 +49,39 @@ public class CommandRequestHandler {
 
         if (isSinglePlayer) {
             // Single player - just run the command with full permissions
+            ACCEPTED.increment();
             return ForgeCommandRunner.runCommand(server, command);
         }
 
         // Multiplayer validation
-        if (!isCommandAllowed(command)) {
-            // Command not in whitelist
+        CommandFilter.Verdict verdict = filter.check(command);
+        if (verdict != CommandFilter.Verdict.ALLOWED) {
+            // Blacklisted, or not in the whitelist
+            (verdict == CommandFilter.Verdict.BLACKLISTED ? REJECTED_BLACKLISTED : REJECTED_NOT_WHITELISTED).increment();
             player.sendSystemMessage(Component.literal("This command is not allowed!"));
             return false;
         }
 
         if (!hasPermission(player)) {
             // Player doesn't have permission
+            REJECTED_PERMISSION.increment();
             player.sendSystemMessage(Component.literal("You don't have permission to use visual novel commands!"));
             return false;
         }
 
         // Rate limiting check
         if (isRateLimited(player)) {
+            REJECTED_RATE_LIMITED.increment();
             player.sendSystemMessage(Component.literal("Please wait before using another command!"));
             return false;
         }
 
         // If we get here, command is allowed - run it with appropriate permission level
         // Note: You might want to run with player's actual permission level instead of level 4
+        ACCEPTED.increment();
         return ForgeCommandRunner.runCommand(server, command);
     }
 
-    private static boolean isCommandAllowed(String command) {
-        // Example validation - you should implement your own logic
-        // Maybe check against a config-defined whitelist
-        // Maybe block dangerous commands like /op, /stop, etc.
-        return !command.startsWith("/op") &&
-                !command.startsWith("/stop") &&
-                !command.startsWith("/ban");
-    }
-
     private static boolean hasPermission(ServerPlayer player) {
         // Example permission check
         // Could check against your mod's permission system
@@ -60,9 +90,21 @@ public class CommandRequestHandler {
     }
 
     private static boolean isRateLimited(ServerPlayer player) {
-        // Implement rate limiting logic
-        // Could track last command time per player
-        // Return true if player is sending too many commands
-        return false; // Simplified for example
+        // Token bucket per player, burst back to back, then ratePerSecond
+        return !limiter.tryAcquire(player.getUUID());
+    }
+
+    /**
+     * @return Accepted and rejected command counts since the server started, by reason.
+     */
+    public static Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("accepted", ACCEPTED.sum());
+        stats.put("rejectedBlacklisted", REJECTED_BLACKLISTED.sum());
+        stats.put("rejectedNotWhitelisted", REJECTED_NOT_WHITELISTED.sum());
+        stats.put("rejectedPermission", REJECTED_PERMISSION.sum());
+        stats.put("rejectedRateLimited", REJECTED_RATE_LIMITED.sum());
+        stats.put("rateLimitedPlayers", limiter.trackedPlayers());
+        return stats;
     }
 }
@@ -1,127 +1,177 @@
 package com.artesparadox.vn.vnEngine.controller.modules;
 
-import java.util.ArrayList;
+import com.artesparadox.vn.VisualNovelFramework;
+import com.artesparadox.vn.vnEngine.compiler.Instruction;
+import com.artesparadox.vn.vnEngine.compiler.LabelIndex;
+import com.artesparadox.vn.vnEngine.compiler.SlotTable;
+import com.artesparadox.vn.vnEngine.controller.VNEngine;
+import com.artesparadox.vn.vnEngine.controller.VariableStore;
+import com.artesparadox.vn.vnEngine.dataclass.DialogueState;
+import com.artesparadox.vn.vnEngine.dataclass.SpriteState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
 
 public class DialogueHandler {
-    public static void processConditional(Map<String, Object> condition, VisualNovelEngine vn) {
-        String conditionType = (String) condition.get("condition");
-        boolean result = false;
-
-        Object var = vn.localVariables.get(condition.get("var"));
-        Object value = condition.get("value");
-        long end = (long) condition.get("end");
-
-        switch (conditionType) {
-            case "equal":
-                result = (var != null && value != null) &&
-                        ((var instanceof Number && value instanceof Number)
-                                ? ((Number) var).doubleValue() == ((Number) value).doubleValue()
-                                : var.equals(value));
-                break;
-            case "not_equal":
-                result = (var == null || value == null) ||
-                        ((var instanceof Number && value instanceof Number)
-                                ? ((Number) var).doubleValue() != ((Number) value).doubleValue()
-                                : !var.equals(value));
-                break;
-            case "less_than":
-                result = (var instanceof Number && value instanceof Number) && ((Number) var).doubleValue() < ((Number) value).doubleValue();
-                break;
-            case "greater_than":
-                result = (var instanceof Number && value instanceof Number) && ((Number) var).doubleValue() > ((Number) value).doubleValue();
-                break;
-            case "night":
-                result = !vn.isDay.get();
-                break;
-            case "day":
-                result = vn.isDay.get();
-                break;
-        }
 
-        vn.currentState.set(result ? vn.currentState.incrementAndGet() : end);
+    // VisualNovelFramework.LOGGER, see VNEngine
+    private static final Logger LOGGER = LoggerFactory.getLogger(VisualNovelFramework.class);
+
+    /**
+     * conditional, conditional_global and check_inventory. The test was compiled with the script, see Instruction.predicate.
+     */
+    public static void processConditional(Instruction condition, VNEngine vn) {
+        vn.currentState.set(condition.predicate.test(vn.conditionContext) ? condition.id + 1 : condition.end);
     }
 
-    public static void processGlobalConditional(Map<String, Object> condition, VisualNovelEngine vn) {
-        String conditionType = (String) condition.get("condition");
-        boolean result = false;
+    public static void processJump(Instruction action, VNEngine vn) {
+        // Target was resolved when the script was compiled, missing labels were reported back then
+        jumpTo(action.target, action.label, vn);
+    }
 
-        Object var = vn.globalVariables.get(condition.get("var"));
-        Object value = condition.get("value");
-        long end = (long) condition.get("end");
+    /**
+     * Moves the engine to just after a label node.
+     * An unknown label ends the conversation instead of wandering off to state 0.
+     */
+    public static void jumpTo(long labelId, String label, VNEngine vn) {
+        if (labelId == LabelIndex.MISSING) {
+            LOGGER.warn("Unknown label '{}', ending dialogue.", label);
+            vn.currentState.set(LabelIndex.MISSING);
+            return;
+        }
+        vn.currentState.set(labelId);
+        vn.currentState.incrementAndGet(); //TO-DO: Figure out if this is necessary (Update: Yes It Is)
+    }
 
-        switch (conditionType) {
-            case "equal":
-                result = (var != null && value != null) &&
-                        ((var instanceof Number && value instanceof Number)
-                                ? ((Number) var).doubleValue() == ((Number) value).doubleValue()
-                                : var.equals(value));
-                break;
-            case "not_equal":
-                result = (var == null || value == null) ||
-                        ((var instanceof Number && value instanceof Number)
-                                ? ((Number) var).doubleValue() != ((Number) value).doubleValue()
-                                : !var.equals(value));
-                break;
-            case "less_than":
-                result = (var instanceof Number && value instanceof Number) && ((Number) var).doubleValue() < ((Number) value).doubleValue();
+    public static void processMeta(Instruction action, VNEngine vn) {
+        switch (action.op) {
+            case CREATE_VAR:
+                createVariable(action, vn.localVariables, vn.currentState);
                 break;
-            case "greater_than":
-                result = (var instanceof Number && value instanceof Number) && ((Number) var).doubleValue() > ((Number) value).doubleValue();
+            case CREATE_GLOBAL:
+                createVariable(action, vn.globalVariables, vn.currentState);
                 break;
-            case "night":
-                result = !vn.isDay.get();
-                break;
-            case "day":
-                result = vn.isDay.get();
+            default:
+                vn.currentState.incrementAndGet();
                 break;
         }
-
-        vn.currentState.set(result ? vn.currentState.incrementAndGet() : end);
     }
 
-    public static void processJump(Map<String, Object> action, VisualNovelEngine vn) {
-        vn.currentState.set(findLabelId((String) action.get("label"),vn.gameData));
-        vn.currentState.incrementAndGet(); //TO-DO: Figure out if this is necessary (Update: Yes It Is)
+    /**
+     * create_var / create_global. Only sets the initial value if the variable doesn't exist yet,
+     * so loaded saves and globals another player already changed aren't reset.
+     */
+    public static void createVariable(Instruction action, VariableStore variables, AtomicLong currentState) {
+        if (action.slot == SlotTable.NONE) {
+            LOGGER.warn("create_var without a var at node {}", action.id);
+        } else {
+            variables.setIfAbsent(action.slot, action.init);
+        }
+        currentState.incrementAndGet();
     }
 
-    public static void processMeta(Map<String, Object> action,VisualNovelEngine vn) {
-        String actionType = (String) action.get("action");
-        if ("create_var".equals(actionType)) {
-            createVariable((String) action.get("var"), action.get("init"),vn.localVariables,vn.currentState);
-        }
-        else if("create_global".equals(actionType)){
-            createVariable((String) action.get("var"), action.get("init"),vn.globalVariables,vn.currentState);
-        }else {
-            vn.currentState.incrementAndGet();
+    /**
+     * modify_variable / modify_global. The whole read-modify-write happens under the store's lock,
+     * two engines adding to the same global can't lose an update.
+     */
+    public static void modifyVariable(Instruction action, VariableStore variables, AtomicLong currentState) {
+        if (action.slot == SlotTable.NONE) {
+            LOGGER.warn("modify_variable without a var at node {}", action.id);
+        } else {
+            variables.apply(action.slot, action.action, action.value);
         }
+        currentState.incrementAndGet();
+    }
+
+    /**
+     * finish_dialogue, or idle chat with nothing unlocked. Moves the engine off the script, so its next step
+     * ends the conversation the same way running past the last node does (saved, listener told, session released).
+     */
+    public static void processFinishing(VNEngine vn) {
+        vn.currentState.set(LabelIndex.MISSING);
     }
 
-    public static void processNext(Map<String, Object> action,VisualNovelEngine vn) {
-        vn.localVariables.put("checkpoint",action.get("label"));
+    public static void processNext(Instruction action, VNEngine vn) {
+        vn.localVariables.set(SlotTable.CHECKPOINT, action.label);
     }
 
     public static void processIdleChat(
-            VisualNovelEngine vn
+            VNEngine vn
     ){
-        // Alright, Null Handling Time
-        // Fuck...
-        //System.out.println(vn.globalVariables.get("unlocked_events"));
-        List<String> chats = (List<String>) vn.localVariables.getOrDefault("unlocked_events", new ArrayList<>());
+        Object unlocked = vn.localVariables.get(SlotTable.UNLOCKED_EVENTS);
+        // Whatever the save put in there, only the picked one needs to be a string
+        List<?> chats = unlocked instanceof List<?> list ? list : List.of();
         if (!chats.isEmpty()) {
-
-            Random random = new Random();
-            String chat = chats.get(random.nextInt(chats.size()));
-            System.out.println(chat);
-            vn.currentState.set(findLabelId(chat,vn.gameData));
-            vn.currentState.incrementAndGet();
+            String chat = String.valueOf(chats.get(ThreadLocalRandom.current().nextInt(chats.size())));
+            LOGGER.debug("Session {} picked idle chat {}", vn.uid, chat);
+            jumpTo(vn.program.labels().resolve(chat), chat, vn);
         } else {
             processFinishing(vn);
         }
 
     }
 
+    // --- Screen updates ---
+    // The state is immutable, each of these publishes a new one. updateAndGet because buttonPress
+    // clears the choices from a web thread while the engine may be writing too.
+
+    private static void publish(VNEngine vn, UnaryOperator<DialogueState> change) {
+        vn.state.updateAndGet(change);
+    }
+
+    public static void updateDialogue(String label, String content, String voice, VNEngine vn) {
+        publish(vn, s -> {
+            DialogueState next = s.withLabel(label).withContent(content);
+            return voice != null ? next.withSound(voice) : next;
+        });
+        vn.currentState.incrementAndGet();
+    }
+
+    public static void updateSprite(Instruction action, VNEngine vn) {
+        SpriteState sprite = action.spriteState;
+        if (sprite != null) {
+            publish(vn, s -> s.withSprite(sprite));
+        }
+        vn.currentState.incrementAndGet();
+    }
+
+    public static void removeSprite(String folder, VNEngine vn) {
+        publish(vn, s -> s.withoutSprite(folder));
+        vn.currentState.incrementAndGet();
+    }
+
+    public static void updateChoices(List<Map<String, Object>> choices, VNEngine vn) {
+        // No increment, buttonPress moves the engine to whatever label got picked
+        publish(vn, s -> s.withChoices(choices));
+    }
 
-}
\ No newline at end of file
+    public static void updateCommand(Instruction action, VNEngine vn) {
+        publish(vn, s -> s.withCommand(action.command));
+    }
+
+    public static void updateBackground(String background, VNEngine vn) {
+        publish(vn, s -> s.withBackground(background));
+        vn.currentState.incrementAndGet();
+    }
+
+    public static void clearBackground(VNEngine vn) {
+        publish(vn, DialogueState::clearBackground);
+    }
+
+    public static void updateSound(VNEngine vn, String sound) {
+        publish(vn, s -> s.withSound(sound));
+    }
+
+    public static void updateMusic(VNEngine vn, String music) {
+        publish(vn, s -> s.withMusic(music));
+    }
+
+    public static void stopMusic(VNEngine vn) {
+        publish(vn, s -> s.withMusic(null));
+    }
+}
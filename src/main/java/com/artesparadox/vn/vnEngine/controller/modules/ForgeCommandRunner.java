@@ -0,0 +1,140 @@
+package com.artesparadox.vn.vnEngine.controller.modules;
+
+import com.artesparadox.vn.VisualNovelFramework;
+import com.artesparadox.vn.vnEngine.dataclass.Const;
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.ParseResults;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.server.MinecraftServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs script commands through the server's Brigadier dispatcher.
+ *
+ * Scripts run the same few command strings over and over, so the parsed form ({@link ParseResults}) is cached
+ * by command string and only the execution happens every time. The cache is dropped whenever the dispatcher
+ * changes (a /reload rebuilds it), since old parse results point into the old command tree.
+ *
+ * Server thread only: the cache isn't synchronized and commands must run there anyway.
+ */
+public class ForgeCommandRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VisualNovelFramework.class);
+
+    private static final Map<String, ParseResults<CommandSourceStack>> PARSED = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ParseResults<CommandSourceStack>> eldest) {
+            return size() > Const.COMMAND_PARSE_CACHE_SIZE;
+        }
+    };
+    private static CommandDispatcher<CommandSourceStack> parsedWith;
+
+    private static final LongAdder CACHE_HITS = new LongAdder();
+    private static final LongAdder CACHE_MISSES = new LongAdder();
+    private static final LongAdder FAILED = new LongAdder();
+
+    // Execution time by command root ("give", "time", ...), capped so odd scripts can't grow it forever
+    private static final int MAX_TIMED_ROOTS = 128;
+    private static final Map<String, Timing> TIMINGS = new ConcurrentHashMap<>();
+
+    /**
+     * Parses (or takes from the cache) and runs a command as the server, with full permissions.
+     *
+     * @param command The command, with or without the leading slash.
+     * @return false if the command doesn't parse, true once it was handed to the dispatcher.
+     */
+    public static boolean runCommand(MinecraftServer server, String command) {
+        String line = command.startsWith("/") ? command.substring(1) : command;
+        long start = System.nanoTime();
+
+        ParseResults<CommandSourceStack> parsed = parse(server, line);
+        if (!parsed.getExceptions().isEmpty() || parsed.getReader().canRead()) {
+            FAILED.increment();
+            LOGGER.warn("Script command doesn't parse: /{}", line);
+            return false;
+        }
+
+        // Errors while running are reported to the source by the dispatcher itself
+        server.getCommands().performCommand(parsed, line);
+        time(line, System.nanoTime() - start);
+        return true;
+    }
+
+    private static ParseResults<CommandSourceStack> parse(MinecraftServer server, String line) {
+        CommandDispatcher<CommandSourceStack> dispatcher = server.getCommands().getDispatcher();
+        if (dispatcher != parsedWith) {
+            PARSED.clear();
+            parsedWith = dispatcher;
+        }
+        ParseResults<CommandSourceStack> parsed = PARSED.get(line);
+        if (parsed != null) {
+            CACHE_HITS.increment();
+            return parsed;
+        }
+        CACHE_MISSES.increment();
+        parsed = dispatcher.parse(line, server.createCommandSourceStack());
+        PARSED.put(line, parsed);
+        return parsed;
+    }
+
+    private static void time(String line, long nanos) {
+        int space = line.indexOf(' ');
+        String root = (space < 0 ? line : line.substring(0, space)).toLowerCase(Locale.ROOT);
+        Timing timing = TIMINGS.get(root);
+        if (timing == null) {
+            if (TIMINGS.size() >= MAX_TIMED_ROOTS) root = "other";
+            timing = TIMINGS.computeIfAbsent(root, r -> new Timing());
+        }
+        timing.record(nanos);
+    }
+
+    /**
+     * @return Parse cache hit rate and execution time per command root. Safe to call from any thread,
+     * the numbers may just be a tick old.
+     */
+    public static Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("parseCacheHits", CACHE_HITS.sum());
+        stats.put("parseCacheMisses", CACHE_MISSES.sum());
+        stats.put("parseFailures", FAILED.sum());
+        Map<String, Object> timings = new TreeMap<>();
+        for (Map.Entry<String, Timing> entry : TIMINGS.entrySet()) {
+            timings.put(entry.getKey(), entry.getValue().toMap());
+        }
+        stats.put("latency", timings);
+        return stats;
+    }
+
+    /**
+     * Count, total and worst execution time of one command root.
+     */
+    private static final class Timing {
+        private volatile long count;
+        private volatile long totalNanos;
+        private volatile long maxNanos;
+
+        // Only the server thread writes, readers just want a rough picture
+        void record(long nanos) {
+            count = count + 1;
+            totalNanos = totalNanos + nanos;
+            if (nanos > maxNanos) maxNanos = nanos;
+        }
+
+        Map<String, Object> toMap() {
+            long n = count;
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("count", n);
+            map.put("avgMicros", n == 0 ? 0.0 : totalNanos / 1000.0 / n);
+            map.put("maxMicros", maxNanos / 1000.0);
+            return map;
+        }
+    }
+}
@@ -22,6 +22,175 @@ public final class Const {
      */
     public static final String SCRIPTS_SUBDIR = "script";
 
+    /**
+     * The binary, precompiled copy of the scripts. Lives next to the script directory.
+     */
+    public static final String SCRIPT_CACHE_FILE = "script.cache";
+
+    /**
+     * The sub-directory path for the players' saved progress.
+     */
+    public static final String SAVES_SUBDIR = "saves";
+
+    /**
+     * How often changed progress is written to disk, in milliseconds. A crash loses at most this much.
+     */
+    public static final long SAVE_FLUSH_INTERVAL_MS = 2000;
+
+    /**
+     * Once the save log is bigger than this, everything is rewritten into one snapshot file and the log starts over.
+     */
+    public static final long SAVE_COMPACT_BYTES = 4L * 1024 * 1024;
+
+    /**
+     * How many conversations may run at the same time across all players.
+     */
+    public static final int MAX_CONCURRENT_SESSIONS = 4096;
+
+    /**
+     * How long a conversation may wait on a player before it is closed.
+     */
+    public static final long SESSION_IDLE_TIMEOUT_SECONDS = 600;
+
+    /**
+     * When true, conversations are stepped on the server thread once per tick instead of each running on its own thread.
+     */
+    public static final boolean SESSIONS_ON_SERVER_TICK = true;
+
+    /**
+     * How many finished engines are kept around to be reset and reused, one per player and script.
+     */
+    public static final int ENGINE_POOL_MAX_IDLE = 512;
+
+    /**
+     * How long a finished engine is kept for reuse before it is dropped.
+     */
+    public static final long ENGINE_POOL_IDLE_TTL_SECONDS = 300;
+
+    /**
+     * Every how many ticks a player's inventory is compared against what scripts see, even without an inventory event.
+     * Catches what no event reports, like /give, /clear or other mods moving items.
+     */
+    public static final int INVENTORY_RESYNC_TICKS = 20;
+
+    /**
+     * How many instructions one conversation may run per server tick before it has to wait for the next one.
+     */
+    public static final int TICK_STEPS_PER_SESSION = 32;
+
+    /**
+     * How much of every 50ms server tick all conversations together may use, in microseconds.
+     */
+    public static final long TICK_BUDGET_MICROS = 2000;
+
+    /**
+     * The port the web UI and API are served on.
+     */
+    public static final int WEB_PORT = 8080;
+
+    /**
+     * Where players reach the web UI, used for the link they get in chat when a conversation starts.
+     * Empty means http://localhost:WEB_PORT, which is right for singleplayer. Default of web.publicUrl in the server config.
+     */
+    public static final String WEB_PUBLIC_URL = "";
+
+    /**
+     * How many incoming connections the OS may hold for the web server before it starts refusing them.
+     */
+    public static final int WEB_BACKLOG = 128;
+
+    /**
+     * Header (or ?token= query parameter) the browser sends its session token in, see SessionManager#token.
+     * Every /api/session route is refused without it.
+     */
+    public static final String WEB_SESSION_TOKEN_HEADER = "X-VN-Session-Token";
+
+    /**
+     * "virtual" for one virtual thread per request, "bounded" for a fixed pool with a bounded queue.
+     * Default of web.executor in the server config, the worker and queue sizes below are read from there too.
+     */
+    public static final String WEB_EXECUTOR = "virtual";
+
+    /**
+     * Worker threads of the "bounded" web executor.
+     */
+    public static final int WEB_WORKER_THREADS = 16;
+
+    /**
+     * Requests the "bounded" web executor queues before the dispatcher thread has to run them itself.
+     */
+    public static final int WEB_QUEUE_CAPACITY = 256;
+
+    /**
+     * How often open dialogue streams get a keep-alive line, in seconds.
+     */
+    public static final long SSE_HEARTBEAT_SECONDS = 15;
+
+    /**
+     * How many dialogue streams (browser tabs) a single player may have open.
+     */
+    public static final int SSE_MAX_CLIENTS_PER_PLAYER = 4;
+
+    /**
+     * How many recent dialogue state versions are kept per player, so a client that is a few updates behind
+     * still gets a delta instead of the full state.
+     */
+    public static final int STATE_HISTORY_SIZE = 16;
+
+    /**
+     * How much web content (sprites, scripts, audio) the static file server keeps in memory.
+     */
+    public static final long STATIC_CACHE_MAX_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * Files bigger than this are streamed from disk every time instead of being cached.
+     */
+    public static final long STATIC_CACHE_MAX_ENTRY_BYTES = 4L * 1024 * 1024;
+
+    /**
+     * Commands scripts may run on a multiplayer server, as prefixes ("gamerule", "time set").
+     * Leave empty to allow everything that isn't blacklisted. Default of commands.whitelist in the server config.
+     */
+    public static final String[] COMMAND_WHITELIST = {};
+
+    /**
+     * Commands scripts may never run on a multiplayer server, as prefixes. Wins over the whitelist.
+     */
+    public static final String[] COMMAND_BLACKLIST = {
+            "op", "deop", "stop", "ban", "ban-ip", "pardon", "pardon-ip", "kick", "whitelist",
+            "save-off", "save-all", "reload", "debug", "perf", "jfr", "publish", "transfer"
+    };
+
+    /**
+     * How many commands per second a player's scripts may run on average.
+     */
+    public static final double COMMAND_RATE_PER_SECOND = 2.0;
+
+    /**
+     * How many commands a player's scripts may run back to back before the rate limit kicks in.
+     */
+    public static final int COMMAND_BURST = 5;
+
+    /**
+     * How many script commands may run per server tick, the rest wait for the next one.
+     */
+    public static final int COMMANDS_PER_TICK = 16;
+
+    /**
+     * How much of every server tick script commands may use together, in microseconds.
+     */
+    public static final long COMMAND_TICK_BUDGET_MICROS = 1000;
+
+    /**
+     * How many script commands may wait to run at once across all players.
+     */
+    public static final int COMMAND_QUEUE_CAPACITY = 1024;
+
+    /**
+     * How many distinct command strings are kept parsed.
+     */
+    public static final int COMMAND_PARSE_CACHE_SIZE = 256;
+
     /**
      * The prefix used for all console log messages from the web server.
      */
@@ -1,81 +1,125 @@
 package com.artesparadox.vn.vnEngine.dataclass;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
-public class DialogueState {
+public final class DialogueState {
     // This class will represent EVERYTHING visible on screen
     // I mean this in the most literal way possible
     // Everything on screen will be decided by this class
     // Let's *Fucking Do This*
-    private String label;
-    private String content;
-    private String background;
-    private String command;
-    private String music;
-    private String sound;
-    private List <SpriteState> sprites = new ArrayList<>();
-    private List<Map<String, Object>> choices;
+    //
+    // It's immutable: every change makes a new state, which the engine publishes through an AtomicReference.
+    // Whoever grabbed the previous one (web threads, the SSE encoder) keeps a consistent screen, no locks or copies.
+    // Fields that didn't change are the same objects as in the previous state, sprites included.
+
+    public static final DialogueState EMPTY = new DialogueState(null, null, null);
+
+    private final String label;
+    private final String content;
+    private final String background;
+    private final String command;
+    private final String music;
+    private final String sound;
+    private final PersistentList<SpriteState> sprites;
+    private final List<Map<String, Object>> choices;
 
     public DialogueState(String label, String content, List<Map<String, Object>> choices) {
+        this(label, content, null, null, null, null, PersistentList.empty(), wrap(choices));
+    }
+
+    private DialogueState(String label, String content, String background, String command, String music, String sound,
+                          PersistentList<SpriteState> sprites, List<Map<String, Object>> choices) {
         this.label = label;
         this.content = content;
+        this.background = background;
+        this.command = command;
+        this.music = music;
+        this.sound = sound;
+        this.sprites = sprites;
+        this.choices = choices;
+    }
 
+    private static List<Map<String, Object>> wrap(List<Map<String, Object>> choices) {
+        // The choice maps come straight from the compiled script, which nobody writes to
+        return choices == null ? null : Collections.unmodifiableList(choices);
     }
 
-    // Getters and setters
+    // Getters and withers
+
     public String getLabel() { return label; }
-    public void setLabel(String label) { this.label = label; }
+    public DialogueState withLabel(String label) {
+        if (Objects.equals(label, this.label)) return this;
+        return new DialogueState(label, content, background, command, music, sound, sprites, choices);
+    }
+
     public String getContent() { return content; }
-    public void setContent(String content) {
-        if (content != null && !content.isEmpty()) {
-            this.content = content;
-        }
+    public DialogueState withContent(String content) {
+        // Empty content keeps the previous line on screen
+        if (content == null || content.isEmpty() || content.equals(this.content)) return this;
+        return new DialogueState(label, content, background, command, music, sound, sprites, choices);
+    }
 
+    /**
+     * The sprites on screen, in the order they were shown. The list is immutable and shared between states,
+     * the same instance means nothing changed.
+     */
+    public PersistentList<SpriteState> getSprites() { return sprites; }
+
+    /**
+     * Shows a sprite, replacing the one from the same folder if it is already on screen.
+     */
+    public DialogueState withSprite(SpriteState sprite) {
+        PersistentList<SpriteState> updated = sprites.replaceOrAdd(s -> Objects.equals(s.getSprite(), sprite.getSprite()), sprite);
+        return new DialogueState(label, content, background, command, music, sound, updated, choices);
     }
-//    public SpriteState getSprite() { return sprite; }
-//    public void setSprite(SpriteState sprite) { this.sprite = sprite; }
 
-    public List<SpriteState> getSprites() { return sprites; }
-    public void addSprite(SpriteState sprite) { this.sprites.add(sprite); }
+    public DialogueState withoutSprite(String folder) {
+        PersistentList<SpriteState> updated = sprites.minus(s -> Objects.equals(s.getSprite(), folder));
+        if (updated == sprites) return this;
+        return new DialogueState(label, content, background, command, music, sound, updated, choices);
+    }
 
     public List<Map<String, Object>> getChoices() {
         return choices;
     }
-    public void setChoices(List<Map<String, Object>> choices) { this.choices = choices; }
-
-    public void setBackground(String background) {
-        this.background = background;
-    }
-
-    public void clearBackground() {
-        this.background = null;
+    public DialogueState withChoices(List<Map<String, Object>> choices) {
+        return new DialogueState(label, content, background, command, music, sound, sprites, wrap(choices));
     }
 
     public String getBackground() {
         return this.background;
     }
-
-    public  String getCommand(){
-        return this.command;
+    public DialogueState withBackground(String background) {
+        if (Objects.equals(background, this.background)) return this;
+        return new DialogueState(label, content, background, command, music, sound, sprites, choices);
     }
 
-    public void setCommand(String action) {
-        this.command = action;
+    public DialogueState clearBackground() {
+        return withBackground(null);
     }
 
-    public String getMusic(){return this.music;}
+    public String getCommand() {
+        return this.command;
+    }
+    public DialogueState withCommand(String command) {
+        if (Objects.equals(command, this.command)) return this;
+        return new DialogueState(label, content, background, command, music, sound, sprites, choices);
+    }
 
-    public void setMusic(String music) {
-        this.music = music;
+    public String getMusic() { return this.music; }
+    public DialogueState withMusic(String music) {
+        if (Objects.equals(music, this.music)) return this;
+        return new DialogueState(label, content, background, command, music, sound, sprites, choices);
     }
 
     public String getSound() {
         return sound;
     }
-
-    public void setSound(String sound) {
-        this.sound = sound;
+    public DialogueState withSound(String sound) {
+        if (Objects.equals(sound, this.sound)) return this;
+        return new DialogueState(label, content, background, command, music, sound, sprites, choices);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,99 @@
+package com.artesparadox.vn.vnEngine.dataclass;
+
+import java.util.AbstractList;
+import java.util.function.Predicate;
+
+/**
+ * An immutable list where every "change" returns a new list that shares everything it didn't touch with the old one.
+ *
+ * Stored newest first as a chain of nodes, so appending is one allocation and replacing or removing an element
+ * only copies the nodes added after it. Reads go through an array built the first time someone looks,
+ * which is fine for what this holds (a handful of sprites on screen).
+ *
+ * Because unchanged lists stay the very same object, anyone holding two states can tell
+ * whether the sprites changed with a plain {@code ==}.
+ */
+public final class PersistentList<T> extends AbstractList<T> {
+
+    private static final PersistentList<?> EMPTY = new PersistentList<>(null, null, 0);
+
+    private final T newest;
+    private final PersistentList<T> older;
+    private final int size;
+    private volatile Object[] ordered; // oldest first, built lazily, racing builds produce the same thing
+
+    private PersistentList(T newest, PersistentList<T> older, int size) {
+        this.newest = newest;
+        this.older = older;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> PersistentList<T> empty() {
+        return (PersistentList<T>) EMPTY;
+    }
+
+    /**
+     * @return This list with {@code item} appended at the end.
+     */
+    public PersistentList<T> plus(T item) {
+        return new PersistentList<>(item, this, size + 1);
+    }
+
+    /**
+     * @return This list with the last element matching {@code match} swapped for {@code item} in the same spot,
+     * or with {@code item} appended if nothing matched.
+     */
+    public PersistentList<T> replaceOrAdd(Predicate<? super T> match, T item) {
+        PersistentList<T> replaced = replace(match, item);
+        return replaced != null ? replaced : plus(item);
+    }
+
+    /**
+     * @return This list without the last element matching {@code match}, or this very list if nothing matched.
+     */
+    public PersistentList<T> minus(Predicate<? super T> match) {
+        PersistentList<T> removed = remove(match);
+        return removed != null ? removed : this;
+    }
+
+    private PersistentList<T> replace(Predicate<? super T> match, T item) {
+        if (size == 0) return null;
+        if (match.test(newest)) return new PersistentList<>(item, older, size);
+        PersistentList<T> rest = older.replace(match, item);
+        return rest == null ? null : new PersistentList<>(newest, rest, size);
+    }
+
+    private PersistentList<T> remove(Predicate<? super T> match) {
+        if (size == 0) return null;
+        if (match.test(newest)) return older;
+        PersistentList<T> rest = older.remove(match);
+        return rest == null ? null : new PersistentList<>(newest, rest, size - 1);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+        return (T) ordered()[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private Object[] ordered() {
+        Object[] array = ordered;
+        if (array == null) {
+            array = new Object[size];
+            PersistentList<T> node = this;
+            for (int i = size - 1; i >= 0; i--) {
+                array[i] = node.newest;
+                node = node.older;
+            }
+            ordered = array;
+        }
+        return array;
+    }
+}
@@ -1,15 +1,20 @@
 // Suggested package location
 package com.artesparadox.vn.vnEngine.dataclass;
 
+import com.artesparadox.vn.vnEngine.compiler.ScriptCompiler;
+import com.artesparadox.vn.vnEngine.compiler.ScriptProgram;
+import com.artesparadox.vn.vnEngine.compiler.ScriptValidator;
 import com.google.gson.annotations.SerializedName;
 
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.function.Supplier;
 
 /**
  * Represents a single Visual Novel-like script (FSM) loaded from a JSON file.
@@ -30,6 +35,31 @@ public class Script {
 
     private Map<String, Object> fsm;
 
+    // Filled in lazily, never part of the JSON
+    private transient ScriptProgram program;
+    // When set, the fsm hasn't been read yet and this will produce it on first use
+    private transient Supplier<Map<String, Object>> fsmSource;
+    // When set, the program comes from the binary script cache instead of being compiled
+    private transient Supplier<ScriptProgram> programSource;
+    // The validator report was printed already, see validate()
+    private transient boolean reported;
+
+    /**
+     * Builds a script from already known header fields, e.g. when it comes out of the script cache.
+     * postLoad() still needs to be called afterwards.
+     */
+    public static Script of(String name, String description, Map<String, String> triggers, Map<String, String> metadata,
+                            List<String> requiredMods, String assetDir) {
+        Script script = new Script();
+        script.name = name;
+        script.description = description;
+        script.triggers = triggers;
+        script.metadata = metadata;
+        script.requiredMods = requiredMods;
+        script.assetDir = assetDir;
+        return script;
+    }
+
     /**
      * Post-deserialization initialization.
      * This method should be called by the ScriptManager after a script is loaded
@@ -47,7 +77,7 @@ public class Script {
         if (this.description == null) this.description = "";
         if (this.triggers == null) this.triggers = new HashMap<>();
         if (this.requiredMods == null) this.requiredMods = new ArrayList<>();
-        if (this.fsm == null) this.fsm = new HashMap<>();
+        if (this.fsm == null && this.fsmSource == null && this.programSource == null) this.fsm = new HashMap<>();
 
         // Ensure metadata and UUID exist, mirroring the Python logic
         if (this.metadata == null) {
@@ -95,7 +125,132 @@ public class Script {
         return assetDir;
     }
 
-    public Map<String, Object> getFsm() {
+    /**
+     * The raw FSM. For scripts read by the streaming loader this is where the nodes actually get parsed,
+     * so big campaigns only pay for it once a conversation needs them.
+     */
+    public synchronized Map<String, Object> getFsm() {
+        if (this.fsm == null && this.fsmSource != null) {
+            this.fsm = this.fsmSource.get();
+            this.fsmSource = null;
+        } else if (this.fsm == null && (this.programSource != null || this.program != null)) {
+            // Came from the cache, rebuild the id-keyed map from the program's nodes
+            Map<String, Object> nodes = new LinkedHashMap<>();
+            for (Map<String, Object> node : getProgram().getNodes()) {
+                Object id = node.get("id");
+                nodes.put(id instanceof Number ? Long.toString(((Number) id).longValue()) : String.valueOf(id), node);
+            }
+            this.fsm = nodes;
+        }
         return fsm;
     }
+
+    /**
+     * Defers reading the FSM until {@link #getFsm()} is first called.
+     * Must be set before postLoad().
+     */
+    public void setFsmSource(Supplier<Map<String, Object>> fsmSource) {
+        this.fsmSource = fsmSource;
+    }
+
+    /**
+     * Whether the FSM has been read into memory yet.
+     */
+    public synchronized boolean isFsmLoaded() {
+        return this.fsm != null;
+    }
+
+    /**
+     * The compiled form of the FSM, shared by every engine running this script.
+     * Compiled and validated on first call, problems are printed at that point.
+     *
+     * @return The program.
+     * @throws IllegalArgumentException if the FSM can't be compiled or the validator found errors in it.
+     */
+    public synchronized ScriptProgram getProgram() {
+        if (this.program != null) {
+            return program;
+        }
+
+        ScriptProgram loaded;
+        boolean fromCache = this.programSource != null;
+        if (fromCache) {
+            loaded = this.programSource.get();
+            this.programSource = null;
+        } else {
+            loaded = ScriptCompiler.compile(this);
+        }
+
+        ScriptValidator.Report report = ScriptValidator.validate(loaded);
+        // A cached program was already reported on when it was first compiled, only repeat the errors.
+        // Nothing to repeat if validate() printed it at load time
+        if (!this.reported && (!fromCache || report.hasErrors())) {
+            report.print(this.name);
+        }
+        this.reported = true;
+        if (report.hasErrors()) {
+            throw new IllegalArgumentException(report.errorCount() + " error(s) in the FSM, see above");
+        }
+        this.program = loaded;
+        return program;
+    }
+
+    /**
+     * Compiles (or decodes from the cache) and validates the script without keeping the result, and prints the report.
+     * Lazy and cached scripts stay lazy, this is just so their problems show up at load time and not on first use.
+     *
+     * @return The report.
+     * @throws IllegalArgumentException if the FSM can't be compiled at all.
+     */
+    public ScriptValidator.Report validate() {
+        ScriptProgram loaded;
+        Supplier<Map<String, Object>> fsm;
+        Supplier<ScriptProgram> cached;
+        synchronized (this) {
+            loaded = this.program;
+            fsm = this.fsmSource;
+            cached = this.programSource;
+        }
+        // Outside the lock, a conversation starting on this script shouldn't wait for us
+        boolean fromCache = loaded == null && cached != null;
+        if (loaded == null) {
+            loaded = cached != null ? cached.get()
+                    : fsm != null ? ScriptCompiler.compile(ScriptCompiler.nodesOf(fsm.get()))
+                    : ScriptCompiler.compile(this);
+        }
+        ScriptValidator.Report report = ScriptValidator.validate(loaded);
+        synchronized (this) {
+            // Same rule as getProgram(), a cached program only repeats its errors
+            if (!this.reported && (!fromCache || report.hasErrors())) {
+                report.print(this.name);
+            }
+            this.reported = true;
+        }
+        return report;
+    }
+
+    /**
+     * Whether the validator report for this script was printed already (by {@link #validate()} or {@link #getProgram()}).
+     */
+    public synchronized boolean isValidated() {
+        return this.reported;
+    }
+
+    public synchronized void setProgram(ScriptProgram program) {
+        this.program = program;
+    }
+
+    /**
+     * Defers loading an already compiled program until {@link #getProgram()} is first called.
+     */
+    public void setProgramSource(Supplier<ScriptProgram> programSource) {
+        this.programSource = programSource;
+    }
+
+    /**
+     * Whether the program has been compiled or decoded yet.
+     */
+    public synchronized boolean isProgramLoaded() {
+        return this.program != null;
+    }
 }
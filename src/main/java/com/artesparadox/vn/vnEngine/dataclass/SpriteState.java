@@ -1,28 +1,41 @@
 package com.artesparadox.vn.vnEngine.dataclass;
 
-public class SpriteState {
-    private String folder;
-    private String position;
-    private String location;
-
-    int wRatio = 16; // These guys
-    int hRatio = 9; // Will Default
-    int frameWRatio =4; // To putting image
-    int frameHRatio = 8; // In the middle
-    int startColumn = 7; // Of the screen
-    int startRow = 1; //First row is one, we don't do zero, this isn't an array
+public final class SpriteState {
+    // Immutable like DialogueState, so the sprite list can be shared between states
+    private final String folder;
+    private final String position;
+    private final String location;
+
+    private final int wRatio; // These guys
+    private final int hRatio; // Will Default
+    private final int frameWRatio; // To putting image
+    private final int frameHRatio; // In the middle
+    private final int startColumn; // Of the screen
+    private final int startRow; //First row is one, we don't do zero, this isn't an array
 
     public SpriteState(String folder,String location,String position) {
+        this(folder, location, position, 16, 9, 4, 8, 7, 1);
+    }
+
+    private SpriteState(String folder, String location, String position,
+                        int wRatio, int hRatio, int frameWRatio, int frameHRatio, int startColumn, int startRow) {
         this.folder = folder;
         this.location = location;
         this.position = position;
+        this.wRatio = wRatio;
+        this.hRatio = hRatio;
+        this.frameWRatio = frameWRatio;
+        this.frameHRatio = frameHRatio;
+        this.startColumn = startColumn;
+        this.startRow = startRow;
     }
 
-    // Getters and setters
+    // Getters and withers
     public String getLocation() { return location; }
-    public void setLocation(String location) { this.location = location; }
+    public SpriteState withLocation(String location) {
+        return new SpriteState(folder, location, position, wRatio, hRatio, frameWRatio, frameHRatio, startColumn, startRow);
+    }
     public String getSprite() { return folder; }
-    public void setSprite(String sprite) { this.folder = sprite; }
 
     public double getwRatio(){return wRatio;}
     public double gethRatio(){return hRatio;}
@@ -31,13 +44,9 @@ public class SpriteState {
     public double getStartColumn(){return startColumn;}
     public double getStartRow(){return startRow;}
 
-    public void setPositioning(double wRatio, double hRatio, double frameWRatio, double frameHRatio, double column, double row){
-        this.wRatio = (int) wRatio;
-        this.hRatio = (int) hRatio;
-        this.frameWRatio = (int) frameWRatio;
-        this.frameHRatio = (int) frameHRatio;
-        this.startColumn = (int) column;
-        this.startRow = (int) row;
+    public SpriteState withPositioning(double wRatio, double hRatio, double frameWRatio, double frameHRatio, double column, double row){
+        return new SpriteState(folder, location, position,
+                (int) wRatio, (int) hRatio, (int) frameWRatio, (int) frameHRatio, (int) column, (int) row);
     }
 
 
@@ -46,8 +55,8 @@ public class SpriteState {
         if(position==null)return "CENTER";
         else return position;
     }
-    public void setPosition(String position){
-        this.position = position;
+    public SpriteState withPosition(String position){
+        return new SpriteState(folder, location, position, wRatio, hRatio, frameWRatio, frameHRatio, startColumn, startRow);
     }
 
 }
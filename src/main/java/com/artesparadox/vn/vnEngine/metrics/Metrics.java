@@ -0,0 +1,219 @@
+package com.artesparadox.vn.vnEngine.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Process wide metrics registry, served on /api/metrics as JSON or Prometheus text.
+ *
+ * Counters are plain {@link LongAdder}s, so incrementing one from many threads doesn't fight over a cache line.
+ * Latencies go into {@link LatencyHistogram}s and come out as quantiles (a Prometheus summary).
+ *
+ * Looking a metric up takes a map lookup and some string building, so hot paths look theirs up once
+ * (a static field, an array per enum, a field on the route) and only touch the adder afterwards.
+ * Labels are name/value pairs: {@code counter("vn_x_total", "help", "op", "dialogue")}.
+ * Keep label values bounded (route patterns, not request paths), every distinct value is a new series forever.
+ */
+public final class Metrics {
+
+    private static final ConcurrentMap<String, Family> FAMILIES = new ConcurrentHashMap<>();
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private Metrics() {}
+
+    public static LongAdder counter(String name, String help, String... labels) {
+        return (LongAdder) family(name, Type.COUNTER, help).series(labels, LongAdder::new);
+    }
+
+    public static LatencyHistogram histogram(String name, String help, String... labels) {
+        return (LatencyHistogram) family(name, Type.SUMMARY, help).series(labels, LatencyHistogram::new);
+    }
+
+    /**
+     * A value read when the metrics are scraped. Registering the same series again replaces the supplier,
+     * so a component that gets recreated (a new world in singleplayer) doesn't leave a stale one behind.
+     */
+    public static void gauge(String name, String help, LongSupplier value, String... labels) {
+        family(name, Type.GAUGE, help).replace(labels, value);
+    }
+
+    private static Family family(String name, Type type, String help) {
+        Family family = FAMILIES.computeIfAbsent(name, n -> new Family(n, type, help));
+        if (family.type != type) {
+            throw new IllegalArgumentException("Metric " + name + " is a " + family.type + ", not a " + type);
+        }
+        return family;
+    }
+
+    /**
+     * Everything, as nested maps for Gson. Times are in milliseconds like the other stats routes.
+     */
+    public static Map<String, Object> toJson() {
+        Map<String, Object> json = new LinkedHashMap<>();
+        for (Family family : sorted()) {
+            List<Map<String, Object>> series = new ArrayList<>();
+            for (Series s : family.sortedSeries()) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("labels", s.labels());
+                switch (family.type) {
+                    case COUNTER:
+                        entry.put("value", ((LongAdder) s.metric()).sum());
+                        break;
+                    case GAUGE:
+                        entry.put("value", ((LongSupplier) s.metric()).getAsLong());
+                        break;
+                    case SUMMARY:
+                        LatencyHistogram.Snapshot snapshot = ((LatencyHistogram) s.metric()).snapshot();
+                        entry.put("count", snapshot.count());
+                        entry.put("meanMs", snapshot.meanNanos() / 1_000_000);
+                        entry.put("maxMs", snapshot.maxNanos() / 1_000_000.0);
+                        for (double q : QUANTILES) {
+                            entry.put("p" + quantileName(q) + "Ms", snapshot.quantile(q) / 1_000_000.0);
+                        }
+                        break;
+                }
+                series.add(entry);
+            }
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("type", family.type.name().toLowerCase(Locale.ROOT));
+            body.put("help", family.help);
+            body.put("series", series);
+            json.put(family.name, body);
+        }
+        return json;
+    }
+
+    /**
+     * Everything in the Prometheus text exposition format (version 0.0.4). Times are in seconds, as Prometheus wants.
+     */
+    public static String toPrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Family family : sorted()) {
+            out.append("# HELP ").append(family.name).append(' ').append(escapeHelp(family.help)).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type.name().toLowerCase(Locale.ROOT)).append('\n');
+            for (Series s : family.sortedSeries()) {
+                switch (family.type) {
+                    case COUNTER:
+                        sample(out, family.name, s.key(), null, ((LongAdder) s.metric()).sum());
+                        break;
+                    case GAUGE:
+                        sample(out, family.name, s.key(), null, ((LongSupplier) s.metric()).getAsLong());
+                        break;
+                    case SUMMARY:
+                        LatencyHistogram.Snapshot snapshot = ((LatencyHistogram) s.metric()).snapshot();
+                        for (double q : QUANTILES) {
+                            sample(out, family.name, s.key(), "quantile=\"" + q + "\"", snapshot.quantile(q) / 1e9);
+                        }
+                        sample(out, family.name + "_sum", s.key(), null, snapshot.sumNanos() / 1e9);
+                        sample(out, family.name + "_count", s.key(), null, snapshot.count());
+                        break;
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, String extra, double value) {
+        out.append(name);
+        if (!labels.isEmpty() || extra != null) {
+            out.append('{').append(labels);
+            if (extra != null) {
+                if (!labels.isEmpty()) out.append(',');
+                out.append(extra);
+            }
+            out.append('}');
+        }
+        out.append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    private static List<Family> sorted() {
+        List<Family> families = new ArrayList<>(FAMILIES.values());
+        families.sort((a, b) -> a.name.compareTo(b.name));
+        return families;
+    }
+
+    private static String quantileName(double q) {
+        // 0.5 -> 50, 0.99 -> 99, 0.999 -> 999
+        String digits = Double.toString(q).substring(2);
+        return digits.length() == 1 ? digits + "0" : digits;
+    }
+
+    private static String escapeHelp(String help) {
+        return help.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+
+    private static String escapeLabel(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Renders labels the way they appear in the exposition format, which doubles as the series key.
+     */
+    private static String labelKey(String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name/value pairs");
+        }
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) key.append(',');
+            key.append(labels[i]).append("=\"").append(escapeLabel(labels[i + 1])).append('"');
+        }
+        return key.toString();
+    }
+
+    private static Map<String, String> labelMap(String[] labels) {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < labels.length; i += 2) {
+            map.put(labels[i], labels[i + 1]);
+        }
+        return map;
+    }
+
+    private enum Type { COUNTER, GAUGE, SUMMARY }
+
+    private record Series(String key, Map<String, String> labels, Object metric) {}
+
+    private static final class Family {
+        final String name;
+        final Type type;
+        final String help;
+        final ConcurrentMap<String, Series> series = new ConcurrentHashMap<>();
+
+        Family(String name, Type type, String help) {
+            this.name = name;
+            this.type = type;
+            this.help = help;
+        }
+
+        Object series(String[] labels, Supplier<Object> factory) {
+            String key = labelKey(labels);
+            Series existing = series.get(key);
+            if (existing != null) return existing.metric();
+            return series.computeIfAbsent(key, k -> new Series(k, labelMap(labels), factory.get())).metric();
+        }
+
+        void replace(String[] labels, Object metric) {
+            String key = labelKey(labels);
+            series.put(key, new Series(key, labelMap(labels), metric));
+        }
+
+        List<Series> sortedSeries() {
+            return new ArrayList<>(new TreeMap<>(series).values());
+        }
+    }
+}
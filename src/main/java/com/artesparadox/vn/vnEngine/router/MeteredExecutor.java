@@ -0,0 +1,228 @@
+package com.artesparadox.vn.vnEngine.router;
+
+import com.artesparadox.vn.Config;
+import com.artesparadox.vn.VisualNovelFramework;
+import com.sun.net.httpserver.HttpExchange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The executor the web server hands every exchange to, with counters for how busy it is.
+ *
+ * Two flavours:
+ * <ul>
+ *     <li>{@link #virtualThreads()}: one virtual thread per request. A slow asset download only ties up its own thread.</li>
+ *     <li>{@link #bounded(int, int)}: a fixed pool with a bounded queue. When the queue is full the HttpServer
+ *     dispatcher thread runs the request itself, which stops it from accepting more until things calm down.
+ *     Streams ({@link #stream}) never take a worker, they get their own virtual thread.</li>
+ * </ul>
+ * Once shut down, new exchanges are refused and the server closes their connection.
+ */
+public final class MeteredExecutor implements Executor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VisualNovelFramework.class);
+
+    private final ExecutorService delegate;
+    // Where streams run, null to run them on the request's own thread
+    private final ExecutorService streams;
+    private final String mode;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger openStreams = new AtomicInteger();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder overflowed;
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder queueNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    private MeteredExecutor(String mode, ExecutorService delegate, ExecutorService streams, LongAdder overflowed) {
+        this.mode = mode;
+        this.delegate = delegate;
+        this.streams = streams;
+        this.overflowed = overflowed;
+    }
+
+    public static MeteredExecutor virtualThreads() {
+        return new MeteredExecutor("virtual", Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("vn-web-", 0).factory()), null, new LongAdder());
+    }
+
+    /**
+     * @param threads       Worker threads.
+     * @param queueCapacity Requests that may wait for a worker before the dispatcher has to run them itself.
+     */
+    public static MeteredExecutor bounded(int threads, int queueCapacity) {
+        LongAdder overflowed = new LongAdder();
+        RejectedExecutionHandler overflow = (task, pool) -> {
+            // execute() takes it back off the queue count, and the server closes the connection
+            if (pool.isShutdown()) throw new RejectedExecutionException("Web executor is shut down");
+            overflowed.increment();
+            task.run(); // on the dispatcher thread, that's the back pressure
+        };
+        AtomicInteger ids = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                task -> {
+                    Thread thread = new Thread(task, "vn-web-" + ids.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                overflow);
+        pool.allowCoreThreadTimeOut(true);
+        ExecutorService streams = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("vn-web-stream-", 0).factory());
+        return new MeteredExecutor("bounded", pool, streams, overflowed);
+    }
+
+    /**
+     * Picks the executor named in the config's web.executor ({@link Config}).
+     */
+    public static MeteredExecutor fromConfig() {
+        if ("bounded".equalsIgnoreCase(Config.webExecutor())) {
+            return bounded(Config.webWorkerThreads(), Config.webQueueCapacity());
+        }
+        return virtualThreads();
+    }
+
+    @Override
+    public void execute(Runnable exchange) {
+        long submitted = System.nanoTime();
+        queued.incrementAndGet();
+        try {
+            delegate.execute(() -> {
+                long started = System.nanoTime();
+                queued.decrementAndGet();
+                active.incrementAndGet();
+                try {
+                    exchange.run();
+                } catch (RuntimeException | Error e) {
+                    failed.increment();
+                    throw e;
+                } finally {
+                    active.decrementAndGet();
+                    long took = System.nanoTime() - submitted;
+                    completed.increment();
+                    queueNanos.add(started - submitted);
+                    totalNanos.add(took);
+                    maxNanos.accumulateAndGet(took, Math::max);
+                }
+            });
+        } catch (RuntimeException e) {
+            // Shut down under us, the exchange never ran
+            queued.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Runs an exchange that stays open for as long as the client wants (the SSE /events stream).
+     * With virtual threads that's just the request's own thread. The bounded pool hands it to a virtual thread
+     * of its own, every open browser tab holding a worker would fill the pool and then block the dispatcher.
+     * The exchange is closed once the stream returns.
+     */
+    public void stream(HttpExchange exchange, Stream stream) {
+        if (streams == null) {
+            runStream(exchange, stream);
+            return;
+        }
+        try {
+            streams.execute(() -> runStream(exchange, stream));
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+            exchange.close();
+        }
+    }
+
+    private void runStream(HttpExchange exchange, Stream stream) {
+        openStreams.incrementAndGet();
+        try {
+            stream.run();
+        } catch (IOException e) {
+            // The client went away
+        } catch (RuntimeException e) {
+            failed.increment();
+            LOGGER.warn("Stream failed", e);
+        } finally {
+            openStreams.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    @FunctionalInterface
+    public interface Stream {
+        void run() throws IOException;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    /**
+     * Requests being handled right now.
+     */
+    public int getActive() {
+        return active.get();
+    }
+
+    /**
+     * Requests accepted but still waiting for a thread.
+     */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    /**
+     * A snapshot of the counters, ready to be sent as JSON.
+     */
+    public Map<String, Object> stats() {
+        long done = completed.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("mode", mode);
+        stats.put("active", active.get());
+        stats.put("queued", queued.get());
+        stats.put("streams", openStreams.get());
+        stats.put("completed", done);
+        stats.put("failed", failed.sum());
+        stats.put("overflowed", overflowed.sum());
+        stats.put("avgLatencyMs", done == 0 ? 0 : totalNanos.sum() / (double) done / 1_000_000);
+        stats.put("avgQueueMs", done == 0 ? 0 : queueNanos.sum() / (double) done / 1_000_000);
+        stats.put("maxLatencyMs", maxNanos.get() / 1_000_000.0);
+        return stats;
+    }
+
+    /**
+     * Stops taking work and gives running requests a moment to finish.
+     */
+    public void shutdown() {
+        if (streams != null) {
+            // Streams wait on their clients, the InteractionManager ends them, no point waiting here
+            streams.shutdownNow();
+        }
+        delegate.shutdown();
+        try {
+            if (!delegate.awaitTermination(2, TimeUnit.SECONDS)) {
+                delegate.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            delegate.shutdownNow();
+        }
+    }
+}
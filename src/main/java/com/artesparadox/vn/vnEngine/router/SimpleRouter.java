@@ -1,27 +1,43 @@
 package com.artesparadox.vn.vnEngine.router;
 
+import com.artesparadox.vn.VisualNovelFramework;
 import com.artesparadox.vn.vnEngine.dataclass.Const;
+import com.artesparadox.vn.vnEngine.metrics.LatencyHistogram;
+import com.artesparadox.vn.vnEngine.metrics.Metrics;
 import com.google.gson.Gson;
+import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.world.level.storage.LevelResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.io.File;
-import java.io.FileInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -32,10 +48,15 @@ import java.util.regex.Pattern;
  */
 public class SimpleRouter implements HttpHandler {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(VisualNovelFramework.class);
+
     // Gson is provided by Minecraft, so this is a safe dependency.
     private static final Gson GSON = new Gson();
 
-    private final List<Route> routes = new ArrayList<>();
+    // Method -> segment trie, covers plain paths, {param} captures and trailing catch-alls
+    private final Map<String, SegmentNode> trees = new HashMap<>();
+    // Anything the trie can't express, tried in registration order
+    private final List<Route> regexRoutes = new ArrayList<>();
     private Path staticFileRoot; // Instance variable to hold the root for static files
 
     private static final Map<String, String> MIME_TYPES = new HashMap<>();
@@ -52,6 +73,29 @@ public class SimpleRouter implements HttpHandler {
         // Add more MIME types as needed for your assets.
     }
 
+    // Text types that may have .br / .gz siblings produced by the frontend build
+    private static final Set<String> COMPRESSIBLE = Set.of("html", "css", "js", "json");
+    // Content-Encoding and file suffix, in order of preference
+    private static final String[][] PRECOMPRESSED = {{"br", ".br"}, {"gzip", ".gz"}};
+
+    private static final String ROUTE_LATENCY = "vn_http_request_seconds";
+    private static final String ROUTE_LATENCY_HELP = "Time from routing a request to its handler returning, by route pattern";
+    // Requests no route matched. Labelled by pattern, never by raw path, or scanners would blow up the series count
+    private static final LatencyHistogram UNMATCHED = Metrics.histogram(ROUTE_LATENCY, ROUTE_LATENCY_HELP,
+            "method", "any", "route", "unmatched");
+    // By status class, index 1 to 5
+    private static final LongAdder[] RESPONSES = new LongAdder[6];
+    static {
+        for (int i = 1; i < RESPONSES.length; i++) {
+            RESPONSES[i] = Metrics.counter("vn_http_responses_total", "Responses sent, by status class", "code", i + "xx");
+        }
+    }
+    private static final LongAdder STATIC_BYTES_IDENTITY = staticBytes("identity");
+    private static final LongAdder STATIC_BYTES_BR = staticBytes("br");
+    private static final LongAdder STATIC_BYTES_GZIP = staticBytes("gzip");
+
+    private final StaticAssetCache assetCache = new StaticAssetCache(Const.STATIC_CACHE_MAX_BYTES, Const.STATIC_CACHE_MAX_ENTRY_BYTES);
+
     // --- Public API for Defining Routes ---
 
     public void get(String path, RouteHandler handler) {
@@ -72,10 +116,21 @@ public class SimpleRouter implements HttpHandler {
      */
     public void serveStaticFilesFrom(MinecraftServer minecraftServer) throws IOException {
         this.staticFileRoot = getWebRootPath(minecraftServer);
-        System.out.println(Const.LOG_PREFIX + " STEP 1: Determined web root destination is: " + this.staticFileRoot.toAbsolutePath());
+        LOGGER.info("STEP 1: Determined web root destination is: {}", this.staticFileRoot.toAbsolutePath());
 
         ensureWebRootExists(this.staticFileRoot);
 
+        serveStaticFilesFrom(this.staticFileRoot);
+    }
+
+    /**
+     * Serves static files from an existing directory as is, without copying the default UI into it.
+     *
+     * @param webRoot The directory to serve.
+     */
+    public void serveStaticFilesFrom(Path webRoot) {
+        this.staticFileRoot = webRoot;
+
         // Register the catch-all route to serve the files.
         // This handler now calls an instance method that knows about `staticFileRoot`.
         this.get("/.*", (exchange, params) -> {
@@ -83,32 +138,150 @@ public class SimpleRouter implements HttpHandler {
         });
     }
 
+    public StaticAssetCache getAssetCache() {
+        return assetCache;
+    }
+
     // --- Core Routing Logic ---
 
     private void addRoute(String method, String path, RouteHandler handler) {
-        String regex = path.replaceAll("\\{([^}]+)}", "(?<$1>[^/]+)").replace(".*", ".*");
-        this.routes.add(new Route(method, Pattern.compile("^" + regex + "$"), handler));
+        method = method.toUpperCase(Locale.ROOT);
+        List<String> segments = splitPath(path);
+        if (isTriePath(segments)) {
+            SegmentNode node = trees.computeIfAbsent(method, m -> new SegmentNode());
+            List<String> paramNames = new ArrayList<>();
+            for (String segment : segments) {
+                if (isCatchAll(segment)) {
+                    node.catchAll = new Leaf(handler, paramNames.toArray(new String[0]), timer(method, path));
+                    return;
+                }
+                if (segment.startsWith("{")) {
+                    paramNames.add(segment.substring(1, segment.length() - 1));
+                    if (node.param == null) node.param = new SegmentNode();
+                    node = node.param;
+                } else {
+                    node = node.children.computeIfAbsent(segment, s -> new SegmentNode());
+                }
+            }
+            node.leaf = new Leaf(handler, paramNames.toArray(new String[0]), timer(method, path));
+            return;
+        }
+
+        String regex = path.replaceAll("\\{([^}]+)}", "(?<$1>[^/]+)");
+        this.regexRoutes.add(new Route(method, Pattern.compile("^" + regex + "$"), handler, timer(method, path)));
+    }
+
+    private static LatencyHistogram timer(String method, String path) {
+        return Metrics.histogram(ROUTE_LATENCY, ROUTE_LATENCY_HELP, "method", method, "route", path);
+    }
+
+    private static LongAdder staticBytes(String encoding) {
+        return Metrics.counter("vn_static_bytes_total", "Static file bytes sent, by Content-Encoding", "encoding", encoding);
     }
 
     @Override
     public void handle(HttpExchange exchange) throws IOException {
-        for (Route route : routes) {
-            String requestPath = exchange.getRequestURI().getPath();
-            if (route.method.equalsIgnoreCase(exchange.getRequestMethod())) {
-                Matcher matcher = route.pathPattern.matcher(requestPath);
-                if (matcher.matches()) {
-                    try {
-                        route.handler.handle(exchange, matcher.namedGroups());
-                    } catch (Exception e) {
-                        System.err.println("Error handling request: " + requestPath);
-                        e.printStackTrace();
-                        sendJson(exchange, 500, Collections.singletonMap("error", "Internal Server Error"));
-                    }
-                    return;
+        String requestPath = exchange.getRequestURI().getPath();
+        String method = exchange.getRequestMethod().toUpperCase(Locale.ROOT);
+
+        // 1. Trie: exact segments first, then {param} captures
+        Match match = null;
+        SegmentNode root = trees.get(method);
+        if (root != null) {
+            match = root.find(splitPath(requestPath), 0, new String[0], new Match[1]);
+        }
+        if (match != null && !match.catchAll) {
+            dispatch(exchange, requestPath, match.leaf.handler, match.params(), match.leaf.timer);
+            return;
+        }
+
+        // 2. Regex fallback
+        for (Route route : regexRoutes) {
+            if (!route.method.equals(method)) continue;
+            Matcher matcher = route.pathPattern.matcher(requestPath);
+            if (matcher.matches()) {
+                Map<String, String> params = new HashMap<>();
+                for (Map.Entry<String, Integer> group : matcher.namedGroups().entrySet()) {
+                    params.put(group.getKey(), matcher.group(group.getValue()));
                 }
+                dispatch(exchange, requestPath, route.handler, params, route.timer);
+                return;
             }
         }
+
+        // 3. Catch-alls (static files) go last, so they never shadow an API route
+        if (match != null) {
+            dispatch(exchange, requestPath, match.leaf.handler, match.params(), match.leaf.timer);
+            return;
+        }
+        long started = System.nanoTime();
         sendJson(exchange, 404, Collections.singletonMap("error", "API endpoint not found."));
+        UNMATCHED.recordSince(started);
+        countResponse(exchange);
+    }
+
+    private void dispatch(HttpExchange exchange, String requestPath, RouteHandler handler, Map<String, String> params,
+                          LatencyHistogram timer) throws IOException {
+        long started = System.nanoTime();
+        try {
+            handler.handle(exchange, params);
+        } catch (Exception e) {
+            LOGGER.error("Error handling request: {}", requestPath, e);
+            sendJson(exchange, 500, Collections.singletonMap("error", "Internal Server Error"));
+        } finally {
+            // Streaming routes (the /events SSE stream) record how long the stream stayed open,
+            // unless the bounded executor moved the stream to its own thread, then it's just the hand-off
+            timer.recordSince(started);
+            countResponse(exchange);
+        }
+    }
+
+    private static void countResponse(HttpExchange exchange) {
+        int statusClass = exchange.getResponseCode() / 100;
+        if (statusClass >= 1 && statusClass < RESPONSES.length) {
+            RESPONSES[statusClass].increment();
+        }
+    }
+
+    /**
+     * Splits a path on '/', dropping empty segments, so "/a//b/" and "/a/b" are the same route.
+     */
+    private static List<String> splitPath(String path) {
+        List<String> segments = new ArrayList<>();
+        int start = 0;
+        int length = path.length();
+        while (start < length) {
+            int end = path.indexOf('/', start);
+            if (end < 0) end = length;
+            if (end > start) segments.add(path.substring(start, end));
+            start = end + 1;
+        }
+        return segments;
+    }
+
+    private static boolean isCatchAll(String segment) {
+        return segment.equals("*") || segment.equals(".*");
+    }
+
+    /**
+     * True if every segment is a literal, a whole-segment {param}, or a trailing catch-all.
+     */
+    private static boolean isTriePath(List<String> segments) {
+        for (int i = 0; i < segments.size(); i++) {
+            String segment = segments.get(i);
+            if (isCatchAll(segment)) {
+                if (i != segments.size() - 1) return false;
+                continue;
+            }
+            if (segment.startsWith("{")) {
+                if (!segment.endsWith("}") || segment.length() < 3 || segment.indexOf('{', 1) >= 0) return false;
+                continue;
+            }
+            for (int c = 0; c < segment.length(); c++) {
+                if ("{}()[]*+?.^$|\\".indexOf(segment.charAt(c)) >= 0) return false;
+            }
+        }
+        return true;
     }
 
     // --- Helper Methods for Responses ---
@@ -146,21 +319,194 @@ public class SimpleRouter implements HttpHandler {
             return;
         }
 
-        File file = filePath.toFile();
-        if (file.exists() && !file.isDirectory()) {
-            String extension = path.substring(path.lastIndexOf(".") + 1).toLowerCase();
-            String mimeType = MIME_TYPES.getOrDefault(extension, "application/octet-stream");
+        StaticAssetCache.Asset asset = assetCache.get(filePath);
+        if (asset == null) {
+            sendJson(exchange, 404, Collections.singletonMap("error", "The requested file was not found on this server."));
+            return;
+        }
+
+        String extension = path.substring(path.lastIndexOf(".") + 1).toLowerCase();
+        String mimeType = MIME_TYPES.getOrDefault(extension, "application/octet-stream");
+        Headers headers = exchange.getResponseHeaders();
 
-            exchange.getResponseHeaders().set("Content-Type", mimeType);
-            exchange.sendResponseHeaders(200, file.length());
-            try (OutputStream os = exchange.getResponseBody(); InputStream is = new FileInputStream(file)) {
-                is.transferTo(os);
+        // Prefer a precompressed sibling (index.html.br, app.js.gz, ...) if the client takes it and it isn't stale
+        String encoding = null;
+        if (COMPRESSIBLE.contains(extension)) {
+            headers.set("Vary", "Accept-Encoding");
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            for (String[] candidate : PRECOMPRESSED) {
+                if (!accepts(acceptEncoding, candidate[0])) continue;
+                StaticAssetCache.Asset variant = assetCache.get(filePath.resolveSibling(filePath.getFileName() + candidate[1]));
+                if (variant != null && variant.modified() >= asset.modified()) {
+                    asset = variant;
+                    encoding = candidate[0];
+                    break;
+                }
             }
-        } else {
-            sendJson(exchange, 404, Collections.singletonMap("error", "The requested file was not found on this server."));
+        }
+
+        headers.set("Content-Type", mimeType);
+        headers.set("Accept-Ranges", "bytes");
+        headers.set("ETag", asset.etag());
+        headers.set("Last-Modified", asset.lastModified());
+        // Vite puts content hashed files under /assets/, those never change under the same name
+        headers.set("Cache-Control", path.startsWith("/assets/") ? "public, max-age=31536000, immutable" : "no-cache");
+        if (encoding != null) {
+            headers.set("Content-Encoding", encoding);
+        }
+
+        if (isNotModified(exchange, asset)) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+
+        // Byte ranges, so <audio> can seek through music without pulling the whole file
+        long start = 0;
+        long length = asset.size();
+        int status = 200;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null && rangeStillValid(exchange, asset)) {
+            long[] span = parseRange(range, asset.size());
+            if (span == UNSATISFIABLE) {
+                headers.set("Content-Range", "bytes */" + asset.size());
+                exchange.sendResponseHeaders(416, -1);
+                exchange.close();
+                return;
+            }
+            if (span != null) {
+                start = span[0];
+                length = span[1] - span[0] + 1;
+                status = 206;
+                headers.set("Content-Range", "bytes " + span[0] + "-" + span[1] + "/" + asset.size());
+            }
+        }
+
+        exchange.sendResponseHeaders(status, length == 0 ? -1 : length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            if (length == 0) return;
+            if (asset.bytes() != null) {
+                os.write(asset.bytes(), (int) start, (int) length);
+            } else {
+                // Too big for the cache. Let the file channel push the bytes instead of looping over a heap buffer
+                transferFile(asset.path(), start, length, os);
+            }
+            LongAdder sent = encoding == null ? STATIC_BYTES_IDENTITY : encoding.equals("br") ? STATIC_BYTES_BR : STATIC_BYTES_GZIP;
+            sent.add(length);
         }
     }
 
+    // Marker for a Range header that is valid but can't be satisfied (416)
+    private static final long[] UNSATISFIABLE = new long[0];
+
+    /**
+     * Parses a single "bytes=" range. Multiple ranges would need a multipart response,
+     * those (and anything malformed) get the whole file, which the RFC allows.
+     *
+     * @return {first, last} inclusive, null to ignore the header, or {@link #UNSATISFIABLE}.
+     */
+    static long[] parseRange(String header, long size) {
+        if (!header.startsWith("bytes=") || header.indexOf(',') >= 0) return null;
+        String spec = header.substring(6).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) return null;
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                // "-500" = the last 500 bytes
+                if (last.isEmpty()) return null;
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0 || size == 0) return UNSATISFIABLE;
+                return new long[]{Math.max(0, size - suffix), size - 1};
+            }
+            long from = Long.parseLong(first);
+            long to = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+            if (from < 0 || (!last.isEmpty() && Long.parseLong(last) < from)) return null;
+            if (from >= size) return UNSATISFIABLE;
+            return new long[]{from, to};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * If-Range: only honour the Range header when the client's copy is still the current one.
+     */
+    private static boolean rangeStillValid(HttpExchange exchange, StaticAssetCache.Asset asset) {
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        if (ifRange == null) return true;
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"")) return ifRange.equals(asset.etag());
+        return ifRange.equals(asset.lastModified());
+    }
+
+    /**
+     * Copies part of a file straight from its FileChannel into the response.
+     */
+    private static void transferFile(Path file, long start, long length, OutputStream os) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(os);
+            long position = start;
+            long end = start + length;
+            while (position < end) {
+                long sent = channel.transferTo(position, end - position, target);
+                if (sent <= 0) {
+                    throw new EOFException("File shrank while being sent: " + file);
+                }
+                position += sent;
+            }
+        }
+    }
+
+    /**
+     * Conditional GET. If-None-Match wins over If-Modified-Since when both are sent, like the RFC says.
+     */
+    private static boolean isNotModified(HttpExchange exchange, StaticAssetCache.Asset asset) {
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) tag = tag.substring(2);
+                if (tag.equals("*") || tag.equals(asset.etag())) return true;
+            }
+            return false;
+        }
+        String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+        if (ifModifiedSince != null) {
+            try {
+                long since = ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().getEpochSecond();
+                return asset.modified() / 1000 <= since;
+            } catch (DateTimeParseException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether an Accept-Encoding header allows the given coding, honouring "q=0".
+     */
+    private static boolean accepts(String acceptEncoding, String coding) {
+        if (acceptEncoding == null) return false;
+        for (String part : acceptEncoding.split(",")) {
+            String[] pieces = part.trim().split(";");
+            if (!pieces[0].trim().equalsIgnoreCase(coding)) continue;
+            for (int i = 1; i < pieces.length; i++) {
+                String parameter = pieces[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(parameter.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
     private Path getWebRootPath(MinecraftServer minecraftServer) {
         Path frameworkPath = Paths.get(Const.FRAMEWORK_ID, Const.WEB_SUBDIR);
         if (minecraftServer != null) {
@@ -172,15 +518,15 @@ public class SimpleRouter implements HttpHandler {
 
     private void ensureWebRootExists(Path webRoot) throws IOException {
         Files.createDirectories(webRoot);
-        System.out.println(Const.LOG_PREFIX + " STEP 2: Ensured web root directory exists at: " + webRoot);
-        System.out.println(Const.LOG_PREFIX + " STEP 3: Verifying essential files...");
+        LOGGER.info("STEP 2: Ensured web root directory exists at: {}", webRoot);
+        LOGGER.info("STEP 3: Verifying essential files...");
 
         for (String fileName : Const.DEFAULT_WEB_FILES) {
             Path destinationFile = webRoot.resolve(fileName);
-            System.out.println(Const.LOG_PREFIX + "  -> Checking for: " + destinationFile.getFileName());
+            LOGGER.info("  -> Checking for: {}", destinationFile.getFileName());
 
             if (Files.notExists(destinationFile) || true) { // Make this true for development
-                System.out.println(Const.LOG_PREFIX + "     -> File is MISSING. Attempting to copy from JAR...");
+                LOGGER.info("     -> File is MISSING. Attempting to copy from JAR...");
                 String internalPath = Const.INTERNAL_ASSETS_PATH + fileName;
                 // Use SimpleRouter.class to find the resource within the JAR
                 try (InputStream sourceStream = SimpleRouter.class.getResourceAsStream(internalPath)) {
@@ -188,10 +534,10 @@ public class SimpleRouter implements HttpHandler {
                         throw new IOException("FATAL: Default UI file not found in JAR at " + internalPath);
                     }
                     Files.copy(sourceStream, destinationFile, StandardCopyOption.REPLACE_EXISTING);
-                    System.out.println(Const.LOG_PREFIX + "     -> SUCCESS: Copied " + fileName);
+                    LOGGER.info("     -> SUCCESS: Copied {}", fileName);
                 }
             } else {
-                System.out.println(Const.LOG_PREFIX + "     -> File already exists. Skipping.");
+                LOGGER.info("     -> File already exists. Skipping.");
             }
         }
     }
@@ -200,8 +546,60 @@ public class SimpleRouter implements HttpHandler {
 
     @FunctionalInterface
     public interface RouteHandler {
-        void handle(HttpExchange exchange, Map<String, Integer> params) throws IOException;
+        void handle(HttpExchange exchange, Map<String, String> params) throws IOException;
     }
 
-    private record Route(String method, Pattern pathPattern, RouteHandler handler) {}
+    private record Route(String method, Pattern pathPattern, RouteHandler handler, LatencyHistogram timer) {}
+
+    private record Leaf(RouteHandler handler, String[] paramNames, LatencyHistogram timer) {}
+
+    private record Match(Leaf leaf, String[] values, boolean catchAll, int depth) {
+        Map<String, String> params() {
+            if (leaf.paramNames.length == 0) return Collections.emptyMap();
+            Map<String, String> params = new HashMap<>(leaf.paramNames.length * 2);
+            for (int i = 0; i < leaf.paramNames.length; i++) {
+                params.put(leaf.paramNames[i], values[i]);
+            }
+            return params;
+        }
+    }
+
+    /**
+     * One path segment of the route trie.
+     */
+    private static final class SegmentNode {
+        final Map<String, SegmentNode> children = new HashMap<>();
+        SegmentNode param;   // matches any single segment
+        Leaf leaf;           // a route ends here
+        Leaf catchAll;       // a route ending in "/*" or "/.*" hangs here and takes the rest of the path
+
+        /**
+         * Finds the route for the remaining segments. Literal children win over {param}, and a full match wins
+         * over any catch-all. The deepest catch-all seen on the way is kept in {@code fallback} for when nothing
+         * matches fully.
+         */
+        Match find(List<String> segments, int index, String[] values, Match[] fallback) {
+            if (catchAll != null && (fallback[0] == null || fallback[0].depth <= index)) {
+                fallback[0] = new Match(catchAll, values, true, index);
+            }
+            if (index == segments.size()) {
+                if (leaf != null) return new Match(leaf, values, false, index);
+                return fallback[0];
+            }
+
+            String segment = segments.get(index);
+            SegmentNode child = children.get(segment);
+            if (child != null) {
+                Match match = child.find(segments, index + 1, values, fallback);
+                if (match != null && !match.catchAll) return match;
+            }
+            if (param != null) {
+                String[] captured = Arrays.copyOf(values, values.length + 1);
+                captured[values.length] = segment;
+                Match match = param.find(segments, index + 1, captured, fallback);
+                if (match != null && !match.catchAll) return match;
+            }
+            return fallback[0];
+        }
+    }
 }
@@ -0,0 +1,141 @@
+package com.artesparadox.vn.vnEngine.router;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the content of recently served web files in memory, least recently used out first, bounded by total bytes.
+ *
+ * Every lookup still stats the file, and a cached copy is only used while its size and mtime match,
+ * so dropping a new sprite into the web root shows up on the next request without a restart.
+ * Files bigger than {@code maxEntryBytes} are never held in memory, only their metadata is returned.
+ */
+public final class StaticAssetCache {
+
+    /**
+     * One file as the web server sees it.
+     *
+     * @param path         The file on disk.
+     * @param size         Content length in bytes.
+     * @param modified     Last modified time in milliseconds.
+     * @param etag         Strong validator built from size and mtime, already quoted.
+     * @param lastModified {@code modified} formatted for the Last-Modified header.
+     * @param bytes        The whole content, or null if the file is too big to cache and has to be streamed.
+     */
+    public record Asset(Path path, long size, long modified, String etag, String lastModified, byte[] bytes) {}
+
+    private final long maxBytes;
+    private final long maxEntryBytes;
+
+    // Access ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<Path, Asset> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long currentBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxBytes      Total content the cache may hold.
+     * @param maxEntryBytes Largest single file that is kept in memory.
+     */
+    public StaticAssetCache(long maxBytes, long maxEntryBytes) {
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = Math.min(maxEntryBytes, maxBytes);
+    }
+
+    /**
+     * @param file The file to serve.
+     * @return The asset, or null if there is no regular file at that path.
+     * @throws IOException if the file exists but can't be read.
+     */
+    public Asset get(Path file) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            remove(file);
+            return null;
+        }
+        if (!attributes.isRegularFile()) return null;
+
+        long modified = attributes.lastModifiedTime().toMillis();
+        long size = attributes.size();
+
+        synchronized (this) {
+            Asset cached = entries.get(file);
+            if (cached != null && cached.modified() == modified && cached.size() == size) {
+                hits.increment();
+                return cached;
+            }
+        }
+        misses.increment();
+
+        // Read outside the lock, two threads loading the same file at once is harmless
+        byte[] bytes = null;
+        if (size <= maxEntryBytes) {
+            bytes = Files.readAllBytes(file);
+            size = bytes.length; // in case it changed while we were reading
+        }
+        Asset asset = new Asset(file, size, modified, etagOf(size, modified), httpDate(modified), bytes);
+        if (bytes != null) {
+            put(asset);
+        } else {
+            remove(file);
+        }
+        return asset;
+    }
+
+    private synchronized void put(Asset asset) {
+        Asset previous = entries.put(asset.path(), asset);
+        if (previous != null) currentBytes -= previous.bytes().length;
+        currentBytes += asset.bytes().length;
+
+        Iterator<Asset> eldest = entries.values().iterator();
+        while (currentBytes > maxBytes && eldest.hasNext()) {
+            Asset evicted = eldest.next();
+            eldest.remove();
+            currentBytes -= evicted.bytes().length;
+        }
+    }
+
+    private synchronized void remove(Path file) {
+        Asset previous = entries.remove(file);
+        if (previous != null) currentBytes -= previous.bytes().length;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        currentBytes = 0;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (this) {
+            stats.put("entries", entries.size());
+            stats.put("bytes", currentBytes);
+        }
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        return stats;
+    }
+
+    private static String etagOf(long size, long modified) {
+        return "\"" + Long.toHexString(size) + "-" + Long.toHexString(modified) + "\"";
+    }
+
+    static String httpDate(long millis) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC));
+    }
+}
@@ -0,0 +1,153 @@
+package com.artesparadox.vn.vnEngine.compiler;
+
+import com.artesparadox.vn.vnEngine.controller.VariableStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConditionCompilerTest {
+
+    private SlotTable locals;
+    private VariableStore localStore;
+    private VariableStore globalStore;
+    private boolean day = true;
+    private double time = 6000;
+    private final Map<Integer, Integer> items = new HashMap<>();
+
+    // The engine's context, minus the player
+    private final Condition.Context context = new Condition.Context() {
+        @Override
+        public double number(boolean global, int slot) {
+            return store(global).getDouble(slot);
+        }
+
+        @Override
+        public boolean truthy(boolean global, int slot) {
+            return store(global).isTruthy(slot);
+        }
+
+        @Override
+        public Object value(boolean global, int slot) {
+            return store(global).get(slot);
+        }
+
+        @Override
+        public boolean isDay() {
+            return day;
+        }
+
+        @Override
+        public double timeOfDay() {
+            return time;
+        }
+
+        @Override
+        public int itemCount(int item) {
+            return items.getOrDefault(item, 0);
+        }
+    };
+
+    @BeforeEach
+    void setUp() {
+        locals = SlotTable.locals();
+        localStore = new VariableStore(locals);
+        // Its own store over the shared global slots, so tests don't leak into VariableStore.GLOBALS
+        globalStore = new VariableStore(SlotTable.GLOBALS);
+    }
+
+    private VariableStore store(boolean global) {
+        return global ? globalStore : localStore;
+    }
+
+    private boolean test(String expr) {
+        return ConditionCompiler.compile(expr, false, locals).test(context);
+    }
+
+    @Test
+    void arithmeticAndComparisons() {
+        localStore.put("gold", 12L);
+        assertTrue(test("gold >= 10"));
+        assertTrue(test("gold * 2 - 4 == 20"));
+        assertTrue(test("gold % 5 == 2"));
+        assertFalse(test("gold < -(3 - 15)"));
+        assertTrue(test("1 + 2 * 3 == 7"));
+    }
+
+    @Test
+    void unsetIsFalseExceptForNotEqual() {
+        assertFalse(test("missing == 0"));
+        assertFalse(test("missing < 1"));
+        assertFalse(test("missing >= 0"));
+        assertTrue(test("missing != 0"));
+        assertFalse(test("missing"));
+        assertTrue(test("!missing"));
+    }
+
+    @Test
+    void booleanOperatorsAndWords() {
+        localStore.put("met", true);
+        localStore.put("angry", false);
+        assertTrue(test("met && !angry"));
+        assertTrue(test("met and not angry"));
+        assertTrue(test("angry || met"));
+        assertFalse(test("angry or false"));
+        assertTrue(test("(angry || met) == true"));
+    }
+
+    @Test
+    void textComparesWithVariables() {
+        localStore.put("name", "Alex");
+        assertTrue(test("name == 'Alex'"));
+        assertTrue(test("\"Alex\" == name"));
+        assertTrue(test("name != 'Sam'"));
+        assertTrue(test("name"));
+    }
+
+    @Test
+    void prefixesReachTheOtherStore() {
+        globalStore.put("chapter", 3L);
+        localStore.put("chapter", 1L);
+        assertTrue(test("global.chapter == 3"));
+        assertTrue(test("chapter == 1"));
+        assertTrue(ConditionCompiler.compile("chapter == 3 && local.chapter == 1", true, locals).test(context));
+    }
+
+    @Test
+    void worldAndInventory() {
+        int apple = SlotTable.ITEMS.slot("minecraft:apple");
+        items.put(apple, 4);
+        assertTrue(test("day && time < 12000"));
+        assertTrue(test("item('minecraft:apple') >= 4"));
+        assertFalse(test("item(\"minecraft:apple\") > 4"));
+
+        day = false;
+        assertTrue(test("night"));
+    }
+
+    @Test
+    void badExpressionsSayWhere() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> test("gold = 3"));
+        assertTrue(e.getMessage().contains("=="), e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> test("(gold > 1"));
+        assertThrows(IllegalArgumentException.class, () -> test("'unclosed"));
+        assertThrows(IllegalArgumentException.class, () -> test("'a' == 'b' + 1"));
+        assertThrows(IllegalArgumentException.class, () -> test("gold > 1 gold"));
+    }
+
+    @Test
+    void legacyConditions() {
+        int slot = locals.slot("affection");
+        localStore.set(slot, 5L);
+        assertTrue(ConditionCompiler.legacy("equal", false, slot, 5.0).test(context));
+        assertFalse(ConditionCompiler.legacy("not_equal", false, slot, 5.0).test(context));
+        assertTrue(ConditionCompiler.legacy("greater_than", false, slot, 4.0).test(context));
+        assertFalse(ConditionCompiler.legacy("less_than", false, slot, 5.0).test(context));
+        assertFalse(ConditionCompiler.legacy("less_than", false, slot, "5").test(context));
+        assertFalse(ConditionCompiler.legacy("bogus", false, slot, 5.0).test(context));
+        assertTrue(ConditionCompiler.legacy("day", false, slot, null).test(context));
+    }
+}
@@ -0,0 +1,126 @@
+package com.artesparadox.vn.vnEngine.compiler;
+
+import com.artesparadox.vn.vnEngine.dataclass.Script;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScriptCacheTest {
+
+    @TempDir
+    Path dir;
+
+    private static Map<String, Object> node(long id, String type, Object... keyValues) {
+        Map<String, Object> node = new HashMap<>();
+        node.put("id", id);
+        node.put("type", type);
+        for (int i = 0; i < keyValues.length; i += 2) {
+            node.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        return node;
+    }
+
+    private static Script script(String name) {
+        Script script = Script.of(name, "A test script", Map.of("villager", "Alex"), Map.of("author", "tests"),
+                List.of(), name + "_assets");
+        script.setProgram(ScriptCompiler.compile(List.of(
+                node(0, "label", "label", "start"),
+                node(1, "dialogue", "content", "Pick one.", "voice", "alex_hello"),
+                node(2, "choice", "choice", List.of(
+                        Map.of("text", "Left", "label", "left"),
+                        Map.of("text", "Right", "label", "right"))),
+                node(3, "label", "label", "left"),
+                node(4, "modify_variable", "var", "gold", "action", "add", "value", 2.5),
+                node(5, "transition", "action", "jump", "label", "right"),
+                node(6, "label", "label", "right"),
+                node(7, "meta", "action", "create_var", "var", "met", "init", true),
+                node(8, "finish_dialogue"))));
+        return script;
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        Path file = dir.resolve("scripts.cache");
+        Script original = script("intro");
+        ScriptCache.Source source = new ScriptCache.Source("intro.json", "hash-1", 123, 456, original);
+
+        assertEquals(1, ScriptCache.write(file, List.of(source), null));
+        ScriptCache cache = ScriptCache.open(file);
+        assertNotNull(cache);
+        assertEquals(1, cache.size());
+        assertEquals("hash-1", cache.hashOf("intro.json"));
+        assertNull(cache.load("other.json"));
+
+        Script loaded = cache.load("intro.json");
+        assertEquals("intro", loaded.getName());
+        assertEquals(Map.of("villager", "Alex"), loaded.getTriggers());
+        assertEquals("intro_assets", loaded.getAssetDir());
+        assertFalse(loaded.isProgramLoaded(), "the program is decoded when it's first needed");
+
+        ScriptProgram expected = original.getProgram();
+        ScriptProgram program = loaded.getProgram();
+        assertEquals(expected.getNodes().size(), program.getNodes().size());
+        for (int id = 0; id <= 8; id++) {
+            assertEquals(expected.at(id).op, program.at(id).op, "op of node " + id);
+        }
+        assertEquals(6, program.labels().resolve("right"));
+        assertEquals(6, program.at(5).target);
+        assertEquals("Pick one.", program.at(1).content);
+        assertEquals(2.5, ((Number) program.at(4).value).doubleValue());
+        assertEquals(Boolean.TRUE, program.at(7).init);
+        assertEquals(OpCode.CREATE_VAR, program.at(7).op);
+        assertEquals("Right", program.at(2).choices.get(1).get("text"));
+    }
+
+    @Test
+    void programNeedsTheSameHash() throws IOException {
+        Path file = dir.resolve("scripts.cache");
+        ScriptCache.write(file, List.of(new ScriptCache.Source("intro.json", "hash-1", 1, 1, script("intro"))), null);
+        ScriptCache cache = ScriptCache.open(file);
+
+        assertNotNull(cache.program("intro.json", "hash-1"));
+        assertNull(cache.program("intro.json", "hash-2"));
+        assertNull(cache.program("other.json", "hash-1"));
+    }
+
+    @Test
+    void unopenedScriptsCarryOverToTheNextGeneration() throws IOException {
+        Path file = dir.resolve("scripts.cache");
+        ScriptCache.write(file, List.of(new ScriptCache.Source("intro.json", "hash-1", 1, 1, script("intro"))), null);
+        ScriptCache first = ScriptCache.open(file);
+
+        Script lazy = first.load("intro.json");
+        Script neverCompiled = Script.of("lazy", "", Map.of(), Map.of(), List.of(), "");
+        neverCompiled.setProgramSource(() -> {
+            throw new AssertionError("writing the cache must not compile lazy scripts");
+        });
+        int written = ScriptCache.write(file, List.of(
+                new ScriptCache.Source("intro.json", "hash-1", 1, 1, lazy),
+                new ScriptCache.Source("lazy.json", "hash-3", 1, 1, neverCompiled),
+                new ScriptCache.Source("extra.json", "hash-2", 1, 1, script("extra"))), first);
+
+        assertEquals(2, written);
+        assertFalse(lazy.isProgramLoaded());
+        ScriptCache second = ScriptCache.open(file);
+        assertEquals(2, second.size());
+        assertNull(second.hashOf("lazy.json"));
+        assertEquals(0, second.load("intro.json").getProgram().labels().resolve("start"));
+    }
+
+    @Test
+    void missingOrForeignFilesAreIgnored() throws IOException {
+        Path file = dir.resolve("scripts.cache");
+        assertNull(ScriptCache.open(file));
+
+        Files.write(dir.resolve("scripts.cache.1"), new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9});
+        assertNull(ScriptCache.open(file));
+    }
+}
@@ -0,0 +1,105 @@
+package com.artesparadox.vn.vnEngine.compiler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScriptCompilerTest {
+
+    private static Map<String, Object> node(long id, String type, Object... keyValues) {
+        Map<String, Object> node = new HashMap<>();
+        node.put("id", (double) id); // ids come out of Gson as doubles
+        node.put("type", type);
+        for (int i = 0; i < keyValues.length; i += 2) {
+            node.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        return node;
+    }
+
+    @Test
+    void resolvesLabelsAndJumps() {
+        List<Map<String, Object>> nodes = new ArrayList<>(List.of(
+                node(3, "label", "label", "end"),
+                node(0, "dialogue", "content", "Hi"),
+                node(1, "transition", "action", "jump", "label", "end"),
+                node(2, "label", "label", "skipped"),
+                node(4, "finish_dialogue")));
+
+        ScriptProgram program = ScriptCompiler.compile(nodes);
+
+        assertEquals(3, program.labels().resolve("end"));
+        assertEquals(2, program.labels().resolve("skipped"));
+        assertEquals(LabelIndex.MISSING, program.labels().resolve("nowhere"));
+        assertEquals(LabelIndex.MISSING, program.labels().resolve(null));
+
+        Instruction jump = program.at(1);
+        assertEquals(OpCode.TRANSITION, jump.op);
+        assertTrue(jump.jump);
+        assertEquals(3, jump.target);
+        assertEquals(OpCode.DIALOGUE, program.at(0).op);
+        assertTrue(program.getUnresolvedLabels().isEmpty());
+    }
+
+    @Test
+    void firstDuplicateLabelWins() {
+        ScriptProgram program = ScriptCompiler.compile(List.of(
+                node(5, "label", "label", "twice"),
+                node(1, "label", "label", "twice")));
+
+        assertEquals(1, program.labels().resolve("twice"));
+        assertEquals(Set.of("twice"), program.getDuplicateLabels());
+    }
+
+    @Test
+    void reportsUnresolvedLabels() {
+        List<Map<String, Object>> choices = List.of(Map.of("label", "left"), Map.of("label", "right"));
+        ScriptProgram program = ScriptCompiler.compile(List.of(
+                node(0, "choice", "choice", choices),
+                node(1, "label", "label", "left"),
+                node(2, "transition", "action", "jump", "label", "gone"),
+                node(3, "unlock_dialogues", "events", List.of("left", "later"))));
+
+        assertEquals(Set.of("right", "gone", "later"), program.getUnresolvedLabels());
+        assertEquals(LabelIndex.MISSING, program.at(2).target);
+    }
+
+    @Test
+    void rejectsBadIds() {
+        assertThrows(IllegalArgumentException.class, () -> ScriptCompiler.compile(List.of(node(0, "dialogue"), node(0, "dialogue"))));
+
+        Map<String, Object> noId = new HashMap<>(Map.of("type", "dialogue"));
+        assertThrows(IllegalArgumentException.class, () -> ScriptCompiler.compile(List.of(noId)));
+
+        assertThrows(IllegalArgumentException.class, () -> ScriptCompiler.compile(List.of(node(1_000_000, "dialogue"))));
+    }
+
+    @Test
+    void nodesOfTakesIdsFromKeysWithoutTouchingTheFsm() {
+        Map<String, Object> first = new LinkedHashMap<>(Map.of("type", "label", "label", "start"));
+        Map<String, Object> second = new LinkedHashMap<>(Map.of("type", "dialogue", "content", "Hello"));
+        Map<String, Object> fsm = new LinkedHashMap<>();
+        fsm.put("0", first);
+        fsm.put("1", second);
+
+        ScriptProgram program = ScriptCompiler.compile(ScriptCompiler.nodesOf(fsm));
+
+        assertEquals(0, program.labels().resolve("start"));
+        assertEquals("Hello", program.at(1).content);
+        assertFalse(first.containsKey("id"));
+        assertFalse(second.containsKey("id"));
+    }
+
+    @Test
+    void nodesOfAcceptsAList() {
+        Map<String, Object> fsm = Map.of("states", List.of(node(0, "dialogue"), node(1, "finish_dialogue")));
+        assertEquals(2, ScriptCompiler.nodesOf(fsm).size());
+        assertTrue(ScriptCompiler.nodesOf(null).isEmpty());
+    }
+}
@@ -0,0 +1,107 @@
+package com.artesparadox.vn.vnEngine.controller;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SaveHandlerTest {
+
+    @TempDir
+    Path saves;
+
+    @AfterEach
+    void forgetGlobals() {
+        VariableStore.GLOBALS.clear();
+    }
+
+    // A log line as the writer produces it
+    private static String record(String json) {
+        CRC32 crc = new CRC32();
+        crc.update(json.getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue()) + " " + json + "\n";
+    }
+
+    private static double globalNumber(String name) {
+        return ((Number) VariableStore.GLOBALS.get(name)).doubleValue();
+    }
+
+    @Test
+    void tornLastLineIsSkipped() throws IOException {
+        String torn = record("{\"key\":\"p/villager/Sam\",\"vars\":{\"met\":true}}");
+        Files.writeString(saves.resolve("progress.log"),
+                record("{\"key\":\"globals\",\"vars\":{\"chapter\":3}}")
+                        + record("{\"key\":\"p/villager/Alex\",\"vars\":{\"affection\":7}}")
+                        + torn.substring(0, torn.length() / 2));
+
+        SaveHandler handler = SaveHandler.open(saves);
+        try {
+            assertEquals(2, handler.stats().get("saves"));
+            assertEquals(3.0, globalNumber("chapter"));
+        } finally {
+            handler.close();
+        }
+    }
+
+    @Test
+    void damagedLinesDontStopTheReplay() throws IOException {
+        String damaged = record("{\"key\":\"globals\",\"vars\":{\"chapter\":9}}").replace("9", "8");
+        Files.writeString(saves.resolve("progress.log"),
+                record("{\"key\":\"globals\",\"vars\":{\"chapter\":1}}")
+                        + damaged
+                        + "not a record\n"
+                        + record("{\"key\":\"globals\",\"vars\":{\"chapter\":2}}"));
+
+        SaveHandler handler = SaveHandler.open(saves);
+        try {
+            assertEquals(1, handler.stats().get("saves"));
+            assertEquals(2.0, globalNumber("chapter"), "the last good record wins");
+        } finally {
+            handler.close();
+        }
+    }
+
+    @Test
+    void closeCompactsAndTheNextOpenSeesIt() throws IOException {
+        String torn = record("{\"key\":\"globals\",\"vars\":{\"chapter\":5}}");
+        Files.writeString(saves.resolve("progress.log"),
+                record("{\"key\":\"globals\",\"vars\":{\"chapter\":4}}") + torn.substring(0, 10));
+
+        SaveHandler handler = SaveHandler.open(saves);
+        VariableStore.GLOBALS.put("ending", "good");
+        handler.close();
+
+        assertEquals(0, Files.size(saves.resolve("progress.log")));
+        assertTrue(Files.exists(saves.resolve("progress.dat")));
+
+        VariableStore.GLOBALS.put("leftover", true);
+        SaveHandler reopened = SaveHandler.open(saves);
+        try {
+            assertEquals(4.0, globalNumber("chapter"));
+            assertEquals("good", VariableStore.GLOBALS.get("ending"));
+            assertNull(VariableStore.GLOBALS.get("leftover"), "opening a world starts from its own globals");
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void freshWorld() {
+        VariableStore.GLOBALS.put("fromAnotherWorld", 1L);
+        SaveHandler handler = SaveHandler.open(saves.resolve("new"));
+        try {
+            assertEquals(0, handler.stats().get("saves"));
+            assertNull(VariableStore.GLOBALS.get("fromAnotherWorld"));
+            assertTrue(Files.isDirectory(saves.resolve("new")));
+        } finally {
+            handler.close();
+        }
+    }
+}
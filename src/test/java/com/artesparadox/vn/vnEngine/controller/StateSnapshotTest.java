@@ -0,0 +1,91 @@
+package com.artesparadox.vn.vnEngine.controller;
+
+import com.artesparadox.vn.vnEngine.dataclass.DialogueState;
+import com.artesparadox.vn.vnEngine.dataclass.SpriteState;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StateSnapshotTest {
+
+    private static JsonObject parse(String json) {
+        return JsonParser.parseString(json).getAsJsonObject();
+    }
+
+    private static DialogueState scene() {
+        return new DialogueState("intro", "Hello there.", null)
+                .withBackground("classroom")
+                .withSprite(new SpriteState("alex", "smile", "left"));
+    }
+
+    @Test
+    void fullLeavesUnsetFieldsOut() {
+        JsonObject full = parse(StateSnapshot.of(1, scene(), null).full());
+
+        assertEquals(1, full.get("v").getAsLong());
+        assertTrue(full.get("full").getAsBoolean());
+        JsonObject state = full.getAsJsonObject("state");
+        assertEquals("Hello there.", state.get("content").getAsString());
+        assertEquals("classroom", state.get("background").getAsString());
+        assertEquals(1, state.getAsJsonArray("sprites").size());
+        assertFalse(state.has("music"));
+        assertFalse(state.has("choices"));
+    }
+
+    @Test
+    void deltaCarriesOnlyWhatChanged() {
+        DialogueState first = scene();
+        StateSnapshot base = StateSnapshot.of(1, first, null);
+        StateSnapshot next = StateSnapshot.of(2, first.withContent("How was your day?"), base);
+
+        JsonObject delta = parse(next.deltaFrom(base));
+
+        assertFalse(delta.get("full").getAsBoolean());
+        assertEquals(2, delta.get("v").getAsLong());
+        assertEquals(1, delta.get("base").getAsLong());
+        JsonObject set = delta.getAsJsonObject("set");
+        assertEquals(Set.of("content"), set.keySet());
+        assertEquals("How was your day?", set.get("content").getAsString());
+    }
+
+    @Test
+    void clearedFieldsAreSentAsNull() {
+        DialogueState first = scene();
+        StateSnapshot base = StateSnapshot.of(1, first, null);
+        StateSnapshot next = StateSnapshot.of(2, first.clearBackground(), base);
+
+        JsonObject set = parse(next.deltaFrom(base)).getAsJsonObject("set");
+
+        assertEquals(Set.of("background"), set.keySet());
+        assertTrue(set.get("background").isJsonNull());
+    }
+
+    @Test
+    void fallsBackToFullWhenTheDeltaIsNoSmaller() {
+        StateSnapshot base = StateSnapshot.of(1, DialogueState.EMPTY, null);
+        List<Map<String, Object>> choices = List.of(Map.of("label", "left", "text", "Go left"));
+        // Every field the full state has changed, so the delta is the same fields plus its own header
+        StateSnapshot next = StateSnapshot.of(2, scene().withChoices(choices), base);
+
+        assertEquals(next.full(), next.deltaFrom(base));
+    }
+
+    @Test
+    void deltaIsCachedPerBase() {
+        DialogueState first = scene();
+        StateSnapshot base = StateSnapshot.of(1, first, null);
+        StateSnapshot other = StateSnapshot.of(5, first.withContent("Elsewhere."), null);
+        StateSnapshot next = StateSnapshot.of(6, first.withContent("Again."), base);
+
+        String fromBase = next.deltaFrom(base);
+        assertSame(fromBase, next.deltaFrom(base));
+        assertNotEquals(fromBase, next.deltaFrom(other));
+        assertEquals(5, parse(next.deltaFrom(other)).get("base").getAsLong());
+    }
+}
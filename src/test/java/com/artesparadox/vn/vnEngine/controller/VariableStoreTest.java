@@ -0,0 +1,119 @@
+package com.artesparadox.vn.vnEngine.controller;
+
+import com.artesparadox.vn.vnEngine.compiler.SlotTable;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VariableStoreTest {
+
+    private final SlotTable table = SlotTable.locals();
+    private final VariableStore store = new VariableStore(table);
+
+    @Test
+    void arithmeticStaysLongUntilItCant() {
+        int slot = table.slot("coins");
+        store.apply(slot, "add", 5.0); // Gson hands out doubles
+        store.apply(slot, "multiply", 3L);
+        store.apply(slot, "subtract", 1);
+        assertEquals(14L, store.get(slot));
+
+        store.apply(slot, "divide", 2);
+        assertEquals(7L, store.get(slot));
+        // Doesn't divide evenly, falls back to double
+        store.apply(slot, "divide", 2);
+        assertEquals(3.5, store.get(slot));
+    }
+
+    @Test
+    void unsetCountsAsZero() {
+        int slot = table.slot("fresh");
+        store.apply(slot, "subtract", 2);
+        assertEquals(-2L, store.get(slot));
+    }
+
+    @Test
+    void toggleFlipsAndStartsFromFalse() {
+        int slot = table.slot("flag");
+        store.apply(slot, "toggle", null);
+        assertEquals(Boolean.TRUE, store.get(slot));
+        store.apply(slot, "toggle", null);
+        assertEquals(Boolean.FALSE, store.get(slot));
+    }
+
+    @Test
+    void arithmeticOnTextIsIgnored() {
+        int slot = table.slot("name");
+        store.apply(slot, "set", "Alex");
+        store.apply(slot, "add", 1);
+        assertEquals("Alex", store.get(slot));
+
+        int number = table.slot("number");
+        store.apply(number, "set", 1);
+        store.apply(number, "add", "one");
+        store.apply(number, "explode", 1);
+        assertEquals(1L, store.get(number));
+    }
+
+    @Test
+    void setIfAbsentKeepsWhatIsThere() {
+        int slot = table.slot("affection");
+        assertTrue(store.setIfAbsent(slot, 10));
+        assertFalse(store.setIfAbsent(slot, 0));
+        assertEquals(10L, store.get(slot));
+    }
+
+    @Test
+    void equalityAndComparisonAreNumeric() {
+        int slot = table.slot("level");
+        store.set(slot, 2);
+        assertTrue(store.isEqual(slot, 2.0));
+        assertTrue(store.compare(slot, 3) < 0);
+        assertEquals(VariableStore.NOT_COMPARABLE, store.compare(table.slot("unset"), 3));
+        assertFalse(store.isEqual(table.slot("unset"), null));
+    }
+
+    @Test
+    void truthiness() {
+        store.set(table.slot("zero"), 0);
+        store.set(table.slot("empty"), "");
+        store.set(table.slot("list"), List.of("a"));
+        assertFalse(store.isTruthy(table.slot("zero")));
+        assertFalse(store.isTruthy(table.slot("empty")));
+        assertFalse(store.isTruthy(table.slot("missing")));
+        assertTrue(store.isTruthy(table.slot("list")));
+    }
+
+    @Test
+    void snapshotIsFrozen() {
+        store.put("a", 1);
+        VariableStore.Snapshot before = store.snapshot();
+        long version = store.version();
+
+        store.put("a", 2);
+        store.put("b", true);
+
+        assertEquals(Map.of("a", 1L), before.toMap());
+        assertEquals(Map.of("a", 2L, "b", true), store.snapshot().toMap());
+        assertNotEquals(version, store.version());
+    }
+
+    @Test
+    void clearKeepsOldSnapshots() {
+        store.put("a", 1);
+        VariableStore.Snapshot before = store.snapshot();
+        store.clear();
+        assertNull(store.get("a"));
+        assertEquals(Map.of("a", 1L), before.toMap());
+    }
+
+    @Test
+    void loadCopiesASave() {
+        store.load(Map.of("x", 3.0, "y", "text"));
+        assertEquals(3L, store.get("x"));
+        assertEquals("text", store.get("y"));
+    }
+}
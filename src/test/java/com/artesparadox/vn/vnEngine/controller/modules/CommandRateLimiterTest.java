@@ -0,0 +1,74 @@
+package com.artesparadox.vn.vnEngine.controller.modules;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandRateLimiterTest {
+
+    private static final long START = TimeUnit.HOURS.toNanos(1);
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final UUID alex = UUID.randomUUID();
+    private final UUID sam = UUID.randomUUID();
+
+    @Test
+    void burstThenRefusal() {
+        CommandRateLimiter limiter = new CommandRateLimiter(10, 3);
+
+        assertTrue(limiter.tryAcquire(alex, START));
+        assertTrue(limiter.tryAcquire(alex, START));
+        assertTrue(limiter.tryAcquire(alex, START));
+        assertFalse(limiter.tryAcquire(alex, START));
+        assertFalse(limiter.tryAcquire(alex, START + 99 * MILLI));
+    }
+
+    @Test
+    void oneTokenBackPerInterval() {
+        CommandRateLimiter limiter = new CommandRateLimiter(10, 2);
+        assertTrue(limiter.tryAcquire(alex, START));
+        assertTrue(limiter.tryAcquire(alex, START));
+        assertFalse(limiter.tryAcquire(alex, START));
+
+        assertTrue(limiter.tryAcquire(alex, START + 100 * MILLI));
+        assertFalse(limiter.tryAcquire(alex, START + 100 * MILLI));
+
+        // Quiet for long enough refills the whole burst, not more
+        long later = START + 10_000 * MILLI;
+        assertTrue(limiter.tryAcquire(alex, later));
+        assertTrue(limiter.tryAcquire(alex, later));
+        assertFalse(limiter.tryAcquire(alex, later));
+    }
+
+    @Test
+    void playersHaveTheirOwnBuckets() {
+        CommandRateLimiter limiter = new CommandRateLimiter(1, 1);
+        assertTrue(limiter.tryAcquire(alex, START));
+        assertFalse(limiter.tryAcquire(alex, START));
+        assertTrue(limiter.tryAcquire(sam, START));
+    }
+
+    @Test
+    void sweepDropsOnlyFullBuckets() {
+        CommandRateLimiter limiter = new CommandRateLimiter(10, 5);
+        limiter.tryAcquire(alex, START);
+        for (int i = 0; i < 5; i++) {
+            limiter.tryAcquire(sam, START);
+        }
+        assertEquals(2, limiter.trackedPlayers());
+
+        // Alex is full again after 100ms, Sam needs 500ms
+        limiter.sweep(START + 200 * MILLI);
+        assertEquals(1, limiter.trackedPlayers());
+        // Sam got back the two tokens of the last 200ms and no more
+        assertTrue(limiter.tryAcquire(sam, START + 200 * MILLI));
+        assertTrue(limiter.tryAcquire(sam, START + 200 * MILLI));
+        assertFalse(limiter.tryAcquire(sam, START + 200 * MILLI), "sweeping must not refill a busy bucket");
+
+        limiter.sweep(START + 1_000 * MILLI);
+        assertEquals(0, limiter.trackedPlayers());
+    }
+}
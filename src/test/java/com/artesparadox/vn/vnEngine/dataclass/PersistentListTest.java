@@ -0,0 +1,55 @@
+package com.artesparadox.vn.vnEngine.dataclass;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentListTest {
+
+    @Test
+    void appendsWithoutTouchingTheOriginal() {
+        PersistentList<String> one = PersistentList.<String>empty().plus("a");
+        PersistentList<String> three = one.plus("b").plus("c");
+
+        assertEquals(List.of("a"), one);
+        assertEquals(List.of("a", "b", "c"), three);
+        assertEquals("b", three.get(1));
+        assertTrue(PersistentList.empty().isEmpty());
+    }
+
+    @Test
+    void replaceKeepsThePosition() {
+        PersistentList<String> list = PersistentList.<String>empty().plus("alex").plus("sam").plus("kim");
+        PersistentList<String> replaced = list.replaceOrAdd("sam"::equals, "SAM");
+
+        assertEquals(List.of("alex", "SAM", "kim"), replaced);
+        assertEquals(List.of("alex", "sam", "kim"), list);
+        assertEquals(List.of("alex", "sam", "kim", "lee"), list.replaceOrAdd("lee"::equals, "lee"));
+    }
+
+    @Test
+    void replaceAndRemoveHitTheLastMatch() {
+        PersistentList<String> list = PersistentList.<String>empty().plus("x").plus("y").plus("x");
+
+        assertEquals(List.of("x", "y", "z"), list.replaceOrAdd("x"::equals, "z"));
+        assertEquals(List.of("x", "y"), list.minus("x"::equals));
+    }
+
+    @Test
+    void removingNothingReturnsTheSameList() {
+        PersistentList<String> list = PersistentList.<String>empty().plus("a").plus("b");
+
+        assertSame(list, list.minus("c"::equals));
+        assertEquals(List.of("b"), list.minus("a"::equals));
+        assertSame(PersistentList.empty(), PersistentList.<String>empty().minus("a"::equals));
+    }
+
+    @Test
+    void outOfRangeThrows() {
+        PersistentList<String> list = PersistentList.<String>empty().plus("a");
+        assertThrows(IndexOutOfBoundsException.class, () -> list.get(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> list.get(-1));
+    }
+}
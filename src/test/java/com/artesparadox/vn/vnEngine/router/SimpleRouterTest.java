@@ -0,0 +1,132 @@
+package com.artesparadox.vn.vnEngine.router;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimpleRouterTest {
+
+    @TempDir
+    Path webRoot;
+
+    private static FakeHttpExchange request(SimpleRouter router, String method, String uri) throws IOException {
+        FakeHttpExchange exchange = new FakeHttpExchange(method, uri);
+        router.handle(exchange);
+        return exchange;
+    }
+
+    private static SimpleRouter.RouteHandler answer(String name) {
+        return (exchange, params) -> SimpleRouter.sendJson(exchange, 200, Map.of("route", name, "params", params));
+    }
+
+    @Test
+    void literalSegmentsWinOverParams() throws IOException {
+        SimpleRouter router = new SimpleRouter();
+        router.get("/api/scripts/{name}", answer("byName"));
+        router.get("/api/scripts/active", answer("active"));
+
+        assertTrue(request(router, "GET", "/api/scripts/active").body().contains("\"active\""));
+        String byName = request(router, "GET", "/api/scripts/intro").body();
+        assertTrue(byName.contains("\"byName\""), byName);
+        assertTrue(byName.contains("\"name\":\"intro\""), byName);
+    }
+
+    @Test
+    void methodsAndTrailingSlashes() throws IOException {
+        SimpleRouter router = new SimpleRouter();
+        router.post("/api/save", answer("save"));
+
+        assertEquals(200, request(router, "POST", "/api/save/").getResponseCode());
+        assertEquals(200, request(router, "post", "/api//save").getResponseCode());
+        assertEquals(404, request(router, "GET", "/api/save").getResponseCode());
+        assertEquals(404, request(router, "POST", "/api/save/more").getResponseCode());
+    }
+
+    @Test
+    void regexRoutesStillWork() throws IOException {
+        SimpleRouter router = new SimpleRouter();
+        router.get("/api/{file}.json", answer("regex"));
+
+        FakeHttpExchange exchange = request(router, "GET", "/api/state.json");
+        assertEquals(200, exchange.getResponseCode());
+        assertTrue(exchange.body().contains("\"file\":\"state\""), exchange.body());
+    }
+
+    @Test
+    void apiRoutesBeatTheStaticCatchAll() throws IOException {
+        Files.writeString(webRoot.resolve("index.html"), "<html></html>");
+        SimpleRouter router = new SimpleRouter();
+        router.serveStaticFilesFrom(webRoot);
+        router.get("/api/ping", answer("ping"));
+
+        assertTrue(request(router, "GET", "/api/ping").body().contains("\"ping\""));
+        FakeHttpExchange index = request(router, "GET", "/");
+        assertEquals(200, index.getResponseCode());
+        assertEquals("<html></html>", index.body());
+        assertEquals(404, request(router, "GET", "/missing.js").getResponseCode());
+    }
+
+    @Test
+    void handlerErrorsBecome500() throws IOException {
+        SimpleRouter router = new SimpleRouter();
+        router.get("/boom", (exchange, params) -> {
+            throw new IllegalStateException("boom");
+        });
+        assertEquals(500, request(router, "GET", "/boom").getResponseCode());
+    }
+
+    @Test
+    void parseRange() {
+        assertArrayEquals(new long[]{0, 99}, SimpleRouter.parseRange("bytes=0-99", 1000));
+        assertArrayEquals(new long[]{500, 999}, SimpleRouter.parseRange("bytes=500-", 1000));
+        assertArrayEquals(new long[]{900, 999}, SimpleRouter.parseRange("bytes=-100", 1000));
+        assertArrayEquals(new long[]{0, 999}, SimpleRouter.parseRange("bytes=-5000", 1000));
+        assertArrayEquals(new long[]{10, 999}, SimpleRouter.parseRange("bytes=10-5000", 1000));
+
+        // Ignored: the whole file is sent
+        assertNull(SimpleRouter.parseRange("bytes=0-1,5-6", 1000));
+        assertNull(SimpleRouter.parseRange("items=0-1", 1000));
+        assertNull(SimpleRouter.parseRange("bytes=5-1", 1000));
+        assertNull(SimpleRouter.parseRange("bytes=a-b", 1000));
+        assertNull(SimpleRouter.parseRange("bytes=-", 1000));
+
+        // Unsatisfiable
+        assertEquals(0, SimpleRouter.parseRange("bytes=1000-", 1000).length);
+        assertEquals(0, SimpleRouter.parseRange("bytes=-0", 1000).length);
+        assertEquals(0, SimpleRouter.parseRange("bytes=-10", 0).length);
+    }
+
+    @Test
+    void rangeRequestsOnStaticFiles() throws IOException {
+        Files.writeString(webRoot.resolve("track.ogg"), "0123456789");
+        SimpleRouter router = new SimpleRouter();
+        router.serveStaticFilesFrom(webRoot);
+
+        FakeHttpExchange partial = new FakeHttpExchange("GET", "/track.ogg");
+        partial.getRequestHeaders().set("Range", "bytes=2-5");
+        router.handle(partial);
+        assertEquals(206, partial.getResponseCode());
+        assertEquals("bytes 2-5/10", partial.getResponseHeaders().getFirst("Content-Range"));
+        assertEquals("2345", partial.body());
+
+        FakeHttpExchange beyond = new FakeHttpExchange("GET", "/track.ogg");
+        beyond.getRequestHeaders().set("Range", "bytes=10-");
+        router.handle(beyond);
+        assertEquals(416, beyond.getResponseCode());
+        assertEquals("bytes */10", beyond.getResponseHeaders().getFirst("Content-Range"));
+
+        // A stale If-Range gets the whole file
+        FakeHttpExchange stale = new FakeHttpExchange("GET", "/track.ogg");
+        stale.getRequestHeaders().set("Range", "bytes=2-5");
+        stale.getRequestHeaders().set("If-Range", "\"not-the-etag\"");
+        router.handle(stale);
+        assertEquals(200, stale.getResponseCode());
+        assertEquals("0123456789", stale.body());
+    }
+}